@@ -22,6 +22,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
@@ -32,6 +33,7 @@ public class SortedTreeModelWrapper implements TreeModel, TreeModelListener {
 
   private final Map<Object,List<Object>> sortedCache = new HashMap<Object,List<Object>>();
   private final Comparator<Object> comparator;
+  private final List<TreeModelListener> listeners = new CopyOnWriteArrayList<TreeModelListener>();
 
   public SortedTreeModelWrapper(final MindMap model, final Comparator<Object> comparator){
     this.model = model;
@@ -72,12 +74,12 @@ public class SortedTreeModelWrapper implements TreeModel, TreeModelListener {
 
   @Override
   public void addTreeModelListener(TreeModelListener l) {
-    this.model.addTreeModelListener(l);
+    this.listeners.add(l);
   }
 
   @Override
   public void removeTreeModelListener(TreeModelListener l) {
-    this.model.removeTreeModelListener(l);
+    this.listeners.remove(l);
   }
 
   private void clear(){
@@ -102,26 +104,39 @@ public class SortedTreeModelWrapper implements TreeModel, TreeModelListener {
 
   @Override
   public void treeNodesChanged(final TreeModelEvent e) {
-
+    clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeNodesInserted(final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeNodesRemoved(final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeStructureChanged(final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
+  }
+
+  private void fireStructureChanged(final TreeModelEvent e) {
+    // indexes of the model don't match sorted order so that whole changed branch is reported
+    final TreeModelEvent event = new TreeModelEvent(this, e.getTreePath());
+    for (final TreeModelListener l : this.listeners) {
+      l.treeStructureChanged(event);
+    }
   }
 
   public void dispose(){
     clear();
+    this.listeners.clear();
     this.model.removeTreeModelListener(this);
   }
 
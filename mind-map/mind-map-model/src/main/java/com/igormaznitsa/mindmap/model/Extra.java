@@ -102,7 +102,9 @@ public abstract class Extra<T> implements Serializable, Constants, Cloneable {
 
   public final void write(@Nonnull final Writer out) throws IOException {
     out.append("- ").append(getType().name()).append(NEXT_LINE); //NOI18N
-    out.append(ModelUtils.makePreBlock(provideAsStringForSave()));
+    out.append("<pre>"); //NOI18N
+    StringEscapeUtils.escapeHtml(out, provideAsStringForSave());
+    out.append("</pre>"); //NOI18N
   }
 
 }
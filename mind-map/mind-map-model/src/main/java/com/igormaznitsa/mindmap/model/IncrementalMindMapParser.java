@@ -0,0 +1,423 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+import com.igormaznitsa.meta.common.utils.Assertions;
+import com.igormaznitsa.mindmap.model.parser.MindMapLexer;
+import com.igormaznitsa.mindmap.model.parser.MindMapReader;
+
+/**
+ * Keeps mind map in sync with its text. Text of mind map is split into sections, every section starts with line of second level topic and it is represented by child of the root topic. An edit of the text re-parses only sections touched by the edit, other topics of the mind map are kept as is. The whole text is re-parsed if the edit touches the header or the root topic or if there is more than one first level topic. It is not thread safe.
+ *
+ * @since 1.2.3
+ */
+public final class IncrementalMindMapParser {
+
+  private final MindMap map;
+  private String text;
+
+  /**
+   * Start offsets of second level topic lines, they are null if sections can't be used.
+   */
+  private int[] sections;
+
+  /**
+   * Flags that parser doesn't have pending extra type at start of section, only such sections can be used as borders of re-parsed text.
+   */
+  private boolean[] clean;
+
+  private static final class Sections {
+
+    private int[] starts = new int[16];
+    private boolean[] clean = new boolean[16];
+    private int size;
+
+    private void add(final int start, final boolean cleanStart) {
+      if (this.size == this.starts.length) {
+        this.starts = Arrays.copyOf(this.starts, this.size * 2);
+        this.clean = Arrays.copyOf(this.clean, this.size * 2);
+      }
+      this.starts[this.size] = start;
+      this.clean[this.size] = cleanStart;
+      this.size++;
+    }
+  }
+
+  /**
+   * Make parser for mind map which has been loaded from text.
+   *
+   * @param map mind map loaded from the text
+   * @param text text of the mind map
+   */
+  public IncrementalMindMapParser(@Nonnull final MindMap map, @Nonnull final String text) {
+    this.map = Assertions.assertNotNull(map);
+    this.text = Assertions.assertNotNull(text);
+    findSections();
+  }
+
+  /**
+   * Parse text and make parser for the parsed mind map.
+   *
+   * @param controller controller for new mind map, can be null
+   * @param text text of mind map
+   * @return parser for new mind map
+   * @throws IOException it will be thrown for transport errors
+   */
+  @Nonnull
+  public static IncrementalMindMapParser parse(@Nullable final MindMapController controller, @Nonnull final String text) throws IOException {
+    return new IncrementalMindMapParser(new MindMap(controller, new StringReader(text)), text);
+  }
+
+  @Nonnull
+  public MindMap getMindMap() {
+    return this.map;
+  }
+
+  @Nonnull
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * Get number of sections which can be re-parsed separately.
+   *
+   * @return number of sections, -1 if any edit makes full re-parse
+   */
+  public int getNumberOfSections() {
+    return this.sections == null ? -1 : this.sections.length;
+  }
+
+  /**
+   * Apply edit of the text to the mind map. Re-parsed sections are compared with current topics, topics with the same structure are updated in place and only changed sections are replaced. All changes are made in one batch of the mind map.
+   *
+   * @param offset offset of the edit in the current text
+   * @param removedLength number of removed chars
+   * @param insertedText inserted text
+   * @return list of made changes, it contains single {@link MindMapModelEvent.Type#STRUCTURE_CHANGED} event if the whole text was re-parsed
+   * @throws IOException it will be thrown for transport errors
+   * @throws IllegalArgumentException if the new text is not a mind map
+   */
+  @Nonnull
+  @MustNotContainNull
+  public List<MindMapModelEvent> applyEdit(final int offset, final int removedLength, @Nonnull final String insertedText) throws IOException {
+    if (offset < 0 || removedLength < 0 || offset + removedLength > this.text.length()) {
+      throw new IndexOutOfBoundsException("Wrong edit " + offset + ',' + removedLength + " for text length " + this.text.length()); //NOI18N
+    }
+    Assertions.assertNotNull(insertedText);
+
+    final String newText = this.text.substring(0, offset) + insertedText + this.text.substring(offset + removedLength);
+    final List<MindMapModelEvent> result = reparseSections(newText, offset, removedLength, insertedText.length());
+    if (result == null) {
+      return reparseAll(newText);
+    }
+    return result;
+  }
+
+  @Nonnull
+  @MustNotContainNull
+  private List<MindMapModelEvent> reparseAll(@Nonnull final String newText) throws IOException {
+    this.map.reload(new StringReader(newText));
+    this.text = newText;
+    findSections();
+    return Collections.singletonList(new MindMapModelEvent(this.map, MindMapModelEvent.Type.STRUCTURE_CHANGED, this.map.getRoot(), null, -1, null, null));
+  }
+
+  @Nullable
+  @MustNotContainNull
+  private List<MindMapModelEvent> reparseSections(@Nonnull final String newText, final int offset, final int removedLength, final int insertedLength) throws IOException {
+    final int[] oldSections = this.sections;
+    final Topic root = this.map.getRoot();
+    if (oldSections == null || root == null || oldSections.length == 0 || oldSections.length != root.getChildren().size()) {
+      return null;
+    }
+
+    // the section where the edit starts, edit at the start of line can change the previous section
+    int first = -1;
+    while (first + 1 < oldSections.length && oldSections[first + 1] < offset) {
+      first++;
+    }
+
+    final int delta = insertedLength - removedLength;
+    final int editEnd = offset + insertedLength;
+    final MindMapLexer lexer = new MindMapLexer();
+
+    while (true) {
+      while (first >= 0 && !this.clean[first]) {
+        first--;
+      }
+      if (first < 0) {
+        return null;
+      }
+
+      final int start = oldSections[first];
+      lexer.start(newText, start, newText.length(), MindMapLexer.TokenType.WHITESPACE);
+
+      final Sections found = new Sections();
+      int sync = oldSections.length;
+      int syncOffset = newText.length();
+      boolean pendingExtra = false;
+      boolean sectionHeaderLost = true;
+
+      while (true) {
+        final int prevOffset = lexer.getCurrentPosition().getOffset();
+        lexer.advance();
+        final MindMapLexer.TokenType token = lexer.getTokenType();
+        if (token == null || prevOffset == lexer.getCurrentPosition().getOffset()) {
+          break;
+        }
+        switch (token) {
+          case TOPIC_LEVEL: {
+            final int level = lexer.countTokenStartChars('#');
+            final int topicStart = lexer.getTokenStartOffset();
+            if (level == 1) {
+              return null;
+            }
+            if (found.size == 0) {
+              sectionHeaderLost = level != 2 || topicStart != start;
+            } else if (level == 2 && topicStart >= editEnd && !pendingExtra) {
+              final int oldIndex = Arrays.binarySearch(oldSections, topicStart - delta);
+              if (oldIndex > first && this.clean[oldIndex]) {
+                sync = oldIndex;
+                syncOffset = topicStart;
+              }
+            }
+            if (level == 2 && sync == oldSections.length && !sectionHeaderLost) {
+              found.add(topicStart, !pendingExtra);
+            }
+          }
+          break;
+          case EXTRA_TYPE: {
+            pendingExtra = true;
+          }
+          break;
+          case ATTRIBUTE:
+          case EXTRA_TEXT:
+          case UNKNOWN_LINE: {
+            pendingExtra = false;
+          }
+          break;
+          default:
+            break;
+        }
+        if (found.size == 0 || sync < oldSections.length) {
+          break;
+        }
+      }
+
+      if (sectionHeaderLost) {
+        // line of the section topic was changed, its content belongs to the previous section
+        first--;
+        continue;
+      }
+
+      final MindMap parsedMap = new MindMap(null, false);
+      final Topic parsedRoot = new Topic(parsedMap, null, ""); //NOI18N
+      lexer.start(newText, start, syncOffset, MindMapLexer.TokenType.WHITESPACE);
+      Topic.parse(parsedMap, new MindMapReader(lexer), null, null, parsedRoot);
+
+      final List<Topic> parsed = parsedRoot.getChildren();
+      if (parsed.size() != found.size) {
+        return null;
+      }
+
+      final List<MindMapModelEvent> events = new ArrayList<MindMapModelEvent>();
+      this.map.beginBatch();
+      try {
+        replaceSections(root, first, sync, parsed, events);
+      }
+      finally {
+        this.map.endBatch();
+      }
+
+      final int[] newSections = new int[first + found.size + oldSections.length - sync];
+      final boolean[] newClean = new boolean[newSections.length];
+      System.arraycopy(oldSections, 0, newSections, 0, first);
+      System.arraycopy(this.clean, 0, newClean, 0, first);
+      System.arraycopy(found.starts, 0, newSections, first, found.size);
+      System.arraycopy(found.clean, 0, newClean, first, found.size);
+      for (int i = sync; i < oldSections.length; i++) {
+        newSections[first + found.size + i - sync] = oldSections[i] + delta;
+        newClean[first + found.size + i - sync] = this.clean[i];
+      }
+
+      this.sections = newSections;
+      this.clean = newClean;
+      this.text = newText;
+      return events;
+    }
+  }
+
+  private void replaceSections(@Nonnull final Topic root, final int from, final int to, @Nonnull @MustNotContainNull final List<Topic> parsed, @Nonnull @MustNotContainNull final List<MindMapModelEvent> events) {
+    final int oldNumber = to - from;
+    final int newNumber = parsed.size();
+
+    int head = 0;
+    while (head < oldNumber && head < newNumber && isSameStructure(root.getChildren().get(from + head), parsed.get(head))) {
+      updateTopic(root.getChildren().get(from + head), parsed.get(head), events);
+      head++;
+    }
+
+    int tail = 0;
+    while (tail < oldNumber - head && tail < newNumber - head && isSameStructure(root.getChildren().get(to - 1 - tail), parsed.get(newNumber - 1 - tail))) {
+      updateTopic(root.getChildren().get(to - 1 - tail), parsed.get(newNumber - 1 - tail), events);
+      tail++;
+    }
+
+    for (int i = to - 1 - tail; i >= from + head; i--) {
+      final Topic removed = root.getChildren().get(i);
+      removed.delete();
+      events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_REMOVED, removed, root, i, null, null));
+    }
+
+    for (int i = head; i < newNumber - tail; i++) {
+      final Topic inserted = new Topic(this.map, parsed.get(i), true);
+      root.insertTopic(from + i, inserted);
+      events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_INSERTED, inserted, root, from + i, null, null));
+    }
+  }
+
+  private static boolean isSameStructure(@Nonnull final Topic topic, @Nonnull final Topic parsed) {
+    final List<Topic> children = topic.getChildren();
+    final List<Topic> parsedChildren = parsed.getChildren();
+    if (children.size() != parsedChildren.size()) {
+      return false;
+    }
+    for (int i = 0; i < children.size(); i++) {
+      if (!isSameStructure(children.get(i), parsedChildren.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void updateTopic(@Nonnull final Topic topic, @Nonnull final Topic parsed, @Nonnull @MustNotContainNull final List<MindMapModelEvent> events) {
+    final Topic parent = topic.getParent();
+    final int index = topic.getIndexInParent();
+
+    if (!topic.getText().equals(parsed.getText())) {
+      topic.setText(parsed.getText());
+      events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_TEXT_CHANGED, topic, parent, index, null, null));
+    }
+
+    for (final String name : new ArrayList<String>(topic.getAttributes().keySet())) {
+      if (parsed.getAttribute(name) == null && topic.setAttribute(name, null)) {
+        events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_ATTRIBUTE_CHANGED, topic, parent, index, name, null));
+      }
+    }
+    for (final Map.Entry<String, String> e : parsed.getAttributes().entrySet()) {
+      if (topic.setAttribute(e.getKey(), e.getValue())) {
+        events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_ATTRIBUTE_CHANGED, topic, parent, index, e.getKey(), null));
+      }
+    }
+
+    for (final Extra.ExtraType type : Extra.ExtraType.values()) {
+      final Extra<?> current = topic.getExtras().get(type);
+      final Extra<?> loaded = parsed.getExtras().get(type);
+      if (loaded == null) {
+        if (current != null) {
+          topic.removeExtra(type);
+          events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_EXTRA_CHANGED, topic, parent, index, null, type));
+        }
+      } else if (current == null || !current.getClass().equals(loaded.getClass()) || !current.provideAsStringForSave().equals(loaded.provideAsStringForSave())) {
+        topic.setExtra(loaded);
+        events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_EXTRA_CHANGED, topic, parent, index, null, type));
+      }
+    }
+
+    for (final String language : new ArrayList<String>(topic.getCodeSnippets().keySet())) {
+      if (parsed.getCodeSnippet(language) == null && topic.setCodeSnippet(language, null)) {
+        events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_CODE_SNIPPET_CHANGED, topic, parent, index, language, null));
+      }
+    }
+    for (final Map.Entry<String, String> e : parsed.getCodeSnippets().entrySet()) {
+      if (topic.setCodeSnippet(e.getKey(), e.getValue())) {
+        events.add(new MindMapModelEvent(this.map, MindMapModelEvent.Type.TOPIC_CODE_SNIPPET_CHANGED, topic, parent, index, e.getKey(), null));
+      }
+    }
+
+    final List<Topic> children = topic.getChildren();
+    final List<Topic> parsedChildren = parsed.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      updateTopic(children.get(i), parsedChildren.get(i), events);
+    }
+  }
+
+  private void findSections() {
+    this.sections = null;
+    this.clean = null;
+
+    final MindMapLexer lexer = new MindMapLexer();
+    lexer.start(this.text, 0, this.text.length(), MindMapLexer.TokenType.HEAD_LINE);
+
+    final Sections found = new Sections();
+    boolean headerPassed = false;
+    boolean pendingExtra = false;
+    int rootTopics = 0;
+
+    while (true) {
+      final int prevOffset = lexer.getCurrentPosition().getOffset();
+      lexer.advance();
+      final MindMapLexer.TokenType token = lexer.getTokenType();
+      if (token == null || prevOffset == lexer.getCurrentPosition().getOffset()) {
+        break;
+      }
+      if (!headerPassed) {
+        headerPassed = token == MindMapLexer.TokenType.HEAD_DELIMITER;
+        continue;
+      }
+      switch (token) {
+        case TOPIC_LEVEL: {
+          final int level = lexer.countTokenStartChars('#');
+          if (level == 1) {
+            rootTopics++;
+          } else if (level == 2 && rootTopics > 0) {
+            found.add(lexer.getTokenStartOffset(), !pendingExtra);
+          }
+        }
+        break;
+        case EXTRA_TYPE: {
+          pendingExtra = true;
+        }
+        break;
+        case ATTRIBUTE:
+        case EXTRA_TEXT:
+        case UNKNOWN_LINE: {
+          pendingExtra = false;
+        }
+        break;
+        default:
+          break;
+      }
+    }
+
+    if (headerPassed && rootTopics == 1) {
+      this.sections = Arrays.copyOf(found.starts, found.size);
+      this.clean = Arrays.copyOf(found.clean, found.size);
+    }
+  }
+}
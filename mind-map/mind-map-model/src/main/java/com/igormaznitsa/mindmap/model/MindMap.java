@@ -17,22 +17,32 @@ package com.igormaznitsa.mindmap.model;
 
 import com.igormaznitsa.mindmap.model.logger.Logger;
 import com.igormaznitsa.mindmap.model.logger.LoggerFactory;
+import com.igormaznitsa.mindmap.model.nio.Paths;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,11 +53,12 @@ import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FilenameUtils;
 
+import com.igormaznitsa.meta.annotation.MayContainNull;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 import com.igormaznitsa.meta.common.utils.Assertions;
-import com.igormaznitsa.mindmap.model.parser.MindMapLexer;
+import com.igormaznitsa.mindmap.model.parser.MindMapReader;
 
 public final class MindMap implements Serializable, Constants, TreeModel, Iterable<Topic> {
 
@@ -56,9 +67,12 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   private static final Logger LOGGER = LoggerFactory.getLogger(MindMap.class);
 
   @Nullable
-  private Topic root;
+  private volatile Topic root;
 
-  private final transient Lock locker = new ReentrantLock();
+  private final transient ReentrantReadWriteLock locker = new ReentrantReadWriteLock();
+  private final transient Lock readLocker = this.locker.readLock();
+  private final transient Lock writeLocker = this.locker.writeLock();
+  private final transient Object indexLocker = new Object();
   private final Map<String, String> attributes = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
   private static final Pattern PATTERN_ATTRIBUTES = Pattern.compile("^\\s*\\>\\s(.+)$"); //NOI18N
   private static final Pattern PATTERN_ATTRIBUTE = Pattern.compile("[,]?\\s*([\\S]+?)\\s*=\\s*(\\`+)(.*?)\\2"); //NOI18N
@@ -66,12 +80,39 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   private static final String GENERATOR_VERSION_NAME = "__version__"; //NOI18N
   public static final String FORMAT_VERSION = "1.1"; //NOI18N
 
-  private final transient List<TreeModelListener> treeListeners = new ArrayList<TreeModelListener>();
+  private static final int WRITE_BUFFER_SIZE = 16384;
+
+  private final transient List<TreeModelListener> treeListeners = new CopyOnWriteArrayList<TreeModelListener>();
+  private final transient List<MindMapModelListener> modelListeners = new CopyOnWriteArrayList<MindMapModelListener>();
+
+  @Nullable
+  private transient Map<String, Topic> uidIndex;
+  private transient boolean uidIndexHasDuplicates;
+  @Nullable
+  private transient Map<String, Set<Topic>> linkIndex;
+  @Nullable
+  private transient FileLinkIndex fileLinkIndex;
+  @Nullable
+  private transient AncestryIndex ancestryIndex;
+  private transient volatile int structureGeneration;
+  private transient int modificationCounter;
+  @Nullable
+  private transient WeakReference<MindMap> lastSnapshot;
+  private transient int lastSnapshotModification;
+  private transient volatile boolean readOnly;
+
+  private transient int batchDepth;
+  private transient boolean batchChanged;
+  @Nullable
+  private transient List<MindMapModelEvent> batchEvents;
+  @Nullable
+  private transient Set<BatchKey> batchKeys;
 
   private final MindMapController controller;
 
   public MindMap(@Nullable final MindMapController nullableController, final boolean makeRoot) {
     this.controller = nullableController;
+    this.attributes.put(GENERATOR_VERSION_NAME, FORMAT_VERSION);
     if (makeRoot) {
       this.root = new Topic(this, null, "");
     }
@@ -85,43 +126,21 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   }
 
   public MindMap(@Nullable final MindMapController nullableController, @Nonnull final Reader reader) throws IOException {
-    this.controller = nullableController;
-    final String text = IOUtils.toString(Assertions.assertNotNull(reader));
-
-    final MindMapLexer lexer = new MindMapLexer();
-    lexer.start(text, 0, text.length(), MindMapLexer.TokenType.HEAD_LINE);
-
-    Topic rootTopic = null;
-
-    boolean process = true;
-
-    while (process) {
-      final int oldLexerPosition = lexer.getCurrentPosition().getOffset();
-      lexer.advance();
-      final boolean lexerPositionWasNotChanged = oldLexerPosition == lexer.getCurrentPosition().getOffset();
-
-      final MindMapLexer.TokenType token = lexer.getTokenType();
-      if (token == null || lexerPositionWasNotChanged) {
-        throw new IllegalArgumentException("Wrong format of mind map, end of header is not found");
-      }
-      switch (token) {
-        case HEAD_LINE:
-          continue;
-        case ATTRIBUTE: {
-          fillMapByAttributes(lexer.getTokenText(), this.attributes);
-        }
-        break;
-        case HEAD_DELIMITER: {
-          process = false;
-          rootTopic = Topic.parse(this, lexer);
-        }
-        break;
-        default:
-          break;
-      }
-    }
+    this(nullableController, reader, new StringPool());
+  }
 
-    this.root = rootTopic;
+  /**
+   * Load mind map from reader, attribute names and values of topics are shared through string pool.
+   *
+   * @param nullableController controller of the mind map, can be null
+   * @param reader source of mind map text
+   * @param pool pool to share instances of strings during loading, it can be used to get statistics
+   * @throws IOException it will be thrown for transport errors
+   * @since 1.2.3
+   */
+  public MindMap(@Nullable final MindMapController nullableController, @Nonnull final Reader reader, @Nonnull final StringPool pool) throws IOException {
+    this.controller = nullableController;
+    this.root = Topic.parse(this, new MindMapReader(Assertions.assertNotNull(reader)), this.attributes, Assertions.assertNotNull(pool));
     this.attributes.put(GENERATOR_VERSION_NAME, FORMAT_VERSION);
   }
 
@@ -137,22 +156,22 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
 
     Topic result = null;
 
-    this.locker.lock();
+    this.readLocker.lock();
     try {
-      boolean startFound = start == null;
-      for (final Topic t : this) {
-        if (startFound) {
-          if (t.containsPattern(baseFolder, pattern, findInTopicText, extrasToFind)) {
-            result = t;
-            break;
+      final Topic rootTopic = this.root;
+      if (rootTopic != null && (start == null || start.isAttachedToMap())) {
+        final TopicTreeIterator iterator = start == null ? new TopicTreeIterator(rootTopic, true) : new TopicTreeIterator(rootTopic, start);
+        result = iterator.traverse(new TopicVisitor() {
+          @Override
+          @Nonnull
+          public Decision visit(@Nonnull final Topic topic) {
+            return topic.containsPattern(baseFolder, pattern, findInTopicText, extrasToFind) ? Decision.STOP : Decision.CONTINUE;
           }
-        } else if (t == start) {
-          startFound = true;
-        }
+        });
       }
     }
     finally {
-      this.locker.unlock();
+      this.readLocker.unlock();
     }
 
     return result;
@@ -166,32 +185,91 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
 
     Topic result = null;
 
-    this.locker.lock();
+    this.readLocker.lock();
     try {
-      final List<Topic> plain = this.makePlainList();
-      int startIndex = start == null ? plain.size() : plain.indexOf(start);
-      if (startIndex < 0) {
+      final Topic rootTopic = this.root;
+      if (start != null && (rootTopic == null || !start.isAttachedToMap())) {
         throw new IllegalArgumentException("It looks like that topic doesn't belong to the mind map");
       }
-      if (startIndex > 0) {
-        while (startIndex >= 0) {
-          final Topic candidate = plain.get(--startIndex);
+      if (rootTopic != null) {
+        // walk in reverse pre-order, stack keeps parents and indexes of the current topic in them
+        final List<Topic> parents = new ArrayList<Topic>();
+        final List<Integer> indexes = new ArrayList<Integer>();
+        Topic candidate;
+        if (start == null) {
+          candidate = rootTopic;
+          while (candidate.getChildCount() > 0) {
+            parents.add(candidate);
+            indexes.add(candidate.getChildCount() - 1);
+            candidate = candidate.getChildAt(candidate.getChildCount() - 1);
+          }
+        } else {
+          final Topic[] path = start.getPath();
+          for (int i = 0; i < path.length - 1; i++) {
+            parents.add(path[i]);
+            indexes.add(path[i].indexOfChild(path[i + 1]));
+          }
+          candidate = findPrevInPreorder(parents, indexes);
+        }
+
+        while (candidate != null) {
           if (candidate.containsPattern(baseFolder, pattern, findInTopicText, extrasForSearch)) {
             result = candidate;
             break;
           }
+          candidate = findPrevInPreorder(parents, indexes);
         }
       }
     }
     finally {
-      this.locker.unlock();
+      this.readLocker.unlock();
     }
 
     return result;
   }
 
+  @Nullable
+  private static Topic findPrevInPreorder(@Nonnull @MustNotContainNull final List<Topic> parents, @Nonnull @MustNotContainNull final List<Integer> indexes) {
+    final int top = parents.size() - 1;
+    if (top < 0) {
+      return null;
+    }
+    final int index = indexes.get(top);
+    if (index == 0) {
+      indexes.remove(top);
+      return parents.remove(top);
+    }
+
+    indexes.set(top, index - 1);
+    Topic result = parents.get(top).getChildAt(index - 1);
+    while (result.getChildCount() > 0) {
+      parents.add(result);
+      indexes.add(result.getChildCount() - 1);
+      result = result.getChildAt(result.getChildCount() - 1);
+    }
+    return result;
+  }
+
+  /**
+   * Visit all topics of the mind map in pre-order, the root is the first visited topic. The mind map is locked for reading during traversal so that the visitor must not change it.
+   *
+   * @param visitor visitor of topics, it can skip children of topic or stop traversal
+   * @return topic for which visitor returned {@link TopicVisitor.Decision#STOP}, null if all topics were visited
+   * @since 1.2.3
+   */
+  @Nullable
+  public Topic traverse(@Nonnull final TopicVisitor visitor) {
+    this.readLocker.lock();
+    try {
+      return new TopicTreeIterator(this.root, true).traverse(Assertions.assertNotNull(visitor));
+    }
+    finally {
+      this.readLocker.unlock();
+    }
+  }
+
   public void setRoot(@Nullable final Topic newRoot, final boolean makeNotification) {
-    this.locker.lock();
+    lock();
     try {
       if (newRoot == null) {
         this.root = newRoot;
@@ -201,12 +279,33 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
         }
         this.root = newRoot;
       }
+      topicStructureChanged();
       if (makeNotification) {
         fireModelChanged();
       }
     }
     finally {
-      this.locker.unlock();
+      unlock();
+    }
+  }
+
+  /**
+   * Replace attributes and topics of the mind map by content of text, listeners get notification about structure change.
+   *
+   * @param reader source of mind map text
+   * @throws IOException it will be thrown for transport errors
+   */
+  void reload(@Nonnull final Reader reader) throws IOException {
+    final MindMap parsed = new MindMap(this.controller, reader);
+    lock();
+    try {
+      this.attributes.clear();
+      this.attributes.putAll(parsed.attributes);
+      final Topic parsedRoot = parsed.root;
+      setRoot(parsedRoot == null ? null : new Topic(this, parsedRoot, true), true);
+    }
+    finally {
+      unlock();
     }
   }
 
@@ -215,96 +314,301 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     return this.controller;
   }
 
+  /**
+   * Get iterator over all topics of the mind map in pre-order, the root is the first one. Method remove() of the iterator removes the last returned topic from its parent.
+   *
+   * @return iterator over all topics
+   */
   @Override
   @Nonnull
   public Iterator<Topic> iterator() {
-    final Topic theroot = this.root;
-
-    return new Iterator<Topic>() {
-      Topic topicroot = theroot;
-      Iterator<Topic> children;
-
-      @Override
-      public void remove() {
-        this.children.remove();
-      }
+    return new TopicTreeIterator(this.root, true);
+  }
 
-      @Override
-      public boolean hasNext() {
-        return this.topicroot != null || (this.children != null && this.children.hasNext());
-      }
+  public boolean isEmpty() {
+    return this.root == null;
+  }
 
-      @Override
-      @Nonnull
-      public Topic next() {
-        final Topic result;
-        if (this.topicroot != null) {
-          result = this.topicroot;
-          this.topicroot = null;
-          this.children = result.iterator();
-        } else if (this.children != null) {
-          result = this.children.next();
-        } else {
-          throw new NoSuchElementException();
+  /**
+   * Make read-only snapshot of the current state of the mind map. The snapshot can be read from any thread without locking, its topics are copies so that changes of the mind map don't affect it. The snapshot is reused while the mind map is not changed and the snapshot is still in use, so that it is shared between readers and payloads of its topics can't be changed, use {@link #makeCopy(java.lang.String)} to get private work map.
+   *
+   * @return read-only snapshot of the mind map, the mind map itself if it is read-only
+   * @see #isReadOnly()
+   * @since 1.2.3
+   */
+  @Nonnull
+  public MindMap snapshot() {
+    if (this.readOnly) {
+      return this;
+    }
+    this.readLocker.lock();
+    try {
+      synchronized (this.indexLocker) {
+        MindMap result = this.lastSnapshot == null ? null : this.lastSnapshot.get();
+        if (result == null || this.lastSnapshotModification != this.modificationCounter) {
+          result = new MindMap(null, false);
+          result.attributes.putAll(this.attributes);
+          final Topic rootTopic = this.root;
+          result.root = rootTopic == null ? null : new Topic(result, rootTopic, true);
+          result.readOnly = true;
+          this.lastSnapshot = new WeakReference<MindMap>(result);
+          this.lastSnapshotModification = this.modificationCounter;
         }
         return result;
       }
-    };
+    }
+    finally {
+      this.readLocker.unlock();
+    }
   }
 
-  public boolean isEmpty() {
-    this.locker.lock();
+  /**
+   * Make new copy of the current state of the mind map, the copy is made under read lock so that it can be made from a read-only snapshot or from the mind map which is being changed by another thread. The copy is neither read-only nor shared so that it can be used as private work map, for instance to keep payloads of topics during rendering.
+   *
+   * @param attribute name of the attribute to be removed from all topics of the copy, can be null
+   * @return new changeable copy of the mind map
+   * @see #snapshot()
+   * @since 1.2.3
+   */
+  @Nonnull
+  public MindMap makeCopy(@Nullable final String attribute) {
+    this.readLocker.lock();
     try {
-      return this.root == null;
+      final MindMap result = new MindMap(null, false);
+      result.attributes.putAll(this.attributes);
+      final Topic rootTopic = this.root;
+      if (rootTopic != null) {
+        result.root = new Topic(result, rootTopic, true);
+        if (attribute != null) {
+          for (final Topic t : result) {
+            t.setAttribute(attribute, null);
+          }
+        }
+      }
+      return result;
     }
     finally {
-      this.locker.unlock();
+      this.readLocker.unlock();
+    }
+  }
+
+  /**
+   * Check that the mind map is read-only snapshot. Any attempt to change such mind map, including payloads of its topics, throws IllegalStateException.
+   *
+   * @return true if the mind map is read-only, false otherwise
+   * @see #snapshot()
+   * @since 1.2.3
+   */
+  public boolean isReadOnly() {
+    return this.readOnly;
+  }
+
+  /**
+   * Check that the mind map can be changed.
+   *
+   * @throws IllegalStateException if the mind map is read-only snapshot
+   */
+  void assertNotReadOnly() {
+    if (this.readOnly) {
+      throw new IllegalStateException("Snapshot of mind map is read-only");
     }
   }
 
   private void fireModelChanged() {
     final Topic rootTopic = this.root;
-    final TreeModelEvent evt = new TreeModelEvent(this, rootTopic == null ? (Topic[]) null : rootTopic.getPath());
-    for (final TreeModelListener l : this.treeListeners) {
-      l.treeStructureChanged(evt);
+    if (this.batchDepth > 0) {
+      this.batchChanged = true;
+      if (!this.modelListeners.isEmpty()) {
+        addBatchEvent(new MindMapModelEvent(this, MindMapModelEvent.Type.STRUCTURE_CHANGED, rootTopic, null, -1, null, null));
+      }
+      return;
+    }
+    if (!this.modelListeners.isEmpty()) {
+      fireModelEvent(new MindMapModelEvent(this, MindMapModelEvent.Type.STRUCTURE_CHANGED, rootTopic, null, -1, null, null));
+    }
+    if (!this.treeListeners.isEmpty()) {
+      final TreeModelEvent evt = new TreeModelEvent(this, rootTopic == null ? (Topic[]) null : rootTopic.getPath());
+      for (final TreeModelListener l : this.treeListeners) {
+        l.treeStructureChanged(evt);
+      }
     }
   }
 
-  private void fireTopicChanged(@Nullable final Topic topic) {
-    final TreeModelEvent evt = new TreeModelEvent(this, topic == null ? null : topic.getPath());
-    for (final TreeModelListener l : this.treeListeners) {
-      l.treeNodesChanged(evt);
+  private void fireTopicEvent(@Nonnull final MindMapModelEvent.Type type, @Nonnull final Topic topic, @Nullable final Topic parent, final int index, @Nullable final String name, @Nullable final Extra.ExtraType extraType) {
+    if (this.batchDepth > 0) {
+      this.batchChanged = true;
+      if (!this.modelListeners.isEmpty()) {
+        addBatchEvent(new MindMapModelEvent(this, type, topic, parent, index, name, extraType));
+      }
+      return;
+    }
+    if (!this.modelListeners.isEmpty()) {
+      fireModelEvent(new MindMapModelEvent(this, type, topic, parent, index, name, extraType));
+    }
+    if (!this.treeListeners.isEmpty()) {
+      final TreeModelEvent evt;
+      if (parent == null) {
+        evt = new TreeModelEvent(this, topic.getPath(), null, null);
+      } else if (type == MindMapModelEvent.Type.TOPIC_MOVED) {
+        evt = new TreeModelEvent(this, parent.getPath());
+      } else {
+        evt = new TreeModelEvent(this, parent.getPath(), new int[]{index}, new Object[]{topic});
+      }
+      for (final TreeModelListener l : this.treeListeners) {
+        switch (type) {
+          case TOPIC_INSERTED:
+            l.treeNodesInserted(evt);
+            break;
+          case TOPIC_REMOVED:
+            l.treeNodesRemoved(evt);
+            break;
+          case TOPIC_MOVED:
+            l.treeStructureChanged(evt);
+            break;
+          default:
+            l.treeNodesChanged(evt);
+            break;
+        }
+      }
+    }
+  }
+
+  private void addBatchEvent(@Nonnull final MindMapModelEvent event) {
+    List<MindMapModelEvent> events = this.batchEvents;
+    Set<BatchKey> keys = this.batchKeys;
+    if (events == null || keys == null) {
+      events = new ArrayList<MindMapModelEvent>();
+      keys = new HashSet<BatchKey>();
+      this.batchEvents = events;
+      this.batchKeys = keys;
+    }
+    switch (event.getType()) {
+      case TOPIC_TEXT_CHANGED:
+      case TOPIC_ATTRIBUTE_CHANGED:
+      case TOPIC_EXTRA_CHANGED:
+      case TOPIC_CODE_SNIPPET_CHANGED: {
+        // only the fact of change is important so that repeated changes are reported once
+        if (keys.add(new BatchKey(event))) {
+          events.add(event);
+        }
+      }
+      break;
+      default: {
+        events.add(event);
+      }
+      break;
+    }
+  }
+
+  /**
+   * Start batch of changes. The mind map is locked for changes until the batch end, events are not sent during batch but collected and sent as single event in the end of the most outer batch. Batches can be nested.
+   *
+   * @see #endBatch()
+   * @since 1.2.3
+   */
+  public void beginBatch() {
+    lock();
+    this.batchDepth++;
+  }
+
+  /**
+   * End batch of changes started by {@link #beginBatch()}. If there were changes then listeners of typed events get single {@link MindMapModelEvent.Type#BATCH} event and tree model listeners get single structure change event for the root.
+   *
+   * @throws IllegalStateException if there is not any batch started by the current thread
+   * @since 1.2.3
+   */
+  public void endBatch() {
+    if (!this.locker.isWriteLockedByCurrentThread() || this.batchDepth <= 0) {
+      throw new IllegalStateException("There is not any batch started by the thread");
+    }
+    try {
+      this.batchDepth--;
+      if (this.batchDepth == 0 && this.batchChanged) {
+        final List<MindMapModelEvent> events = this.batchEvents;
+        this.batchChanged = false;
+        this.batchEvents = null;
+        this.batchKeys = null;
+
+        final Topic rootTopic = this.root;
+        if (!this.modelListeners.isEmpty()) {
+          fireModelEvent(new MindMapModelEvent(this, rootTopic, events == null ? Collections.<MindMapModelEvent>emptyList() : events));
+        }
+        if (!this.treeListeners.isEmpty()) {
+          final TreeModelEvent evt = new TreeModelEvent(this, rootTopic == null ? (Topic[]) null : rootTopic.getPath());
+          for (final TreeModelListener l : this.treeListeners) {
+            l.treeStructureChanged(evt);
+          }
+        }
+      }
+    }
+    finally {
+      unlock();
     }
   }
 
+  /**
+   * Check that the current thread has started batch of changes.
+   *
+   * @return true if batch is started by the current thread, false otherwise
+   * @since 1.2.3
+   */
+  public boolean isInBatch() {
+    return this.locker.isWriteLockedByCurrentThread() && this.batchDepth > 0;
+  }
+
+  private void fireModelEvent(@Nonnull final MindMapModelEvent event) {
+    for (final MindMapModelListener l : this.modelListeners) {
+      l.onMindMapModelEvent(event);
+    }
+  }
+
+  /**
+   * Add listener of typed changes of the mind map. Listeners are notified by every change of topics in the thread which makes the change.
+   *
+   * @param l listener to be added
+   * @since 1.2.3
+   */
+  public void addMindMapModelListener(@Nonnull final MindMapModelListener l) {
+    this.modelListeners.add(Assertions.assertNotNull(l));
+  }
+
+  /**
+   * Remove listener of typed changes of the mind map.
+   *
+   * @param l listener to be removed
+   * @since 1.2.3
+   */
+  public void removeMindMapModelListener(@Nonnull final MindMapModelListener l) {
+    this.modelListeners.remove(l);
+  }
+
   @Nullable
   public String getAttribute(@Nonnull final String name) {
     return this.attributes.get(name);
   }
 
   public void setAttribute(@Nonnull final String name, @Nullable final String value) {
-    this.locker.lock();
+    lock();
     try {
-      if (value == null) {
-        this.attributes.remove(name);
-      } else {
-        this.attributes.put(name, value);
+      final String oldValue = value == null ? this.attributes.remove(name) : this.attributes.put(name, value);
+      if (value == null ? oldValue != null : !value.equals(oldValue)) {
+        this.modificationCounter++;
       }
     }
     finally {
-      this.locker.unlock();
+      unlock();
     }
   }
 
   public void resetPayload() {
-    this.locker.lock();
+    lock();
     try {
       if (this.root != null) {
         resetPayload(this.root);
       }
     }
     finally {
-      this.locker.unlock();
+      unlock();
     }
   }
 
@@ -345,16 +649,19 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     final List<Topic> result = new ArrayList<Topic>();
     final Topic rootTopic = this.root;
     if (rootTopic != null) {
-      this.locker.lock();
+      this.readLocker.lock();
       try {
-        for (final Topic t : origList) {
-          if (rootTopic.containTopic(t)) {
-            result.add(t);
+        if (!origList.isEmpty()) {
+          final AncestryIndex index = getAncestryIndex();
+          for (final Topic t : origList) {
+            if (index.contains(t)) {
+              result.add(t);
+            }
           }
         }
       }
       finally {
-        this.locker.unlock();
+        this.readLocker.unlock();
       }
     }
     return result;
@@ -363,48 +670,174 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   @Override
   @Nullable
   public Topic getRoot() {
-    this.locker.lock();
-    try {
-      return this.root;
+    return this.root;
+  }
+
+  static boolean fillMapByAttributes(@Nonnull final String line, @Nonnull final Map<String, String> map) {
+    return fillMapByAttributes(line, map, null);
+  }
+
+  /**
+   * Parse attribute line and place found attributes into map.
+   *
+   * @param line attribute line
+   * @param map map to be filled by attributes
+   * @param pool pool to share instances of names and values, can be null
+   * @return true if the line is attribute line, false otherwise
+   */
+  static boolean fillMapByAttributes(@Nonnull final String line, @Nonnull final Map<String, String> map, @Nullable final StringPool pool) {
+    final int bodyStart = findAttributesBodyStart(line);
+    if (bodyStart < 0) {
+      return false;
     }
-    finally {
-      this.locker.unlock();
+    final int bodyEnd = findAttributesBodyEnd(line, bodyStart);
+    if (bodyEnd < 0 || !parseAttributes(line, bodyStart, bodyEnd, map, pool)) {
+      // unusual line, let regular expressions process it
+      return fillMapByAttributesWithRegex(line, map, pool);
     }
+    return true;
   }
 
-  static boolean fillMapByAttributes(@Nonnull final String line, @Nonnull final Map<String, String> map) {
+  private static int findAttributesBodyStart(@Nonnull final String line) {
+    int index = 0;
+    while (index < line.length() && ModelUtils.isRegexWhitespace(line.charAt(index))) {
+      index++;
+    }
+    if (index + 1 >= line.length() || line.charAt(index) != '>' || !ModelUtils.isRegexWhitespace(line.charAt(index + 1))) {
+      return -1;
+    }
+    return index + 2;
+  }
+
+  private static boolean isLineTerminator(final char chr) {
+    return chr == '\n' || chr == '\r' || chr == '\u0085' || chr == '\u2028' || chr == '\u2029';
+  }
+
+  private static int findAttributesBodyEnd(@Nonnull final String line, final int bodyStart) {
+    int end = line.length();
+    if (line.endsWith("\r\n")) { //NOI18N
+      end -= 2;
+    } else if (end > bodyStart && isLineTerminator(line.charAt(end - 1))) {
+      end--;
+    }
+    if (end <= bodyStart) {
+      return -1;
+    }
+    for (int i = bodyStart; i < end; i++) {
+      if (isLineTerminator(line.charAt(i))) {
+        return -1;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Parse attributes in the same manner as PATTERN_ATTRIBUTE for well-formed text like <code>name1=`value1`,name2=``value`2``</code>.
+   *
+   * @param line source text
+   * @param start start of attributes
+   * @param end end of attributes
+   * @param map map to be filled by found attributes
+   * @param pool pool to share instances of names and values, can be null
+   * @return false if the text contains something unusual and must be processed by regular expression
+   */
+  private static boolean parseAttributes(@Nonnull final String line, final int start, final int end, @Nonnull final Map<String, String> map, @Nullable final StringPool pool) {
+    int index = start;
+    while (true) {
+      if (index < end && line.charAt(index) == ',') {
+        index++;
+      }
+      index = skipWhitespaces(line, index, end);
+      if (index >= end) {
+        return true;
+      }
+
+      final int nameStart = index;
+      while (index < end && line.charAt(index) != '=' && !ModelUtils.isRegexWhitespace(line.charAt(index))) {
+        index++;
+      }
+      final int nameEnd = index;
+      index = skipWhitespaces(line, index, end);
+      if (nameStart == nameEnd || index >= end || line.charAt(index) != '=') {
+        return false;
+      }
+      index = skipWhitespaces(line, index + 1, end);
+
+      final int quotesStart = index;
+      while (index < end && line.charAt(index) == '`') {
+        index++;
+      }
+      final int quotes = index - quotesStart;
+      if (quotes == 0) {
+        return false;
+      }
+
+      final int valueEnd = findBackticks(line, index, end, quotes);
+      if (valueEnd < 0) {
+        return false;
+      }
+      if (pool == null) {
+        map.put(line.substring(nameStart, nameEnd), line.substring(index, valueEnd));
+      } else {
+        map.put(pool.intern(line, nameStart, nameEnd), pool.intern(line, index, valueEnd));
+      }
+      index = valueEnd + quotes;
+    }
+  }
+
+  private static int skipWhitespaces(@Nonnull final String line, int index, final int end) {
+    while (index < end && ModelUtils.isRegexWhitespace(line.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  private static int findBackticks(@Nonnull final String line, final int start, final int end, final int number) {
+    int counter = 0;
+    for (int i = start; i < end; i++) {
+      if (line.charAt(i) == '`') {
+        counter++;
+        if (counter == number) {
+          return i - number + 1;
+        }
+      } else {
+        counter = 0;
+      }
+    }
+    return -1;
+  }
+
+  static boolean fillMapByAttributesWithRegex(@Nonnull final String line, @Nonnull final Map<String, String> map, @Nullable final StringPool pool) {
     final Matcher attrmatcher = PATTERN_ATTRIBUTES.matcher(line);
     if (attrmatcher.find()) {
       final Matcher attrParser = PATTERN_ATTRIBUTE.matcher(attrmatcher.group(1));
       while (attrParser.find()) {
-        map.put(attrParser.group(1), attrParser.group(3));
+        final String name = attrParser.group(1);
+        final String value = attrParser.group(3);
+        map.put(pool == null ? name : pool.intern(name), pool == null ? value : pool.intern(value));
       }
       return true;
     }
     return false;
   }
 
-  @Nonnull
-  static String allAttributesAsString(@Nonnull final Map<String, String> map) throws IOException {
-    final StringBuilder buffer = new StringBuilder();
-
+  static void writeAttributes(@Nonnull final Writer out, @Nonnull final Map<String, String> map) throws IOException {
     boolean nonfirst = false;
     for (final Map.Entry<String, String> e : map.entrySet()) {
       if (nonfirst) {
-        buffer.append(',');
+        out.append(',');
       } else {
         nonfirst = true;
       }
-      buffer.append(e.getKey()).append('=').append(ModelUtils.makeMDCodeBlock(e.getValue()));
+      out.append(e.getKey()).append('=');
+      ModelUtils.writeMDCodeBlock(out, e.getValue());
     }
-
-    return buffer.toString();
   }
 
   @Nonnull
   public String packToString() {
     final StringWriter writer;
-    this.locker.lock();
+    this.readLocker.lock();
     try {
       writer = new StringWriter(16384);
       try {
@@ -415,19 +848,27 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
       }
     }
     finally {
-      locker.unlock();
+      this.readLocker.unlock();
     }
     return writer.toString();
   }
 
   @Nonnull
   public <T extends Writer> T write(@Nonnull final T out) throws IOException {
-    this.locker.lock();
+    this.readLocker.lock();
     try {
       out.append("Mind Map generated by NB MindMap plugin").append(NEXT_PARAGRAPH); //NOI18N
-      this.attributes.put(GENERATOR_VERSION_NAME, FORMAT_VERSION);
-      if (!this.attributes.isEmpty()) {
-        out.append("> ").append(MindMap.allAttributesAsString(this.attributes)).append(NEXT_LINE); //NOI18N
+      Map<String, String> attributesToWrite = this.attributes;
+      if (!FORMAT_VERSION.equals(attributesToWrite.get(GENERATOR_VERSION_NAME))) {
+        // the method works under read lock so that the map can't be changed here
+        attributesToWrite = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
+        attributesToWrite.putAll(this.attributes);
+        attributesToWrite.put(GENERATOR_VERSION_NAME, FORMAT_VERSION);
+      }
+      if (!attributesToWrite.isEmpty()) {
+        out.append("> "); //NOI18N
+        writeAttributes(out, attributesToWrite);
+        out.append(NEXT_LINE);
       }
       out.append("---").append(NEXT_LINE); //NOI18N
       final Topic rootTopic = this.root;
@@ -436,22 +877,91 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
       }
     }
     finally {
-      this.locker.unlock();
+      this.readLocker.unlock();
     }
     return out;
   }
 
+  /**
+   * Write mind map text into output stream through buffered encoder without building of the whole text in memory. The stream is flushed but not closed.
+   *
+   * @param out output stream
+   * @param charset charset to encode text
+   * @throws IOException it will be thrown for transport errors
+   * @since 1.2.3
+   */
+  public void write(@Nonnull final OutputStream out, @Nonnull final Charset charset) throws IOException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset), WRITE_BUFFER_SIZE);
+    write(writer);
+    writer.flush();
+  }
+
+  /**
+   * Save mind map into file. The text is written into temp file in the same folder and then the temp file replaces the target one, so that the target file is never left half-written.
+   *
+   * @param file target file
+   * @param charset charset to encode text
+   * @throws IOException it will be thrown for transport errors
+   * @since 1.2.3
+   */
+  public void saveToFile(@Nonnull final File file, @Nonnull final Charset charset) throws IOException {
+    final File target = file.getAbsoluteFile();
+    final File tempFile = File.createTempFile(target.getName() + '.', ".tmp", target.getParentFile()); //NOI18N
+    boolean saved = false;
+    try {
+      final FileOutputStream out = new FileOutputStream(tempFile);
+      try {
+        write(out, charset);
+        out.getFD().sync();
+      }
+      finally {
+        out.close();
+      }
+      Paths.replaceFile(tempFile, target);
+      saved = true;
+    }
+    finally {
+      if (!saved && !tempFile.delete()) {
+        LOGGER.warn("Can't delete temp file : " + tempFile); //NOI18N
+      }
+    }
+  }
+
+  /**
+   * Lock the mind map for changes, the lock is exclusive.
+   *
+   * @throws IllegalStateException if the mind map is read-only snapshot
+   */
   public void lock() {
-    this.locker.lock();
+    assertNotReadOnly();
+    this.writeLocker.lock();
   }
 
   public void unlock() {
-    this.locker.unlock();
+    this.writeLocker.unlock();
+  }
+
+  /**
+   * Lock the mind map for reading, several threads can read the mind map in the same time but they block writers. The lock can't be upgraded to exclusive one, so that the mind map must not be changed by the thread while it keeps the read lock.
+   *
+   * @since 1.2.3
+   */
+  public void lockRead() {
+    this.readLocker.lock();
+  }
+
+  /**
+   * Release read lock.
+   *
+   * @since 1.2.3
+   */
+  public void unlockRead() {
+    this.readLocker.unlock();
   }
 
   @Nullable
   public Topic cloneTopic(@Nullable final Topic topic, final boolean cloneFullTree) {
-    this.locker.lock();
+    lock();
     try {
       if (topic == null || topic == this.root) {
         return null;
@@ -469,12 +979,12 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
       return clonedtopic;
     }
     finally {
-      this.locker.unlock();
+      unlock();
     }
   }
 
   public boolean removeTopic(@Nullable final Topic topic) {
-    this.locker.lock();
+    lock();
     try {
       final boolean result;
       final Topic rootTopic = this.root;
@@ -487,8 +997,14 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
         rootTopic.removeAllChildren();
         result = true;
       } else {
-        rootTopic.removeTopic(topic);
-        result = rootTopic.removeAllLinksTo(topic);
+        if (topic != null) {
+          if (topic.getMap() == this && topic.isAttachedToMap()) {
+            topic.delete();
+          }
+          result = removeAllLinksTo(topic);
+        } else {
+          result = false;
+        }
       }
       if (result) {
         fireModelChanged();
@@ -497,7 +1013,7 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
       return result;
     }
     finally {
-      this.locker.unlock();
+      unlock();
     }
   }
 
@@ -507,44 +1023,408 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     if (link != null) {
       final Topic rootTopic = this.root;
       if (rootTopic != null) {
-        this.locker.lock();
+        this.readLocker.lock();
         try {
-          result = rootTopic.findForAttribute(ExtraTopic.TOPIC_UID_ATTR, link.getValue());
+          final String uid = link.getValue();
+          synchronized (this.indexLocker) {
+            result = getUidIndex().get(uid);
+            if (result != null && !uid.equals(result.getAttribute(ExtraTopic.TOPIC_UID_ATTR))) {
+              this.uidIndex = null;
+              result = getUidIndex().get(uid);
+            }
+          }
         }
         finally {
-          this.locker.unlock();
+          this.readLocker.unlock();
         }
       }
     }
     return result;
   }
 
+  @Nonnull
+  private Map<String, Topic> getUidIndex() {
+    synchronized (this.indexLocker) {
+      Map<String, Topic> result = this.uidIndex;
+      if (result == null) {
+        result = new HashMap<String, Topic>();
+        boolean duplicates = false;
+        for (final Topic t : this) {
+          final String uid = t.getAttribute(ExtraTopic.TOPIC_UID_ATTR);
+          if (uid != null) {
+            if (result.containsKey(uid)) {
+              duplicates = true;
+            } else {
+              result.put(uid, t);
+            }
+          }
+        }
+        this.uidIndex = result;
+        this.uidIndexHasDuplicates = duplicates;
+      }
+      return result;
+    }
+  }
+
+  @Nonnull
+  private Map<String, Set<Topic>> getLinkIndex() {
+    synchronized (this.indexLocker) {
+      Map<String, Set<Topic>> result = this.linkIndex;
+      if (result == null) {
+        result = new HashMap<String, Set<Topic>>();
+        for (final Topic t : this) {
+          registerLink(result, t, (ExtraTopic) t.getExtras().get(Extra.ExtraType.TOPIC));
+        }
+        this.linkIndex = result;
+      }
+      return result;
+    }
+  }
+
+  private static void registerLink(@Nonnull final Map<String, Set<Topic>> index, @Nonnull final Topic topic, @Nullable final ExtraTopic link) {
+    if (link != null) {
+      Set<Topic> sources = index.get(link.getValue());
+      if (sources == null) {
+        sources = new HashSet<Topic>();
+        index.put(link.getValue(), sources);
+      }
+      sources.add(topic);
+    }
+  }
+
+  private static void unregisterLink(@Nonnull final Map<String, Set<Topic>> index, @Nonnull final Topic topic, @Nullable final ExtraTopic link) {
+    if (link != null) {
+      final Set<Topic> sources = index.get(link.getValue());
+      if (sources != null && sources.remove(topic) && sources.isEmpty()) {
+        index.remove(link.getValue());
+      }
+    }
+  }
+
+  /**
+   * Remove all jump links to topic, only topics which really have such links are processed.
+   *
+   * @param topic target topic
+   * @return true if any link has been removed, false otherwise
+   */
+  private boolean removeAllLinksTo(@Nonnull final Topic topic) {
+    boolean result = false;
+    final String uid = topic.getAttribute(ExtraTopic.TOPIC_UID_ATTR);
+    if (uid != null) {
+      final Set<Topic> sources = getLinkIndex().get(uid);
+      if (sources != null) {
+        for (final Topic source : sources.toArray(new Topic[sources.size()])) {
+          final ExtraTopic link = (ExtraTopic) source.getExtras().get(Extra.ExtraType.TOPIC);
+          if (link != null && uid.equals(link.getValue())) {
+            source.removeExtra(Extra.ExtraType.TOPIC);
+            result = true;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private void registerUid(@Nonnull final Map<String, Topic> index, @Nonnull final Topic topic, @Nonnull final String uid) {
+    final Topic existing = index.get(uid);
+    if (existing != null && existing != topic && uid.equals(existing.getAttribute(ExtraTopic.TOPIC_UID_ATTR))) {
+      this.uidIndexHasDuplicates = true;
+    } else {
+      index.put(uid, topic);
+    }
+  }
+
+  private void unregisterUid(@Nonnull final Map<String, Topic> index, @Nonnull final Topic topic, @Nonnull final String uid) {
+    if (index.get(uid) == topic) {
+      if (this.uidIndexHasDuplicates) {
+        this.uidIndex = null;
+      } else {
+        index.remove(uid);
+      }
+    }
+  }
+
+  /**
+   * Notification from topic that its attribute has been changed.
+   *
+   * @param topic changed topic
+   * @param name name of attribute
+   * @param oldValue old value, null if the attribute was not presented
+   * @param newValue new value, null if the attribute has been removed
+   */
+  void topicAttributeChanged(@Nonnull final Topic topic, @Nonnull final String name, @Nullable final String oldValue, @Nullable final String newValue) {
+    this.modificationCounter++;
+    final AncestryIndex ancestry = this.ancestryIndex;
+    if (ancestry != null && ancestry.generation == this.structureGeneration) {
+      ancestry.attributeChanged(topic, name);
+    }
+    if (this.uidIndex != null && ExtraTopic.TOPIC_UID_ATTR.equals(name)) {
+      if (oldValue != null) {
+        unregisterUid(this.uidIndex, topic, oldValue);
+      }
+      final Map<String, Topic> index = this.uidIndex;
+      if (index != null && newValue != null && topic.isAttachedToMap()) {
+        registerUid(index, topic, newValue);
+      }
+    }
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_ATTRIBUTE_CHANGED, topic, topic.getParent(), topic.getIndexInParent(), name, null);
+  }
+
+  /**
+   * Notification from topic that its text has been changed.
+   *
+   * @param topic changed topic
+   */
+  void topicTextChanged(@Nonnull final Topic topic) {
+    this.modificationCounter++;
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_TEXT_CHANGED, topic, topic.getParent(), topic.getIndexInParent(), null, null);
+  }
+
+  /**
+   * Notification from topic that its code snippet has been changed.
+   *
+   * @param topic changed topic
+   * @param language language of the changed snippet
+   */
+  void topicCodeSnippetChanged(@Nonnull final Topic topic, @Nonnull final String language) {
+    this.modificationCounter++;
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_CODE_SNIPPET_CHANGED, topic, topic.getParent(), topic.getIndexInParent(), language, null);
+  }
+
+  /**
+   * Notification from topic that it has been added into topic tree with all its children.
+   *
+   * @param topic added topic
+   */
+  void topicAttached(@Nonnull final Topic topic) {
+    this.structureGeneration++;
+    this.modificationCounter++;
+    final Map<String, Topic> index = this.uidIndex;
+    if ((index != null || this.linkIndex != null || this.fileLinkIndex != null) && topic.isAttachedToMap()) {
+      for (final Topic t : topic.makeSubtreeList()) {
+        if (index != null) {
+          final String uid = t.getAttribute(ExtraTopic.TOPIC_UID_ATTR);
+          if (uid != null) {
+            registerUid(index, t, uid);
+          }
+        }
+        registerExtra(t, t.getExtras().get(Extra.ExtraType.TOPIC));
+        registerExtra(t, t.getExtras().get(Extra.ExtraType.FILE));
+      }
+    }
+    final Topic parent = topic.getParent();
+    if (parent != null) {
+      fireTopicEvent(MindMapModelEvent.Type.TOPIC_INSERTED, topic, parent, topic.getIndexInParent(), null, null);
+    }
+  }
+
+  /**
+   * Notification from topic that it has been removed from topic tree with all its children.
+   *
+   * @param parent former parent of the topic
+   * @param index former index of the topic in the parent
+   * @param topic removed topic
+   */
+  void topicDetached(@Nonnull final Topic parent, final int index, @Nonnull final Topic topic) {
+    this.structureGeneration++;
+    this.modificationCounter++;
+    if (this.uidIndex != null || this.linkIndex != null || this.fileLinkIndex != null) {
+      for (final Topic t : topic.makeSubtreeList()) {
+        final Map<String, Topic> uids = this.uidIndex;
+        if (uids != null) {
+          final String uid = t.getAttribute(ExtraTopic.TOPIC_UID_ATTR);
+          if (uid != null) {
+            unregisterUid(uids, t, uid);
+          }
+        }
+        unregisterExtra(t, t.getExtras().get(Extra.ExtraType.TOPIC));
+        unregisterExtra(t, t.getExtras().get(Extra.ExtraType.FILE));
+      }
+    }
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_REMOVED, topic, parent, index, null, null);
+  }
+
+  /**
+   * Notification from topic that its extra has been changed.
+   *
+   * @param topic changed topic
+   * @param oldValue old extra, null if there was not any extra of the type
+   * @param newValue new extra, null if the extra has been removed
+   */
+  void topicExtraChanged(@Nonnull final Topic topic, @Nullable final Extra<?> oldValue, @Nullable final Extra<?> newValue) {
+    this.modificationCounter++;
+    if (this.linkIndex != null || this.fileLinkIndex != null) {
+      unregisterExtra(topic, oldValue);
+      if (newValue != null && topic.isAttachedToMap()) {
+        registerExtra(topic, newValue);
+      }
+    }
+    final Extra<?> changed = newValue == null ? oldValue : newValue;
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_EXTRA_CHANGED, topic, topic.getParent(), topic.getIndexInParent(), null, changed == null ? null : changed.getType());
+  }
+
+  private void registerExtra(@Nonnull final Topic topic, @Nullable final Extra<?> extra) {
+    if (extra instanceof ExtraTopic) {
+      final Map<String, Set<Topic>> links = this.linkIndex;
+      if (links != null) {
+        registerLink(links, topic, (ExtraTopic) extra);
+      }
+    } else if (extra instanceof ExtraFile) {
+      final FileLinkIndex files = this.fileLinkIndex;
+      if (files != null) {
+        files.add(topic, (ExtraFile) extra);
+      }
+    }
+  }
+
+  private void unregisterExtra(@Nonnull final Topic topic, @Nullable final Extra<?> extra) {
+    if (extra instanceof ExtraTopic) {
+      final Map<String, Set<Topic>> links = this.linkIndex;
+      if (links != null) {
+        unregisterLink(links, topic, (ExtraTopic) extra);
+      }
+    } else if (extra instanceof ExtraFile) {
+      final FileLinkIndex files = this.fileLinkIndex;
+      if (files != null) {
+        files.remove(topic, (ExtraFile) extra);
+      }
+    }
+  }
+
+  /**
+   * Notification that structure of topic tree has been changed in some unknown way, all indexes are reset.
+   */
+  void topicStructureChanged() {
+    this.structureGeneration++;
+    this.modificationCounter++;
+    this.uidIndex = null;
+    this.linkIndex = null;
+    this.fileLinkIndex = null;
+  }
+
+  /**
+   * Notification from topic that it has been moved to another position inside its parent.
+   *
+   * @param topic moved topic
+   */
+  void topicOrderChanged(@Nonnull final Topic topic) {
+    this.structureGeneration++;
+    this.modificationCounter++;
+    fireTopicEvent(MindMapModelEvent.Type.TOPIC_MOVED, topic, topic.getParent(), topic.getIndexInParent(), null, null);
+  }
+
+  /**
+   * Get generation of topic tree structure. It is changed by every change of topic tree structure or order of topics, so it can be used to check that cached data about structure is still valid.
+   *
+   * @return current generation of the topic tree structure
+   * @since 1.2.3
+   */
+  public int getStructureGeneration() {
+    return this.structureGeneration;
+  }
+
+  @Nonnull
+  private AncestryIndex getAncestryIndex() {
+    synchronized (this.indexLocker) {
+      AncestryIndex result = this.ancestryIndex;
+      if (result == null || result.generation != this.structureGeneration) {
+        result = new AncestryIndex(this.root, this.structureGeneration);
+        this.ancestryIndex = result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Check that topic is presented in the topic tree of the mind map. Index of the tree is built after structure changes, so the check is fast for batches of topics.
+   *
+   * @param topic topic to be checked
+   * @return true if the topic is reachable from the root, false otherwise
+   * @since 1.2.3
+   */
+  public boolean containsTopic(@Nonnull final Topic topic) {
+    this.readLocker.lock();
+    try {
+      return topic.getMap() == this && getAncestryIndex().contains(topic);
+    }
+    finally {
+      this.readLocker.unlock();
+    }
+  }
+
+  /**
+   * Check that a topic is ancestor of another topic.
+   *
+   * @param ancestor supposed ancestor
+   * @param topic topic to be checked
+   * @return true if the ancestor is among ancestors of the topic, false otherwise
+   * @since 1.2.3
+   */
+  public boolean isAncestor(@Nonnull final Topic ancestor, @Nonnull final Topic topic) {
+    this.readLocker.lock();
+    try {
+      final AncestryIndex index = getAncestryIndex();
+      if (index.contains(ancestor) && index.contains(topic)) {
+        return index.isAncestor(ancestor, topic);
+      } else {
+        return topic.hasAncestor(ancestor);
+      }
+    }
+    finally {
+      this.readLocker.unlock();
+    }
+  }
+
+  /**
+   * Find value of attribute in the nearest ancestor which has the attribute, the topic itself is not checked. The result is the same as {@link Topic#findAttributeInAncestors(String)} but values are cached for whole tree.
+   *
+   * @param topic topic which ancestors should be checked
+   * @param attribute name of attribute
+   * @return found value or null
+   * @since 1.2.3
+   */
+  @Nullable
+  public String findAttributeInAncestors(@Nonnull final Topic topic, @Nonnull final String attribute) {
+    this.readLocker.lock();
+    try {
+      final AncestryIndex index = getAncestryIndex();
+      if (index.contains(topic)) {
+        return index.getInheritedValues(attribute)[topic.getTreeOrder()];
+      } else {
+        return topic.findAttributeInAncestors(attribute);
+      }
+    }
+    finally {
+      this.readLocker.unlock();
+    }
+  }
+
   @Nonnull
   @MustNotContainNull
   public List<Topic> findAllTopicsForExtraType(@Nonnull final Extra.ExtraType type) {
     final List<Topic> result = new ArrayList<Topic>();
     final Topic rootTopic = this.root;
     if (rootTopic != null) {
-      this.locker.lock();
+      this.readLocker.lock();
       try {
-        _findAllTopicsForExtraType(rootTopic, type, result);
+        rootTopic.traverse(new TopicVisitor() {
+          @Override
+          @Nonnull
+          public Decision visit(@Nonnull final Topic topic) {
+            if (topic.getExtras().containsKey(type)) {
+              result.add(topic);
+            }
+            return Decision.CONTINUE;
+          }
+        });
       }
       finally {
-        this.locker.unlock();
+        this.readLocker.unlock();
       }
     }
     return result;
   }
 
-  private void _findAllTopicsForExtraType(@Nonnull final Topic topic, @Nonnull final Extra.ExtraType type, @Nonnull @MustNotContainNull final List<Topic> result) {
-    if (topic.getExtras().containsKey(type)) {
-      result.add(topic);
-    }
-    for (final Topic c : topic.getChildren()) {
-      _findAllTopicsForExtraType(c, type, result);
-    }
-  }
-
   @Override
   @Nonnull
   public Object getChild(@Nonnull final Object parent, final int index) {
@@ -565,7 +1445,6 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   public void valueForPathChanged(@Nonnull final TreePath path, @Nullable final Object newValue) {
     if (newValue instanceof String) {
       ((Topic) path.getLastPathComponent()).setText((String) newValue);
-      fireTopicChanged((Topic) path.getLastPathComponent());
     } else {
       LOGGER.warn("Attempt to set non string value to path : " + path); //NOI18N
     }
@@ -586,16 +1465,197 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     this.treeListeners.remove(l);
   }
 
+  /**
+   * Key of change in batch, it is used to report repeated changes of the same topic property once.
+   */
+  private static final class BatchKey {
+
+    private final MindMapModelEvent.Type type;
+    private final Topic topic;
+    private final String name;
+    private final Extra.ExtraType extraType;
+
+    private BatchKey(@Nonnull final MindMapModelEvent event) {
+      this.type = event.getType();
+      this.topic = event.getTopic();
+      this.name = event.getName();
+      this.extraType = event.getExtraType();
+    }
+
+    @Override
+    public int hashCode() {
+      return (this.type.hashCode() * 31 + System.identityHashCode(this.topic)) * 31 + (this.name == null ? 0 : this.name.hashCode());
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof BatchKey) {
+        final BatchKey that = (BatchKey) obj;
+        return this.type == that.type && this.topic == that.topic && this.extraType == that.extraType && (this.name == null ? that.name == null : this.name.equals(that.name));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Index of topic tree in pre-order, every topic keeps its position and position of its last descendant so that ancestor check is just comparison of intervals. It is valid only for the structure generation for which it was built.
+   */
+  private static final class AncestryIndex {
+
+    private final int generation;
+    @MustNotContainNull
+    private final Topic[] topics;
+    private final Map<String, String[]> inheritedAttributes = new HashMap<String, String[]>();
+
+    private AncestryIndex(@Nullable final Topic root, final int generation) {
+      this.generation = generation;
+      final List<Topic> list = new ArrayList<Topic>();
+      final Iterator<Topic> iterator = new TopicTreeIterator(root, true);
+      while (iterator.hasNext()) {
+        final Topic topic = iterator.next();
+        topic.setTreeOrder(list.size());
+        list.add(topic);
+      }
+      this.topics = list.toArray(new Topic[list.size()]);
+      for (int i = this.topics.length - 1; i >= 0; i--) {
+        final Topic topic = this.topics[i];
+        final int children = topic.getChildCount();
+        topic.setTreeOrderEnd(children == 0 ? i : topic.getChildAt(children - 1).getTreeOrderEnd());
+      }
+    }
+
+    private boolean contains(@Nonnull final Topic topic) {
+      final int order = topic.getTreeOrder();
+      return order >= 0 && order < this.topics.length && this.topics[order] == topic;
+    }
+
+    private boolean isAncestor(@Nonnull final Topic ancestor, @Nonnull final Topic topic) {
+      return ancestor != topic && ancestor.getTreeOrder() <= topic.getTreeOrder() && topic.getTreeOrder() <= ancestor.getTreeOrderEnd();
+    }
+
+    @Nonnull
+    @MayContainNull
+    private synchronized String[] getInheritedValues(@Nonnull final String attribute) {
+      String[] result = this.inheritedAttributes.get(attribute);
+      if (result == null) {
+        result = new String[this.topics.length];
+        fillInheritedValues(result, attribute, 1, this.topics.length - 1);
+        this.inheritedAttributes.put(attribute, result);
+      }
+      return result;
+    }
+
+    private void fillInheritedValues(@Nonnull @MayContainNull final String[] values, @Nonnull final String attribute, final int from, final int to) {
+      for (int i = from; i <= to; i++) {
+        final Topic parent = this.topics[i].getParent();
+        if (parent != null) {
+          final String value = parent.getAttribute(attribute);
+          values[i] = value == null ? values[parent.getTreeOrder()] : value;
+        }
+      }
+    }
+
+    private synchronized void attributeChanged(@Nonnull final Topic topic, @Nonnull final String attribute) {
+      final String[] values = this.inheritedAttributes.get(attribute);
+      if (values != null && contains(topic)) {
+        fillInheritedValues(values, attribute, topic.getTreeOrder() + 1, topic.getTreeOrderEnd());
+      }
+    }
+  }
+
+  /**
+   * Index of file links of topics, paths are normalized absolute paths resolved for base folder.
+   */
+  private static final class FileLinkIndex {
+
+    private final File baseFolder;
+    private final TreeMap<String, Set<Topic>> paths = new TreeMap<String, Set<Topic>>();
+
+    private FileLinkIndex(@Nullable final File baseFolder) {
+      this.baseFolder = baseFolder;
+    }
+
+    private boolean isForBaseFolder(@Nullable final File folder) {
+      return this.baseFolder == null ? folder == null : this.baseFolder.equals(folder);
+    }
+
+    @Nullable
+    private String makeKey(@Nonnull final MMapURI uri) {
+      return FilenameUtils.normalize(uri.asFile(this.baseFolder).getAbsolutePath());
+    }
+
+    private void add(@Nonnull final Topic topic, @Nonnull final ExtraFile file) {
+      final String key = makeKey(file.getValue());
+      if (key != null) {
+        Set<Topic> topics = this.paths.get(key);
+        if (topics == null) {
+          topics = new HashSet<Topic>();
+          this.paths.put(key, topics);
+        }
+        topics.add(topic);
+      }
+    }
+
+    private void remove(@Nonnull final Topic topic, @Nonnull final ExtraFile file) {
+      final String key = makeKey(file.getValue());
+      if (key != null) {
+        final Set<Topic> topics = this.paths.get(key);
+        if (topics != null && topics.remove(topic) && topics.isEmpty()) {
+          this.paths.remove(key);
+        }
+      }
+    }
+
+    private boolean contains(@Nonnull final MMapURI file) {
+      final String key = makeKey(file);
+      return key != null && this.paths.containsKey(key);
+    }
+
+    @Nonnull
+    @MustNotContainNull
+    private List<Topic> findForPrefix(@Nonnull final MMapURI file) {
+      final List<Topic> result = new ArrayList<Topic>();
+      final String prefix = makeKey(file);
+      if (prefix != null) {
+        for (final Set<Topic> topics : this.paths.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+          result.addAll(topics);
+        }
+      }
+      return result;
+    }
+  }
+
+  @Nonnull
+  private FileLinkIndex getFileLinkIndex(@Nullable final File baseFolder) {
+    synchronized (this.indexLocker) {
+      FileLinkIndex result = this.fileLinkIndex;
+      if (result == null || !result.isForBaseFolder(baseFolder)) {
+        result = new FileLinkIndex(baseFolder);
+        for (final Topic t : this) {
+          final ExtraFile file = (ExtraFile) t.getExtras().get(Extra.ExtraType.FILE);
+          if (file != null) {
+            result.add(t, file);
+          }
+        }
+        this.fileLinkIndex = result;
+      }
+      return result;
+    }
+  }
+
   public boolean doesContainFileLink(@Nonnull final File baseFolder, @Nonnull final MMapURI file) {
     boolean result = false;
     final Topic rootTopic = this.root;
     if (rootTopic != null) {
-      this.locker.lock();
+      this.readLocker.lock();
       try {
-        return rootTopic.doesContainFileLink(baseFolder, file);
+        return getFileLinkIndex(baseFolder).contains(file);
       }
       finally {
-        this.locker.unlock();
+        this.readLocker.unlock();
       }
     }
     return result;
@@ -605,12 +1665,17 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     boolean changed = false;
     final Topic rootTopic = this.root;
     if (rootTopic != null) {
-      this.locker.lock();
+      lock();
       try {
-        changed = rootTopic.deleteLinkToFileIfPresented(baseFolder, file);
+        for (final Topic t : getFileLinkIndex(baseFolder).findForPrefix(file)) {
+          final ExtraFile fileLink = (ExtraFile) t.getExtras().get(Extra.ExtraType.FILE);
+          if (fileLink != null && fileLink.isSameOrHasParent(baseFolder, file)) {
+            changed |= t.removeExtra(Extra.ExtraType.FILE);
+          }
+        }
       }
       finally {
-        this.locker.unlock();
+        unlock();
       }
       if (changed) {
         fireModelChanged();
@@ -623,12 +1688,26 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
     boolean changed = false;
     final Topic rootTopic = this.root;
     if (rootTopic != null) {
-      this.locker.lock();
+      lock();
       try {
-        changed = rootTopic.replaceLinkToFileIfPresented(baseFolder, oldFile, newFile);
+        for (final Topic t : getFileLinkIndex(baseFolder).findForPrefix(oldFile)) {
+          final ExtraFile fileLink = (ExtraFile) t.getExtras().get(Extra.ExtraType.FILE);
+          if (fileLink != null) {
+            final ExtraFile replacement;
+            if (fileLink.isSame(baseFolder, oldFile)) {
+              replacement = new ExtraFile(newFile);
+            } else {
+              replacement = fileLink.replaceParentPath(baseFolder, oldFile, newFile);
+            }
+            if (replacement != null) {
+              changed = true;
+              t.setExtra(replacement);
+            }
+          }
+        }
       }
       finally {
-        this.locker.unlock();
+        unlock();
       }
       if (changed) {
         fireModelChanged();
@@ -640,7 +1719,7 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
   @Nonnull
   @MustNotContainNull
   public List<Topic> makePlainList() {
-    this.locker.lock();
+    this.readLocker.lock();
     try {
       final List<Topic> result = new ArrayList<Topic>();
       for (final Topic t : this) {
@@ -649,7 +1728,7 @@ public final class MindMap implements Serializable, Constants, TreeModel, Iterab
       return result;
     }
     finally {
-      this.locker.unlock();
+      this.readLocker.unlock();
     }
   }
 
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+/**
+ * Event about change of mind map model. It describes changed topic and its position so that listeners can update only changed part of their view.
+ *
+ * @since 1.2.3
+ * @see MindMapModelListener
+ */
+public final class MindMapModelEvent extends EventObject {
+
+  private static final long serialVersionUID = -3218441466210542233L;
+
+  /**
+   * Type of change.
+   */
+  public enum Type {
+    /**
+     * Topic with its children has been inserted into parent, index is position of the topic in the parent.
+     */
+    TOPIC_INSERTED,
+    /**
+     * Topic with its children has been removed from parent, index is the former position of the topic in the parent.
+     */
+    TOPIC_REMOVED,
+    /**
+     * Topic has been moved inside its parent, index is new position of the topic.
+     */
+    TOPIC_MOVED,
+    /**
+     * Text of topic has been changed.
+     */
+    TOPIC_TEXT_CHANGED,
+    /**
+     * Attribute of topic has been changed, name of the attribute is provided by event.
+     */
+    TOPIC_ATTRIBUTE_CHANGED,
+    /**
+     * Extra of topic has been added, replaced or removed, type of the extra is provided by event.
+     */
+    TOPIC_EXTRA_CHANGED,
+    /**
+     * Code snippet of topic has been changed, language of the snippet is provided by event.
+     */
+    TOPIC_CODE_SNIPPET_CHANGED,
+    /**
+     * Whole topic tree should be considered as changed, for instance the root has been replaced. Topic of event is the current root and it can be null.
+     */
+    STRUCTURE_CHANGED,
+    /**
+     * Batch of changes has been ended, events of the batch are provided by {@link MindMapModelEvent#getBatchEvents()}. Topic of event is the current root and it can be null.
+     */
+    BATCH
+  }
+
+  private final Type type;
+  private final transient Topic topic;
+  private final transient Topic parent;
+  private final int index;
+  private final String name;
+  private final Extra.ExtraType extraType;
+  private final transient List<MindMapModelEvent> batchEvents;
+
+  public MindMapModelEvent(@Nonnull final MindMap source, @Nonnull final Type type, @Nullable final Topic topic, @Nullable final Topic parent, final int index, @Nullable final String name, @Nullable final Extra.ExtraType extraType) {
+    super(source);
+    this.type = type;
+    this.topic = topic;
+    this.parent = parent;
+    this.index = index;
+    this.name = name;
+    this.extraType = extraType;
+    this.batchEvents = Collections.emptyList();
+  }
+
+  MindMapModelEvent(@Nonnull final MindMap source, @Nullable final Topic root, @Nonnull @MustNotContainNull final List<MindMapModelEvent> batchEvents) {
+    super(source);
+    this.type = Type.BATCH;
+    this.topic = root;
+    this.parent = null;
+    this.index = -1;
+    this.name = null;
+    this.extraType = null;
+    this.batchEvents = Collections.unmodifiableList(batchEvents);
+  }
+
+  @Nonnull
+  public MindMap getMindMap() {
+    return (MindMap) this.getSource();
+  }
+
+  @Nonnull
+  public Type getType() {
+    return this.type;
+  }
+
+  /**
+   * Get changed topic.
+   *
+   * @return changed topic, it can be null only for {@link Type#STRUCTURE_CHANGED}
+   */
+  @Nullable
+  public Topic getTopic() {
+    return this.topic;
+  }
+
+  /**
+   * Get parent of changed topic, for removed topic it is the former parent.
+   *
+   * @return parent topic, null for the root
+   */
+  @Nullable
+  public Topic getParent() {
+    return this.parent;
+  }
+
+  /**
+   * Get position of topic in its parent.
+   *
+   * @return index of topic in parent, -1 if the topic doesn't have parent
+   */
+  public int getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Get name of changed attribute or language of changed code snippet.
+   *
+   * @return name, null for other types of events
+   */
+  @Nullable
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Get type of changed extra.
+   *
+   * @return type of extra, null for other types of events
+   */
+  @Nullable
+  public Extra.ExtraType getExtraType() {
+    return this.extraType;
+  }
+
+  /**
+   * Get events collected during batch for {@link Type#BATCH}. Repeated changes of the same topic property are reported once.
+   *
+   * @return unmodifiable list of events in order of their appearance, empty for other types of events
+   */
+  @Nonnull
+  @MustNotContainNull
+  public List<MindMapModelEvent> getBatchEvents() {
+    return this.batchEvents;
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    return "MindMapModelEvent(" + this.type + ",topic=" + this.topic + ",index=" + this.index + ')'; //NOI18N
+  }
+}
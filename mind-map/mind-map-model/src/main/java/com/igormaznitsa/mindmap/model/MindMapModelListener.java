@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.util.EventListener;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listener of typed changes of mind map model.
+ *
+ * @since 1.2.3
+ * @see MindMap#addMindMapModelListener(MindMapModelListener)
+ */
+public interface MindMapModelListener extends EventListener {
+
+  /**
+   * Notification about change of mind map. It is called in the thread which made the change while the mind map is locked.
+   *
+   * @param event event describing the change
+   */
+  void onMindMapModelEvent(@Nonnull MindMapModelEvent event);
+}
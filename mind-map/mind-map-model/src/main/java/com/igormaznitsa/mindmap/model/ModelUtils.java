@@ -117,14 +117,26 @@ public final class ModelUtils {
 
   @Nonnull
   public static String makeMDCodeBlock(@Nonnull final String text) throws IOException {
-    final int maxQuotes = calcMaxLengthOfBacktickQuotesSubstr(text) + 1;
     final StringBuilder result = new StringBuilder(text.length() + 16);
-    writeChar(result, '`', maxQuotes);
-    result.append(text);
-    writeChar(result, '`', maxQuotes);
+    writeMDCodeBlock(result, text);
     return result.toString();
   }
 
+  /**
+   * Write text as markdown code block quoted by backticks.
+   *
+   * @param out destination for the code block
+   * @param text text to be written
+   * @throws IOException it will be thrown for transport errors
+   * @since 1.2.3
+   */
+  public static void writeMDCodeBlock(@Nonnull final Appendable out, @Nonnull final String text) throws IOException {
+    final int maxQuotes = calcMaxLengthOfBacktickQuotesSubstr(text) + 1;
+    writeChar(out, '`', maxQuotes);
+    out.append(text);
+    writeChar(out, '`', maxQuotes);
+  }
+
   @Nonnull
   public static String escapeMarkdownStr(@Nonnull final String text) {
     final StringBuilder buffer = new StringBuilder(text.length() * 2);
@@ -172,6 +184,75 @@ public final class ModelUtils {
 
   @Nonnull
   public static String unescapeMarkdownStr(@Nonnull final String text) {
+    if (text.indexOf('<') < 0 && text.indexOf('\\') < 0) {
+      return text;
+    }
+
+    final int length = text.length();
+    final StringBuilder result = new StringBuilder(length);
+    int index = 0;
+    while (index < length) {
+      final char c = text.charAt(index);
+      if (c == '<') {
+        final int brEnd = findEndOfBrTag(text, index);
+        if (brEnd >= 0) {
+          result.append('\n');
+          index = brEnd;
+          continue;
+        }
+      } else if (c == '\\' && index + 1 < length) {
+        final char next = text.charAt(index + 1);
+        // escaped char between + and . makes range +,-. in the original pattern
+        final boolean escapedChar = MD_ESCAPED_CHARS.indexOf(next) >= 0 || next == ',';
+        if (escapedChar && (next != '<' || findEndOfBrTag(text, index + 1) < 0)) {
+          result.append(next);
+          index += 2;
+          continue;
+        }
+      }
+      result.append(c);
+      index++;
+    }
+    return result.toString();
+  }
+
+  static boolean isRegexWhitespace(final char chr) {
+    return chr == ' ' || chr == '\t' || chr == '\n' || chr == '\u000B' || chr == '\f' || chr == '\r';
+  }
+
+  private static int skipRegexWhitespaces(@Nonnull final String text, int index) {
+    while (index < text.length() && isRegexWhitespace(text.charAt(index))) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Find end of &lt;br&gt; tag in the same manner as UNESCAPE_BR pattern.
+   *
+   * @param text text
+   * @param start position of '&lt;' char
+   * @return position after the tag or -1 if there is not any tag
+   */
+  private static int findEndOfBrTag(@Nonnull final String text, final int start) {
+    int index = skipRegexWhitespaces(text, start + 1);
+    if (index + 1 >= text.length()) {
+      return -1;
+    }
+    final char b = text.charAt(index);
+    final char r = text.charAt(index + 1);
+    if ((b != 'b' && b != 'B') || (r != 'r' && r != 'R')) {
+      return -1;
+    }
+    index = skipRegexWhitespaces(text, index + 2);
+    if (index < text.length() && text.charAt(index) == '/') {
+      index++;
+    }
+    return index < text.length() && text.charAt(index) == '>' ? index + 1 : -1;
+  }
+
+  @Nonnull
+  static String unescapeMarkdownStrByRegex(@Nonnull final String text) {
     String unescaped = UNESCAPE_BR.matcher(text).replaceAll("\n"); //NOI18N
     final StringBuffer result = new StringBuffer(text.length());
     final Matcher escaped = MD_ESCAPED_PATTERN.matcher(unescaped);
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Pool of strings to share the same instances of attribute names and values between topics during mind map loading. Strings longer than {@link #MAX_POOLED_LENGTH} are not pooled because they are rarely repeated. It is not thread safe.
+ *
+ * @since 1.2.3
+ */
+public final class StringPool {
+
+  /**
+   * Max length of string which can be placed into pool.
+   */
+  public static final int MAX_POOLED_LENGTH = 128;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private String[] table = new String[INITIAL_CAPACITY];
+  private int size;
+  private long requests;
+  private long hits;
+
+  /**
+   * Get pooled instance of string.
+   *
+   * @param text string to be pooled
+   * @return pooled instance equals to the string, the same string if it was not found in the pool
+   */
+  @Nonnull
+  public String intern(@Nonnull final String text) {
+    return find(text, 0, text.length(), text);
+  }
+
+  /**
+   * Get pooled instance of string for part of text, new string is made only if it is not found in the pool.
+   *
+   * @param text source text
+   * @param start start of the part, inclusive
+   * @param end end of the part, exclusive
+   * @return pooled string equals to the part of text
+   */
+  @Nonnull
+  public String intern(@Nonnull final CharSequence text, final int start, final int end) {
+    return find(text, start, end, null);
+  }
+
+  @Nonnull
+  private String find(@Nonnull final CharSequence text, final int start, final int end, @Nullable final String original) {
+    final int length = end - start;
+    if (length > MAX_POOLED_LENGTH) {
+      return original == null ? text.subSequence(start, end).toString() : original;
+    }
+
+    this.requests++;
+
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+
+    final int mask = this.table.length - 1;
+    int index = (hash ^ (hash >>> 16)) & mask;
+    while (true) {
+      final String pooled = this.table[index];
+      if (pooled == null) {
+        break;
+      }
+      if (pooled.length() == length && pooled.hashCode() == hash && isSame(pooled, text, start)) {
+        this.hits++;
+        return pooled;
+      }
+      index = (index + 1) & mask;
+    }
+
+    final String result = original == null ? text.subSequence(start, end).toString() : original;
+    this.table[index] = result;
+    this.size++;
+    if (this.size * 2 > this.table.length) {
+      rehash();
+    }
+    return result;
+  }
+
+  private static boolean isSame(@Nonnull final String pooled, @Nonnull final CharSequence text, final int start) {
+    for (int i = 0; i < pooled.length(); i++) {
+      if (pooled.charAt(i) != text.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    final String[] newTable = new String[this.table.length * 2];
+    final int mask = newTable.length - 1;
+    for (final String s : this.table) {
+      if (s != null) {
+        final int hash = s.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (newTable[index] != null) {
+          index = (index + 1) & mask;
+        }
+        newTable[index] = s;
+      }
+    }
+    this.table = newTable;
+  }
+
+  /**
+   * Get number of different strings in the pool.
+   *
+   * @return number of pooled strings
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Get number of requests to the pool, requests for too long strings are not counted.
+   *
+   * @return number of requests
+   */
+  public long getRequests() {
+    return this.requests;
+  }
+
+  /**
+   * Get number of requests which returned already pooled instance.
+   *
+   * @return number of hits
+   */
+  public long getHits() {
+    return this.hits;
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    return "StringPool(size=" + this.size + ",requests=" + this.requests + ",hits=" + this.hits + ')'; //NOI18N
+  }
+}
@@ -23,6 +23,7 @@ import com.igormaznitsa.mindmap.model.logger.LoggerFactory;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.Writer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,6 +32,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -44,35 +46,47 @@ import com.igormaznitsa.meta.annotation.MustNotContainNull;
 import com.igormaznitsa.meta.common.utils.Assertions;
 import com.igormaznitsa.meta.common.utils.GetUtils;
 import com.igormaznitsa.mindmap.model.parser.MindMapLexer;
+import com.igormaznitsa.mindmap.model.parser.MindMapReader;
 
 public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
-  private static final long serialVersionUID = -4642569244907433215L;
+  private static final long serialVersionUID = 2830474316537251106L;
 
   private static Logger logger = LoggerFactory.getLogger(Topic.class);
 
   private static final AtomicLong LOCALUID_GENERATOR = new AtomicLong();
 
+  private static final Topic[] NO_CHILDREN = new Topic[0];
+
   @Nullable
   private Topic parent;
 
-  private final EnumMap<Extra.ExtraType, Extra<?>> extras = new EnumMap<Extra.ExtraType, Extra<?>>(Extra.ExtraType.class);
-  private final Map<Extra.ExtraType, Extra<?>> unmodifableExtras = Collections.unmodifiableMap(this.extras);
+  // maps are allocated only when the first value is added because most of topics in big maps are leaves with only title
+  @Nullable
+  private EnumMap<Extra.ExtraType, Extra<?>> extras;
 
-  private final Map<String, String> attributes = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
-  private final Map<String, String> unmodifableAttributes = Collections.unmodifiableMap(this.attributes);
+  @Nullable
+  private TreeMap<String, String> attributes;
 
-  private final Map<String, String> codeSnippets = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
-  private final Map<String, String> unmodifableCodeSnippets = Collections.unmodifiableMap(this.codeSnippets);
+  @Nullable
+  private TreeMap<String, String> codeSnippets;
 
   @Nonnull
   private volatile String text;
 
   @Nonnull
-  private final List<Topic> children = new ArrayList<Topic>();
+  @MayContainNull
+  private Topic[] children = NO_CHILDREN;
 
-  @Nonnull
-  private final List<Topic> unmodifableChildren = Collections.unmodifiableList(this.children);
+  private int childrenNumber;
+
+  // depth and position in parent are updated by every structural change to avoid search in queries
+  private int depth;
+  private int indexInParent = -1;
+
+  // position in pre-order and position of the last descendant, they are set by ancestry index of mind map
+  private transient int treeOrder = -1;
+  private transient int treeOrderEnd = -1;
 
   @Nullable
   private transient Object payload;
@@ -94,16 +108,27 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
    */
   public Topic(@Nonnull final MindMap mindMap, @Nonnull final Topic base, final boolean copyChildren) {
     this(mindMap, base.text);
-    this.attributes.putAll(base.attributes);
-    this.extras.putAll(base.extras);
-    this.codeSnippets.putAll(base.codeSnippets);
+    copyContent(base);
 
     if (copyChildren) {
-      for (final Topic t : base.children) {
-        final Topic clonedChildren = new Topic(mindMap, t, true);
-        clonedChildren.parent = this;
-        this.children.add(clonedChildren);
-      }
+      copyChildren(base);
+    }
+  }
+
+  private void copyContent(@Nonnull final Topic base) {
+    this.attributes = copyStringMap(base.attributes);
+    this.extras = base.extras == null || base.extras.isEmpty() ? null : new EnumMap<Extra.ExtraType, Extra<?>>(base.extras);
+    this.codeSnippets = copyStringMap(base.codeSnippets);
+  }
+
+  private void copyChildren(@Nonnull final Topic base) {
+    for (int i = 0; i < base.childrenNumber; i++) {
+      final Topic source = base.children[i];
+      final Topic clonedChildren = new Topic(this.map, source.text);
+      clonedChildren.copyContent(source);
+      clonedChildren.parent = this;
+      this.addChild(clonedChildren);
+      clonedChildren.copyChildren(source);
     }
   }
 
@@ -115,7 +140,9 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       if (parent.getMap() != map) {
         throw new IllegalArgumentException("Parent must belong to the same mind map");
       }
-      parent.children.add(this);
+      map.assertNotReadOnly();
+      parent.addChild(this);
+      map.topicAttached(this);
     }
   }
 
@@ -125,19 +152,210 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
     for (final Extra<?> e : extras) {
       if (e != null) {
-        this.extras.put(e.getType(), e);
+        ensureExtras().put(e.getType(), e);
+      }
+    }
+  }
+
+  @Nullable
+  private static TreeMap<String, String> copyStringMap(@Nullable final Map<String, String> map) {
+    if (map == null || map.isEmpty()) {
+      return null;
+    }
+    final TreeMap<String, String> result = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
+    result.putAll(map);
+    return result;
+  }
+
+  @Nonnull
+  private static <K, V> Map<K, V> makeView(@Nullable final Map<K, V> map) {
+    return map == null || map.isEmpty() ? Collections.<K, V>emptyMap() : Collections.unmodifiableMap(map);
+  }
+
+  @Nonnull
+  private EnumMap<Extra.ExtraType, Extra<?>> ensureExtras() {
+    if (this.extras == null) {
+      this.extras = new EnumMap<Extra.ExtraType, Extra<?>>(Extra.ExtraType.class);
+    }
+    return this.extras;
+  }
+
+  @Nonnull
+  private Map<String, String> ensureAttributes() {
+    if (this.attributes == null) {
+      this.attributes = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
+    }
+    return this.attributes;
+  }
+
+  @Nonnull
+  private Map<String, String> ensureCodeSnippets() {
+    if (this.codeSnippets == null) {
+      this.codeSnippets = new TreeMap<String, String>(ModelUtils.STRING_COMPARATOR);
+    }
+    return this.codeSnippets;
+  }
+
+  int getTreeOrder() {
+    return this.treeOrder;
+  }
+
+  void setTreeOrder(final int value) {
+    this.treeOrder = value;
+  }
+
+  int getTreeOrderEnd() {
+    return this.treeOrderEnd;
+  }
+
+  void setTreeOrderEnd(final int value) {
+    this.treeOrderEnd = value;
+  }
+
+  int getChildCount() {
+    return this.childrenNumber;
+  }
+
+  int getIndexInParent() {
+    return this.parent == null ? -1 : this.indexInParent;
+  }
+
+  @Nonnull
+  Topic getChildAt(final int index) {
+    return this.children[index];
+  }
+
+  int indexOfChild(@Nullable final Topic topic) {
+    if (topic == null || topic.parent != this) {
+      return -1;
+    }
+    final int index = topic.indexInParent;
+    return index >= 0 && index < this.childrenNumber && this.children[index] == topic ? index : -1;
+  }
+
+  private void setDepth(final int value) {
+    if (this.depth != value) {
+      this.depth = value;
+      for (int i = 0; i < this.childrenNumber; i++) {
+        this.children[i].setDepth(value + 1);
       }
     }
   }
 
+  private void updateChildIndexes(final int from) {
+    for (int i = from; i < this.childrenNumber; i++) {
+      this.children[i].indexInParent = i;
+    }
+  }
+
+  private void addChild(@Nonnull final Topic topic) {
+    insertChild(this.childrenNumber, topic);
+  }
+
+  private void insertChild(final int index, @Nonnull final Topic topic) {
+    if (this.childrenNumber == this.children.length) {
+      final Topic[] newArray = new Topic[this.childrenNumber + (this.childrenNumber >> 1) + 1];
+      System.arraycopy(this.children, 0, newArray, 0, this.childrenNumber);
+      this.children = newArray;
+    }
+    System.arraycopy(this.children, index, this.children, index + 1, this.childrenNumber - index);
+    this.children[index] = topic;
+    this.childrenNumber++;
+    updateChildIndexes(index);
+    topic.setDepth(this.depth + 1);
+  }
+
+  private void removeChildAt(final int index) {
+    this.children[index].indexInParent = -1;
+    final int tail = this.childrenNumber - index - 1;
+    if (tail > 0) {
+      System.arraycopy(this.children, index + 1, this.children, index, tail);
+    }
+    this.children[--this.childrenNumber] = null;
+    if (this.childrenNumber == 0) {
+      this.children = NO_CHILDREN;
+    } else {
+      updateChildIndexes(index);
+    }
+  }
+
+  private boolean removeChild(@Nonnull final Topic topic) {
+    final int index = indexOfChild(topic);
+    if (index >= 0) {
+      removeChildAt(index);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Read-only list view of children, it reflects all changes of the topic.
+   */
+  private final class ChildrenView extends AbstractList<Topic> implements RandomAccess {
+
+    @Override
+    @Nonnull
+    public Topic get(final int index) {
+      if (index < 0 || index >= childrenNumber) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + childrenNumber);
+      }
+      return children[index];
+    }
+
+    @Override
+    public int size() {
+      return childrenNumber;
+    }
+
+    @Override
+    public int indexOf(@Nullable final Object obj) {
+      return obj instanceof Topic ? indexOfChild((Topic) obj) : -1;
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object obj) {
+      return indexOf(obj) >= 0;
+    }
+  }
+
+  /**
+   * Iterator over children which allows removing.
+   */
+  private final class ChildrenIterator implements Iterator<Topic> {
+
+    private int index;
+
+    @Override
+    public boolean hasNext() {
+      return this.index < childrenNumber;
+    }
+
+    @Override
+    @Nonnull
+    public Topic next() {
+      if (this.index >= childrenNumber) {
+        throw new NoSuchElementException();
+      }
+      return children[this.index++];
+    }
+
+    @Override
+    public void remove() {
+      if (this.index == 0) {
+        throw new IllegalStateException();
+      }
+      removeChildAt(--this.index);
+    }
+  }
+
   public boolean containTopic(@Nonnull final Topic topic) {
     boolean result = false;
 
     if (this == topic) {
       result = true;
     } else {
-      for (final Topic t : this.children) {
-        if (t.containTopic(topic)) {
+      for (int i = 0; i < this.childrenNumber; i++) {
+        if (this.children[i].containTopic(topic)) {
           result = true;
           break;
         }
@@ -148,29 +366,29 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   @Nullable
   public Topic nextSibling() {
-    final int position = this.parent == null ? -1 : this.parent.getChildren().indexOf(this);
+    final Topic theParent = this.parent;
+    final int position = theParent == null ? -1 : theParent.indexOfChild(this);
 
     final Topic result;
     if (position < 0) {
       result = null;
     } else {
-      final List<Topic> all = this.parent.getChildren();
       final int nextPosition = position + 1;
-      result = all.size() > nextPosition ? all.get(nextPosition) : null;
+      result = theParent.childrenNumber > nextPosition ? theParent.children[nextPosition] : null;
     }
     return result;
   }
 
   @Nullable
   public Topic prevSibling() {
-    final int position = this.parent == null ? -1 : this.parent.getChildren().indexOf(this);
+    final Topic theParent = this.parent;
+    final int position = theParent == null ? -1 : theParent.indexOfChild(this);
 
     final Topic result;
     if (position <= 0) {
       result = null;
     } else {
-      final List<Topic> all = this.parent.getChildren();
-      result = all.get(position - 1);
+      result = theParent.children[position - 1];
     }
     return result;
   }
@@ -180,7 +398,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
     if (findInTopicText && pattern.matcher(this.text).find()) {
       result = true;
-    } else if (extrasForSearch != null && !extrasForSearch.isEmpty()) {
+    } else if (extrasForSearch != null && !extrasForSearch.isEmpty() && this.extras != null) {
       for (final Extra<?> e : this.extras.values()) {
         if (extrasForSearch.contains(e.getType()) && e.containsPattern(baseFolder, pattern)) {
           result = true;
@@ -201,6 +419,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public void setPayload(@Nullable final Object value) {
+    this.map.assertNotReadOnly();
     this.payload = value;
   }
 
@@ -215,18 +434,12 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public int getTopicLevel() {
-    Topic topic = this.parent;
-    int result = 0;
-    while (topic != null) {
-      topic = topic.parent;
-      result++;
-    }
-    return result;
+    return this.depth;
   }
 
   @Nullable
   public Topic findParentForDepth(int depth) {
-    this.map.lock();
+    this.map.lockRead();
     try {
       Topic result = this.parent;
       while (depth > 0 && result != null) {
@@ -236,13 +449,13 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
   @Nonnull
   public Topic getRoot() {
-    this.map.lock();
+    this.map.lockRead();
     try {
       Topic result = this;
       while (true) {
@@ -255,7 +468,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
@@ -268,12 +481,12 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public boolean canBeLost() {
-    this.map.lock();
+    this.map.lockRead();
     try {
-      boolean noImportantContent = this.text.trim().isEmpty() && this.extras.isEmpty() && canBeDeletedSilently();
+      boolean noImportantContent = this.text.trim().isEmpty() && getNumberOfExtras() == 0 && canBeDeletedSilently();
       if (noImportantContent) {
-        for (final Topic t : this.children) {
-          noImportantContent &= t.canBeLost();
+        for (int i = 0; i < this.childrenNumber; i++) {
+          noImportantContent &= this.children[i].canBeLost();
           if (!noImportantContent) {
             break;
           }
@@ -282,42 +495,64 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return noImportantContent;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
   @Nullable
   public static Topic parse(@Nonnull final MindMap map, @Nonnull final MindMapLexer lexer) throws IOException {
-    map.lock();
-    try {
-      Topic topic = null;
-      int depth = 0;
+    return parse(map, new MindMapReader(lexer), null, null);
+  }
 
-      Extra.ExtraType extraType = null;
+  /**
+   * Build topic tree from parser events.
+   *
+   * @param map mind map to be owner of topics
+   * @param reader source of parser events
+   * @param mapAttributes map to be filled by mind map attributes from header, can be null if they should be ignored
+   * @param pool pool to share instances of attribute names and values, can be null
+   * @return root of the read topic tree, null if there was not any topic
+   * @throws IOException it will be thrown for transport errors
+   */
+  @Nullable
+  static Topic parse(@Nonnull final MindMap map, @Nonnull final MindMapReader reader, @Nullable final Map<String, String> mapAttributes, @Nullable final StringPool pool) throws IOException {
+    return parse(map, reader, mapAttributes, pool, null);
+  }
 
-      String codeSnippetlanguage = null;
-      String codeSnippetBody = null;
+  /**
+   * Build topic tree from parser events, read topics are placed into tree of start topic in the same manner as they would be placed after the start topic in the text.
+   *
+   * @param map mind map to be owner of topics
+   * @param reader source of parser events
+   * @param mapAttributes map to be filled by mind map attributes from header, can be null if they should be ignored
+   * @param pool pool to share instances of attribute names and values, can be null
+   * @param start the last topic before read text, null if text starts from the beginning
+   * @return root of the read topic tree, null if there was not any topic
+   * @throws IOException it will be thrown for transport errors
+   */
+  @Nullable
+  static Topic parse(@Nonnull final MindMap map, @Nonnull final MindMapReader reader, @Nullable final Map<String, String> mapAttributes, @Nullable final StringPool pool, @Nullable final Topic start) throws IOException {
+    map.lock();
+    try {
+      Topic topic = start;
+      int depth = start == null ? 0 : start.depth + 1;
 
-      int detectedLevel = -1;
-      
       while (true) {
-        final int oldLexerPosition = lexer.getCurrentPosition().getOffset();
-        lexer.advance();
-        final boolean lexerPositionWasNotChanged = oldLexerPosition == lexer.getCurrentPosition().getOffset();
-        
-        final MindMapLexer.TokenType token = lexer.getTokenType();
-        if (token == null || lexerPositionWasNotChanged) {
+        final MindMapReader.EventType event = reader.next();
+        if (event == MindMapReader.EventType.END) {
           break;
         }
-        
-        switch (token) {
-          case TOPIC_LEVEL: {
-            final String tokenText = lexer.getTokenText();
-            detectedLevel = ModelUtils.calcCharsOnStart('#', tokenText);
-          }break;
-          case TOPIC_TITLE: {
-            final String tokenText = ModelUtils.removeISOControls(lexer.getTokenText());
-            final String newTopicText = ModelUtils.unescapeMarkdownStr(tokenText);
+
+        switch (event) {
+          case MAP_ATTRIBUTES: {
+            if (mapAttributes != null) {
+              MindMap.fillMapByAttributes(reader.getText(), mapAttributes, pool);
+            }
+          }
+          break;
+          case TOPIC: {
+            final int detectedLevel = reader.getTopicLevel();
+            final String newTopicText = reader.getText();
 
             if (detectedLevel == depth + 1) {
               depth = detectedLevel;
@@ -331,51 +566,26 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
                 depth = detectedLevel;
               }
             }
-
-          }
-          break;
-          case EXTRA_TYPE: {
-            final String extraName = lexer.getTokenText().substring(1).trim();
-            try {
-              extraType = Extra.ExtraType.valueOf(extraName);
-            }
-            catch (IllegalArgumentException ex) {
-              extraType = null;
-            }
           }
           break;
-          case CODE_SNIPPET_START: {
+          case CODE_SNIPPET: {
             if (topic != null) {
-              codeSnippetlanguage = lexer.getTokenText().substring(3);
-              codeSnippetBody = "";
-            }
-          }
-          break;
-          case CODE_SNIPPET_BODY: {
-            codeSnippetBody += lexer.getTokenText();
-          }
-          break;
-          case CODE_SNIPPET_END: {
-            if (topic != null && codeSnippetlanguage != null && codeSnippetBody != null) {
-              topic.codeSnippets.put(codeSnippetlanguage.trim(), codeSnippetBody);
+              final String language = reader.getCodeSnippetLanguage();
+              topic.ensureCodeSnippets().put(pool == null ? language : pool.intern(language), reader.getText());
             }
-            codeSnippetlanguage = null;
-            codeSnippetBody = null;
           }
           break;
-          case ATTRIBUTE: {
+          case TOPIC_ATTRIBUTES: {
             if (topic != null) {
-              final String text = lexer.getTokenText().trim();
-              MindMap.fillMapByAttributes(text, topic.attributes);
+              MindMap.fillMapByAttributes(reader.getText(), topic.ensureAttributes(), pool);
             }
-            extraType = null;
           }
           break;
-          case EXTRA_TEXT: {
-            if (topic != null && extraType != null) {
+          case EXTRA: {
+            if (topic != null) {
+              final Extra.ExtraType extraType = reader.getExtraType();
               try {
-                final String text = lexer.getTokenText();
-                final String groupPre = extraType.preprocessString(text.substring(5, text.length() - 6));
+                final String groupPre = extraType.preprocessString(reader.getText());
                 if (groupPre != null) {
                   topic.setExtra(extraType.parseLoaded(groupPre));
                 } else {
@@ -385,15 +595,6 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
               catch (Exception ex) {
                 logger.error("Unexpected exception #23241", ex); //NOI18N
               }
-              finally {
-                extraType = null;
-              }
-            }
-          }
-          break;
-          case UNKNOWN_LINE: {
-            if (topic != null && extraType != null) {
-              extraType = null;
             }
           }
           break;
@@ -410,54 +611,63 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   @Nullable
   public Topic getFirst() {
-    return this.children.isEmpty() ? null : this.children.get(0);
+    return this.childrenNumber == 0 ? null : this.children[0];
   }
 
   @Nullable
   public Topic getLast() {
-    return this.children.isEmpty() ? null : this.children.get(this.children.size() - 1);
+    return this.childrenNumber == 0 ? null : this.children[this.childrenNumber - 1];
   }
 
   @Nonnull
   @MustNotContainNull
   public List<Topic> getChildren() {
-    return this.unmodifableChildren;
+    return new ChildrenView();
   }
 
   public int getNumberOfExtras() {
-    return this.extras.size();
+    return this.extras == null ? 0 : this.extras.size();
   }
 
   @Nonnull
   public Map<Extra.ExtraType, Extra<?>> getExtras() {
-    return this.unmodifableExtras;
+    return makeView(this.extras);
   }
 
   @Nonnull
   @MustNotContainNull
   public Extra<?>[] extrasToArray() {
-    final Collection<Extra<?>> collection = this.unmodifableExtras.values();
+    if (this.extras == null) {
+      return new Extra<?>[0];
+    }
+    final Collection<Extra<?>> collection = this.extras.values();
     return collection.toArray(new Extra<?>[collection.size()]);
   }
 
   @Nonnull
   public Map<String, String> getAttributes() {
-    return this.unmodifableAttributes;
+    return makeView(this.attributes);
   }
 
   @Nonnull
   public Map<String, String> getCodeSnippets() {
-    return this.unmodifableCodeSnippets;
+    return makeView(this.codeSnippets);
   }
 
   public boolean setAttribute(@Nonnull final String name, @Nullable final String value) {
     this.map.lock();
     try {
+      final String oldValue;
       if (value == null) {
-        return this.attributes.remove(name) != null;
+        oldValue = this.attributes == null ? null : this.attributes.remove(name);
       } else {
-        return !value.equals(this.attributes.put(name, value));
+        oldValue = ensureAttributes().put(name, value);
       }
+      final boolean changed = value == null ? oldValue != null : !value.equals(oldValue);
+      if (changed) {
+        this.map.topicAttributeChanged(this, name, oldValue, value);
+      }
+      return changed;
     }
     finally {
       this.map.unlock();
@@ -467,11 +677,16 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   public boolean setCodeSnippet(@Nonnull final String language, @Nullable final String text) {
     this.map.lock();
     try {
+      final boolean changed;
       if (text == null) {
-        return this.codeSnippets.remove(language) != null;
+        changed = this.codeSnippets != null && this.codeSnippets.remove(language) != null;
       } else {
-        return !text.equals(this.codeSnippets.put(language, text));
+        changed = !text.equals(ensureCodeSnippets().put(language, text));
+      }
+      if (changed) {
+        this.map.topicCodeSnippetChanged(this, language);
       }
+      return changed;
     }
     finally {
       this.map.unlock();
@@ -480,12 +695,33 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   @Nullable
   public String getCodeSnippet(@Nonnull final String language) {
-    return this.codeSnippets.get(language);
+    return this.codeSnippets == null ? null : this.codeSnippets.get(language);
   }
 
   @Nullable
   public String getAttribute(@Nonnull final String name) {
-    return this.attributes.get(name);
+    return this.attributes == null ? null : this.attributes.get(name);
+  }
+
+  /**
+   * Insert topic which doesn't have parent as child into position.
+   *
+   * @param index position for the topic
+   * @param topic topic of the same mind map without parent
+   */
+  void insertTopic(final int index, @Nonnull final Topic topic) {
+    this.map.lock();
+    try {
+      if (topic.map != this.map || topic.parent != null) {
+        throw new IllegalArgumentException("Topic must be detached topic of the same mind map");
+      }
+      topic.parent = this;
+      insertChild(index, topic);
+      this.map.topicAttached(topic);
+    }
+    finally {
+      this.map.unlock();
+    }
   }
 
   public void delete() {
@@ -493,7 +729,10 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       final Topic theParent = this.parent;
       if (theParent != null) {
-        theParent.children.remove(this);
+        final int index = theParent.indexOfChild(this);
+        if (theParent.removeChild(this)) {
+          this.map.topicDetached(theParent, index, this);
+        }
       }
     }
     finally {
@@ -512,17 +751,21 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public boolean isFirstChild(@Nonnull final Topic t) {
-    return !this.children.isEmpty() && this.children.get(0) == t;
+    return this.childrenNumber > 0 && this.children[0] == t;
   }
 
   public boolean isLastChild(@Nonnull final Topic t) {
-    return !this.children.isEmpty() && this.children.get(this.children.size() - 1) == t;
+    return this.childrenNumber > 0 && this.children[this.childrenNumber - 1] == t;
   }
 
   public void setText(@Nonnull final String text) {
     this.map.lock();
     try {
-      this.text = Assertions.assertNotNull(text);
+      final boolean changed = !this.text.equals(Assertions.assertNotNull(text));
+      this.text = text;
+      if (changed) {
+        this.map.topicTextChanged(this);
+      }
     }
     finally {
       this.map.unlock();
@@ -534,7 +777,11 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       boolean result = false;
       for (final Extra.ExtraType e : Assertions.assertDoesntContainNull(types)) {
-        result |= this.extras.remove(e) != null;
+        final Extra<?> removed = this.extras == null ? null : this.extras.remove(e);
+        if (removed != null) {
+          result = true;
+          this.map.topicExtraChanged(this, removed, null);
+        }
       }
       return result;
     }
@@ -547,7 +794,8 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     this.map.lock();
     try {
       for (final Extra<?> e : Assertions.assertDoesntContainNull(extras)) {
-        this.extras.put(e.getType(), e);
+        final Extra<?> old = ensureExtras().put(e.getType(), e);
+        this.map.topicExtraChanged(this, old, e);
       }
     }
     finally {
@@ -560,10 +808,11 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       final Topic theParent = this.parent;
       if (theParent != null) {
-        int thatIndex = theParent.children.indexOf(this);
+        int thatIndex = theParent.indexOfChild(this);
         if (thatIndex > 0) {
-          theParent.children.remove(thatIndex);
-          theParent.children.add(0, this);
+          theParent.removeChildAt(thatIndex);
+          theParent.insertChild(0, this);
+          this.map.topicOrderChanged(this);
           return true;
         }
       }
@@ -590,10 +839,11 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       final Topic theParent = this.parent;
       if (theParent != null) {
-        int thatIndex = theParent.children.indexOf(this);
-        if (thatIndex >= 0 && thatIndex != theParent.children.size() - 1) {
-          theParent.children.remove(thatIndex);
-          theParent.children.add(this);
+        int thatIndex = theParent.indexOfChild(this);
+        if (thatIndex >= 0 && thatIndex != theParent.childrenNumber - 1) {
+          theParent.removeChildAt(thatIndex);
+          theParent.addChild(this);
+          this.map.topicOrderChanged(this);
           return true;
         }
       }
@@ -609,16 +859,17 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       final Topic theParent = this.parent;
       if (theParent != null) {
-        int thatIndex = theParent.children.indexOf(topic);
-        final int thisIndex = theParent.children.indexOf(this);
+        int thatIndex = theParent.indexOfChild(topic);
+        final int thisIndex = theParent.indexOfChild(this);
 
         if (thatIndex > thisIndex) {
           thatIndex--;
         }
 
         if (thatIndex >= 0 && thisIndex >= 0) {
-          theParent.children.remove(this);
-          theParent.children.add(thatIndex, this);
+          theParent.removeChildAt(thisIndex);
+          theParent.insertChild(thatIndex, this);
+          this.map.topicOrderChanged(this);
         }
       }
     }
@@ -629,7 +880,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   @Nullable
   public String findAttributeInAncestors(@Nonnull final String attrName) {
-    this.map.lock();
+    this.map.lockRead();
     try {
       String result = null;
       Topic current = this.parent;
@@ -640,7 +891,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
@@ -649,16 +900,17 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     try {
       final Topic theParent = this.parent;
       if (theParent != null) {
-        int thatIndex = theParent.children.indexOf(topic);
-        int thisIndex = theParent.children.indexOf(this);
+        int thatIndex = theParent.indexOfChild(topic);
+        int thisIndex = theParent.indexOfChild(this);
 
         if (thatIndex > thisIndex) {
           thatIndex--;
         }
 
         if (thatIndex >= 0 && thisIndex >= 0) {
-          theParent.children.remove(this);
-          theParent.children.add(thatIndex + 1, this);
+          theParent.removeChildAt(thisIndex);
+          theParent.insertChild(thatIndex + 1, this);
+          this.map.topicOrderChanged(this);
         }
       }
     }
@@ -668,12 +920,12 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public void write(@Nonnull final Writer out) throws IOException {
-    this.map.lock();
+    this.map.lockRead();
     try {
       write(1, out);
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
@@ -682,16 +934,20 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     ModelUtils.writeChar(out, '#', level);
     out.append(' ').append(ModelUtils.escapeMarkdownStr(this.text)).append(NEXT_LINE);
 
-    if (!this.attributes.isEmpty()) {
-      out.append("> ").append(MindMap.allAttributesAsString(this.attributes)).append(NEXT_LINE).append(NEXT_LINE); //NOI18N
+    if (this.attributes != null && !this.attributes.isEmpty()) {
+      out.append("> "); //NOI18N
+      MindMap.writeAttributes(out, this.attributes);
+      out.append(NEXT_LINE).append(NEXT_LINE);
     }
 
-    for (final Map.Entry<Extra.ExtraType, Extra<?>> e : this.extras.entrySet()) {
-      e.getValue().write(out);
-      out.append(NEXT_LINE);
+    if (this.extras != null) {
+      for (final Map.Entry<Extra.ExtraType, Extra<?>> e : this.extras.entrySet()) {
+        e.getValue().write(out);
+        out.append(NEXT_LINE);
+      }
     }
 
-    if (!this.codeSnippets.isEmpty()) {
+    if (this.codeSnippets != null && !this.codeSnippets.isEmpty()) {
       for (final Map.Entry<String, String> e : this.codeSnippets.entrySet()) {
         final String language = e.getKey();
         final String body = e.getValue();
@@ -704,8 +960,8 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       }
     }
 
-    for (final Topic t : this.children) {
-      t.write(level + 1, out);
+    for (int i = 0; i < this.childrenNumber; i++) {
+      this.children[i].write(level + 1, out);
     }
   }
 
@@ -736,69 +992,52 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   }
 
   public boolean hasChildren() {
-    this.map.lock();
+    this.map.lockRead();
     try {
-      return !this.children.isEmpty();
+      return this.childrenNumber > 0;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
-  boolean removeAllLinksTo(@Nullable final Topic topic) {
-    boolean result = false;
-    if (topic != null) {
-      final String uid = topic.getAttribute(ExtraTopic.TOPIC_UID_ATTR);
-      if (uid != null) {
-        final ExtraTopic link = (ExtraTopic) this.getExtras().get(Extra.ExtraType.TOPIC);
-        if (link != null && uid.equals(link.getValue())) {
-          this.removeExtra(Extra.ExtraType.TOPIC);
-          result = true;
-        }
+  public void removeAllChildren() {
+    this.map.lock();
+    try {
+      final Topic[] removed = new Topic[this.childrenNumber];
+      System.arraycopy(this.children, 0, removed, 0, this.childrenNumber);
+      for (final Topic t : removed) {
+        t.indexInParent = -1;
       }
-
-      for (final Topic ch : this.children) {
-        result |= ch.removeAllLinksTo(topic);
+      this.children = NO_CHILDREN;
+      this.childrenNumber = 0;
+      // from the last one, so that every index is valid for sequential removing
+      for (int i = removed.length - 1; i >= 0; i--) {
+        this.map.topicDetached(this, i, removed[i]);
       }
     }
-
-    return result;
-  }
-
-  boolean removeTopic(@Nullable final Topic topic) {
-    if (topic == null) {
-      return false;
-    }
-    final Iterator<Topic> iterator = this.children.iterator();
-    while (iterator.hasNext()) {
-      final Topic t = iterator.next();
-      if (t == topic) {
-        iterator.remove();
-        return true;
-      } else if (t.removeTopic(topic)) {
-        return true;
-      }
+    finally {
+      this.map.unlock();
     }
-    return false;
-  }
-
-  public void removeAllChildren() {
-    this.children.clear();
   }
 
   public boolean moveToNewParent(@Nullable final Topic newParent) {
     this.map.lock();
     try {
-      if (newParent == null || this == newParent || this.getParent() == newParent || this.children.contains(newParent)) {
+      if (newParent == null || this == newParent || this.getParent() == newParent || this.indexOfChild(newParent) >= 0) {
         return false;
       }
 
       final Topic theParent = this.parent;
       if (theParent != null) {
-        theParent.children.remove(this);
+        final int index = theParent.indexOfChild(this);
+        if (theParent.removeChild(this)) {
+          this.map.topicDetached(theParent, index, this);
+        }
       }
-      newParent.children.add(this);
       this.parent = newParent;
+      newParent.addChild(this);
+      this.map.topicAttached(this);
 
       return true;
     }
@@ -812,7 +1051,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     this.map.lock();
     try {
       final Topic result = new Topic(this.map, this, GetUtils.ensureNonNull(text, "")); //NOI18N
-      if (afterTheTopic != null && this.children.indexOf(afterTheTopic) >= 0) {
+      if (afterTheTopic != null && this.indexOfChild(afterTheTopic) >= 0) {
         result.moveAfter(afterTheTopic);
       }
       return result;
@@ -824,19 +1063,19 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   @Nullable
   public Topic findNext(@Nullable final TopicChecker checker) {
-    this.map.lock();
+    this.map.lockRead();
     try {
       Topic result = null;
       Topic current = this.getParent();
       if (current != null) {
-        final int indexThis = current.children.indexOf(this);
+        final int indexThis = current.indexOfChild(this);
         if (indexThis >= 0) {
-          for (int i = indexThis + 1; i < current.children.size(); i++) {
+          for (int i = indexThis + 1; i < current.childrenNumber; i++) {
             if (checker == null) {
-              result = current.children.get(i);
+              result = current.children[i];
               break;
-            } else if (checker.check(current.children.get(i))) {
-              result = current.children.get(i);
+            } else if (checker.check(current.children[i])) {
+              result = current.children[i];
               break;
             }
           }
@@ -846,22 +1085,22 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
   @Nullable
   public Topic findPrev(@Nonnull final TopicChecker checker) {
-    this.map.lock();
+    this.map.lockRead();
     try {
       Topic result = null;
       Topic current = this.getParent();
       if (current != null) {
-        final int indexThis = current.children.indexOf(this);
+        final int indexThis = current.indexOfChild(this);
         if (indexThis >= 0) {
           for (int i = indexThis - 1; i >= 0; i--) {
-            if (checker.check(current.children.get(i))) {
-              result = current.children.get(i);
+            if (checker.check(current.children[i])) {
+              result = current.children[i];
               break;
             }
           }
@@ -871,19 +1110,29 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
   public void removeExtras(@Nullable @MayContainNull final Extra<?>... extras) {
     this.map.lock();
     try {
+      if (this.extras == null) {
+        return;
+      }
       if (extras == null || extras.length == 0) {
+        final Extra<?>[] removed = this.extras.values().toArray(new Extra<?>[this.extras.size()]);
         this.extras.clear();
+        for (final Extra<?> e : removed) {
+          this.map.topicExtraChanged(this, e, null);
+        }
       } else {
         for (final Extra<?> e : extras) {
           if (e != null) {
-            this.extras.remove(e.getType());
+            final Extra<?> removed = this.extras.remove(e.getType());
+            if (removed != null) {
+              this.map.topicExtraChanged(this, removed, null);
+            }
           }
         }
       }
@@ -899,8 +1148,8 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
       return this;
     }
     Topic result = null;
-    for (final Topic c : this.children) {
-      result = c.findForAttribute(attrName, value);
+    for (int i = 0; i < this.childrenNumber; i++) {
+      result = this.children[i].findForAttribute(attrName, value);
       if (result != null) {
         break;
       }
@@ -908,6 +1157,33 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     return result;
   }
 
+  @Nonnull
+  @MustNotContainNull
+  List<Topic> makeSubtreeList() {
+    final List<Topic> result = new ArrayList<Topic>();
+    result.add(this);
+    for (final Topic t : this) {
+      result.add(t);
+    }
+    return result;
+  }
+
+  /**
+   * Check that the topic is presented in the topic tree of its mind map.
+   *
+   * @return true if the topic is reachable from the root of the mind map, false otherwise
+   */
+  boolean isAttachedToMap() {
+    Topic current = this;
+    while (current.parent != null) {
+      if (current.parent.indexOfChild(current) < 0) {
+        return false;
+      }
+      current = current.parent;
+    }
+    return current == this.map.getRoot();
+  }
+
   @Nonnull
   public int[] getPositionPath() {
     final Topic[] path = getPath();
@@ -917,7 +1193,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     int index = 1;
     while (index < path.length) {
       final Topic next = path[index];
-      final int theindex = current.children.indexOf(next);
+      final int theindex = current.indexOfChild(next);
       result[index++] = theindex;
       if (theindex < 0) {
         break;
@@ -931,31 +1207,32 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
   @Nonnull
   @MustNotContainNull
   public Topic[] getPath() {
-    final List<Topic> list = new ArrayList<Topic>();
-    Topic current = this;
-    do {
-      list.add(0, current);
-      current = current.parent;
+    int length = 0;
+    for (Topic current = this; current != null; current = current.parent) {
+      length++;
+    }
+    final Topic[] result = new Topic[length];
+    for (Topic current = this; current != null; current = current.parent) {
+      result[--length] = current;
     }
-    while (current != null);
-    return list.toArray(new Topic[list.size()]);
+    return result;
   }
 
   @Nonnull
   Topic makeCopy(@Nonnull final MindMap newMindMap, @Nullable final Topic parent) {
-    this.map.lock();
+    this.map.lockRead();
     try {
-      final Topic result = new Topic(newMindMap, parent, this.text, this.extras.values().toArray(new Extra<?>[this.extras.values().size()]));
-      for (final Topic c : this.children) {
-        c.makeCopy(newMindMap, result);
+      final Topic result = new Topic(newMindMap, parent, this.text, this.extrasToArray());
+      for (int i = 0; i < this.childrenNumber; i++) {
+        this.children[i].makeCopy(newMindMap, result);
       }
-      result.attributes.putAll(this.attributes);
-      result.codeSnippets.putAll(this.codeSnippets);
+      result.attributes = copyStringMap(this.attributes);
+      result.codeSnippets = copyStringMap(this.codeSnippets);
 
       return result;
     }
     finally {
-      this.map.unlock();
+      this.map.unlockRead();
     }
   }
 
@@ -965,10 +1242,14 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     this.map.lock();
     try {
       for (final Extra.ExtraType t : type) {
-        result |= this.extras.remove(t) != null;
+        final Extra<?> removed = this.extras == null ? null : this.extras.remove(t);
+        if (removed != null) {
+          result = true;
+          this.map.topicExtraChanged(this, removed, null);
+        }
       }
-      for (final Topic c : this.children) {
-        result |= c.removeExtraFromSubtree(type);
+      for (int i = 0; i < this.childrenNumber; i++) {
+        result |= this.children[i].removeExtraFromSubtree(type);
       }
       return result;
     }
@@ -983,10 +1264,14 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
     this.map.lock();
     try {
       for (final String t : names) {
-        result |= this.attributes.remove(t) != null;
+        final String removed = this.attributes == null ? null : this.attributes.remove(t);
+        if (removed != null) {
+          result = true;
+          this.map.topicAttributeChanged(this, t, removed, null);
+        }
       }
-      for (final Topic c : this.children) {
-        result |= c.removeAttributeFromSubtree(names);
+      for (int i = 0; i < this.childrenNumber; i++) {
+        result |= this.children[i].removeAttributeFromSubtree(names);
       }
       return result;
     }
@@ -997,21 +1282,22 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
 
   public boolean deleteLinkToFileIfPresented(@Nonnull final File baseFolder, @Nonnull final MMapURI file) {
     boolean result = false;
-    if (this.extras.containsKey(Extra.ExtraType.FILE)) {
+    if (this.extras != null && this.extras.containsKey(Extra.ExtraType.FILE)) {
       final ExtraFile fileLink = (ExtraFile) this.extras.get(Extra.ExtraType.FILE);
       if (fileLink.isSameOrHasParent(baseFolder, file)) {
         result = this.extras.remove(Extra.ExtraType.FILE) != null;
+        this.map.topicExtraChanged(this, fileLink, null);
       }
     }
-    for (final Topic c : this.children) {
-      result |= c.deleteLinkToFileIfPresented(baseFolder, file);
+    for (int i = 0; i < this.childrenNumber; i++) {
+      result |= this.children[i].deleteLinkToFileIfPresented(baseFolder, file);
     }
     return result;
   }
 
   public boolean replaceLinkToFileIfPresented(@Nonnull final File baseFolder, @Nonnull final MMapURI oldFile, @Nonnull final MMapURI newFile) {
     boolean result = false;
-    if (this.extras.containsKey(Extra.ExtraType.FILE)) {
+    if (this.extras != null && this.extras.containsKey(Extra.ExtraType.FILE)) {
       final ExtraFile fileLink = (ExtraFile) this.extras.get(Extra.ExtraType.FILE);
       final ExtraFile replacement;
 
@@ -1025,78 +1311,58 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
         result = true;
         this.extras.remove(Extra.ExtraType.FILE);
         this.extras.put(Extra.ExtraType.FILE, replacement);
+        this.map.topicExtraChanged(this, fileLink, replacement);
       }
     }
 
-    for (final Topic c : this.children) {
-      result |= c.replaceLinkToFileIfPresented(baseFolder, oldFile, newFile);
+    for (int i = 0; i < this.childrenNumber; i++) {
+      result |= this.children[i].replaceLinkToFileIfPresented(baseFolder, oldFile, newFile);
     }
     return result;
   }
 
   public boolean doesContainFileLink(@Nonnull final File baseFolder, @Nonnull final MMapURI file) {
-    if (this.extras.containsKey(Extra.ExtraType.FILE)) {
+    if (this.extras != null && this.extras.containsKey(Extra.ExtraType.FILE)) {
       final ExtraFile fileLink = (ExtraFile) this.extras.get(Extra.ExtraType.FILE);
       if (fileLink.isSame(baseFolder, file)) {
         return true;
       }
     }
-    for (final Topic c : this.children) {
-      if (c.doesContainFileLink(baseFolder, file)) {
+    for (int i = 0; i < this.childrenNumber; i++) {
+      if (this.children[i].doesContainFileLink(baseFolder, file)) {
         return true;
       }
     }
     return false;
   }
 
+  /**
+   * Get iterator over all descendants of the topic in pre-order, the topic itself is not included. Method remove() of the iterator removes the last returned topic from its parent.
+   *
+   * @return iterator over descendants
+   */
   @Override
   @Nonnull
   public Iterator<Topic> iterator() {
-    final Iterator<Topic> iter = this.children.iterator();
-
-    return new Iterator<Topic>() {
-      Topic childTopic;
-      Iterator<Topic> childIterator;
-
-      @Override
-      public void remove() {
-        iter.remove();
-      }
-
-      @Nonnull
-      Iterator<Topic> init() {
-        if (iter.hasNext()) {
-          this.childTopic = iter.next();
-        }
-        return this;
-      }
-
-      @Override
-      public boolean hasNext() {
-        return iter.hasNext() || this.childTopic != null || (this.childIterator != null && this.childIterator.hasNext());
-      }
+    return new TopicTreeIterator(this, false);
+  }
 
-      @Nonnull
-      @Override
-      public Topic next() {
-        final Topic result;
-        if (this.childTopic != null) {
-          result = this.childTopic;
-          this.childTopic = null;
-          this.childIterator = result.iterator();
-        } else if (this.childIterator != null) {
-          if (this.childIterator.hasNext()) {
-            result = this.childIterator.next();
-          } else {
-            result = iter.next();
-            this.childIterator = result.iterator();
-          }
-        } else {
-          throw new NoSuchElementException();
-        }
-        return result;
-      }
-    }.init();
+  /**
+   * Visit the topic and its descendants in pre-order. The mind map is locked for reading during traversal so that the visitor must not change it.
+   *
+   * @param visitor visitor of topics
+   * @return topic for which visitor returned {@link TopicVisitor.Decision#STOP}, null if all topics were visited
+   * @since 1.2.3
+   */
+  @Nullable
+  public Topic traverse(@Nonnull final TopicVisitor visitor) {
+    this.map.lockRead();
+    try {
+      return new TopicTreeIterator(this, true).traverse(Assertions.assertNotNull(visitor));
+    }
+    finally {
+      this.map.unlockRead();
+    }
   }
 
   /**
@@ -1108,7 +1374,7 @@ public final class Topic implements Serializable, Constants, Iterable<Topic> {
    */
   public boolean doesContainCodeSnippetForAnyLanguage(@Nonnull @MustNotContainNull String ... languageNames) {
     boolean result = false;
-    if (!this.codeSnippets.isEmpty()){
+    if (this.codeSnippets != null && !this.codeSnippets.isEmpty()){
       for(final String s : languageNames){
         if (this.codeSnippets.containsKey(s)){
           result = true;
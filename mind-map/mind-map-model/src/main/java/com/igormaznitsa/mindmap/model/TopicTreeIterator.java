@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Pre-order iterator over topic tree, it keeps path to the current topic in explicit stack so that every step takes constant time independently of tree depth.
+ */
+final class TopicTreeIterator implements Iterator<Topic> {
+
+  private Topic[] parents = new Topic[16];
+  private int[] indexes = new int[16];
+  private int depth;
+
+  private Topic pendingRoot;
+  private Topic last;
+  private int lastDepth;
+  private boolean descendLast;
+
+  /**
+   * Make iterator over subtree.
+   *
+   * @param root root of subtree
+   * @param includeRoot true if the root must be returned as the first topic, false if only descendants should be returned
+   */
+  TopicTreeIterator(@Nullable final Topic root, final boolean includeRoot) {
+    if (root != null) {
+      if (includeRoot) {
+        this.pendingRoot = root;
+      } else {
+        push(root, 0);
+      }
+    }
+  }
+
+  /**
+   * Make iterator which continues pre-order traversal of subtree after topic.
+   *
+   * @param root root of subtree
+   * @param after topic in the subtree, the next returned topic will be the one following it in pre-order
+   * @throws IllegalArgumentException if the topic is not in the subtree
+   */
+  TopicTreeIterator(@Nonnull final Topic root, @Nonnull final Topic after) {
+    final Topic[] path = after.getPath();
+    int rootIndex = -1;
+    for (int i = 0; i < path.length; i++) {
+      if (path[i] == root) {
+        rootIndex = i;
+        break;
+      }
+    }
+    if (rootIndex < 0) {
+      throw new IllegalArgumentException("Topic is not in the subtree");
+    }
+    for (int i = rootIndex; i < path.length - 1; i++) {
+      final int index = path[i].indexOfChild(path[i + 1]);
+      if (index < 0) {
+        throw new IllegalArgumentException("Topic is not in the subtree");
+      }
+      push(path[i], index + 1);
+    }
+    this.last = after;
+    this.lastDepth = this.depth;
+    this.descendLast = true;
+  }
+
+  private void push(@Nonnull final Topic parent, final int index) {
+    if (this.depth == this.parents.length) {
+      final Topic[] newParents = new Topic[this.depth * 2];
+      System.arraycopy(this.parents, 0, newParents, 0, this.depth);
+      this.parents = newParents;
+      final int[] newIndexes = new int[this.depth * 2];
+      System.arraycopy(this.indexes, 0, newIndexes, 0, this.depth);
+      this.indexes = newIndexes;
+    }
+    this.parents[this.depth] = parent;
+    this.indexes[this.depth] = index;
+    this.depth++;
+  }
+
+  private void removeExhaustedFrames() {
+    while (this.depth > 0 && this.indexes[this.depth - 1] >= this.parents[this.depth - 1].getChildCount()) {
+      this.parents[--this.depth] = null;
+    }
+  }
+
+  /**
+   * Don't visit children of the last returned topic.
+   */
+  void skipChildren() {
+    this.descendLast = false;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (this.pendingRoot != null || (this.descendLast && this.last.getChildCount() > 0)) {
+      return true;
+    }
+    removeExhaustedFrames();
+    return this.depth > 0;
+  }
+
+  @Override
+  @Nonnull
+  public Topic next() {
+    final Topic result;
+    if (this.pendingRoot != null) {
+      result = this.pendingRoot;
+      this.pendingRoot = null;
+    } else {
+      if (this.descendLast && this.last.getChildCount() > 0) {
+        push(this.last, 0);
+      }
+      removeExhaustedFrames();
+      if (this.depth == 0) {
+        this.last = null;
+        this.descendLast = false;
+        throw new NoSuchElementException();
+      }
+      result = this.parents[this.depth - 1].getChildAt(this.indexes[this.depth - 1]++);
+    }
+    this.last = result;
+    this.lastDepth = this.depth;
+    this.descendLast = true;
+    return result;
+  }
+
+  /**
+   * Visit rest of topics.
+   *
+   * @param visitor visitor of topics
+   * @return topic for which visitor has returned {@link TopicVisitor.Decision#STOP}, null if traversal was completed
+   */
+  @Nullable
+  Topic traverse(@Nonnull final TopicVisitor visitor) {
+    while (hasNext()) {
+      final Topic topic = next();
+      switch (visitor.visit(topic)) {
+        case STOP:
+          return topic;
+        case SKIP_CHILDREN:
+          skipChildren();
+          break;
+        default:
+          break;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Remove the last returned topic from its parent, the root of iteration can't be removed.
+   */
+  @Override
+  public void remove() {
+    final Topic removed = this.last;
+    if (removed == null || this.lastDepth == 0) {
+      throw new IllegalStateException("There is not any removable topic");
+    }
+    final int frame = this.lastDepth - 1;
+    if (frame < this.depth && this.parents[frame] == removed.getParent()) {
+      this.indexes[frame]--;
+    }
+    removed.delete();
+    this.last = null;
+    this.descendLast = false;
+  }
+}
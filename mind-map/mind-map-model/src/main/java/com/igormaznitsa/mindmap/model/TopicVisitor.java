@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Visitor of topics for pre-order traversal of topic tree.
+ *
+ * @since 1.2.3
+ * @see MindMap#traverse(TopicVisitor)
+ * @see Topic#traverse(TopicVisitor)
+ */
+public interface TopicVisitor {
+
+  /**
+   * Decision of visitor about continuation of traversal.
+   */
+  enum Decision {
+    /**
+     * Continue traversal and visit children of the topic.
+     */
+    CONTINUE,
+    /**
+     * Continue traversal but don't visit children of the topic.
+     */
+    SKIP_CHILDREN,
+    /**
+     * Stop traversal.
+     */
+    STOP
+  }
+
+  /**
+   * Visit topic.
+   *
+   * @param topic visited topic
+   * @return decision about further traversal, must not be null
+   */
+  @Nonnull
+  Decision visit(@Nonnull Topic topic);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model.nio;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Optional interface of path service which can replace files. If path service doesn't implement the interface then files are replaced by delete and rename.
+ *
+ * @see Paths#replaceFile(java.io.File, java.io.File)
+ * @since 1.2.3
+ */
+public interface FileReplacer {
+
+  /**
+   * Move file to target one and replace the target if it exists, the move should be atomic if it is supported by file system.
+   *
+   * @param source file to be moved
+   * @param target target file
+   * @throws IOException it will be thrown if the file can't be moved
+   */
+  void replaceFile(@Nonnull File source, @Nonnull File target) throws IOException;
+}
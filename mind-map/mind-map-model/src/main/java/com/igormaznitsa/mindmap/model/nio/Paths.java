@@ -17,13 +17,14 @@ package com.igormaznitsa.mindmap.model.nio;
 
 import com.igormaznitsa.mindmap.model.logger.Logger;
 import com.igormaznitsa.mindmap.model.logger.LoggerFactory;
-import com.igormaznitsa.mindmap.model.nio.impl.J7PathService;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.ServiceLoader;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
@@ -37,19 +38,66 @@ public final class Paths {
     final ServiceLoader<PathService> service = ServiceLoader.load(PathService.class, Paths.class.getClassLoader());
     service.reload();
     final Iterator<PathService> iterator = service.iterator();
-    PATH_SERVICE = iterator.hasNext() ? iterator.next() : new J7PathService();
+    PATH_SERVICE = iterator.hasNext() ? iterator.next() : makeDefaultService();
     
-    LOGGER.info("Detected path service : "+PATH_SERVICE.getClass().getName());
+    LOGGER.info("Detected path service : " + (PATH_SERVICE == null ? "none" : PATH_SERVICE.getClass().getName())); //NOI18N
+  }
+
+  @Nullable
+  private static PathService makeDefaultService() {
+    PathService result = null;
+    try {
+      Class.forName("java.nio.file.Files"); //NOI18N
+      result = (PathService) Class.forName("com.igormaznitsa.mindmap.model.nio.impl.J7PathService").newInstance(); //NOI18N
+    }
+    catch (ClassNotFoundException ex) {
+      LOGGER.warn("Java 7 NIO is not found, path service is not available"); //NOI18N
+    }
+    catch (Exception ex) {
+      LOGGER.error("Can't make path service", ex); //NOI18N
+    }
+    return result;
+  }
+
+  @Nonnull
+  private static PathService getService() {
+    if (PATH_SERVICE == null) {
+      throw new UnsupportedOperationException("Path service is not available, Java 7+ is needed"); //NOI18N
+    }
+    return PATH_SERVICE;
   }
 
   @Nonnull
   public static Path toPath(@Nonnull final File file) {
-    return PATH_SERVICE.getForFile(file);
+    return getService().getForFile(file);
   }
 
   @Nonnull
   public static Path get(@Nonnull final String string, @Nonnull @MustNotContainNull final String[] next) {
-    return PATH_SERVICE.getForPathItems(string, next);
+    return getService().getForPathItems(string, next);
+  }
+
+  /**
+   * Move file to target one and replace the target if it exists. The move is atomic if path service implements {@link FileReplacer} and it is supported by file system, otherwise (for instance on Java 6) the target is deleted and the file is renamed.
+   *
+   * @param source file to be moved
+   * @param target target file
+   * @throws IOException it will be thrown if the file can't be moved
+   * @since 1.2.3
+   */
+  public static void replaceFile(@Nonnull final File source, @Nonnull final File target) throws IOException {
+    if (PATH_SERVICE instanceof FileReplacer) {
+      ((FileReplacer) PATH_SERVICE).replaceFile(source, target);
+    } else {
+      if (!source.renameTo(target)) {
+        if (target.isFile() && !target.delete()) {
+          throw new IOException("Can't delete file : " + target); //NOI18N
+        }
+        if (!source.renameTo(target)) {
+          throw new IOException("Can't rename file " + source + " to " + target); //NOI18N
+        }
+      }
+    }
   }
 
 
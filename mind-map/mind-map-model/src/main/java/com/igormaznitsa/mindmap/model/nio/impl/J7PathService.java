@@ -16,17 +16,22 @@
 package com.igormaznitsa.mindmap.model.nio.impl;
 
 import com.igormaznitsa.mindmap.model.IgnoreInAnimalSniffer;
+import com.igormaznitsa.mindmap.model.nio.FileReplacer;
 import com.igormaznitsa.mindmap.model.nio.Path;
 import com.igormaznitsa.mindmap.model.nio.PathService;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.annotation.Nonnull;
 
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 @IgnoreInAnimalSniffer
-public class J7PathService implements PathService {
+public class J7PathService implements PathService, FileReplacer {
 
   @Override
   @Nonnull
@@ -39,5 +44,15 @@ public class J7PathService implements PathService {
   public Path getForPathItems(@Nonnull final String first, @Nonnull @MustNotContainNull final String... items) {
     return new J7Path(first, items);
   }
+
+  @Override
+  public void replaceFile(@Nonnull final File source, @Nonnull final File target) throws IOException {
+    try {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (AtomicMoveNotSupportedException ex) {
+      Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
   
 }
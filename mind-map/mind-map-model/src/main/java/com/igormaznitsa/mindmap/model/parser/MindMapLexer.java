@@ -92,6 +92,35 @@ public final class MindMapLexer {
     }
   }
 
+  /**
+   * Reusable view of the current token text, it doesn't copy characters from the buffer.
+   */
+  private final class TokenView implements CharSequence {
+
+    @Override
+    public int length() {
+      return tokenEnd - tokenStart;
+    }
+
+    @Override
+    public char charAt(final int index) {
+      return buffer.charAt(tokenStart + index);
+    }
+
+    @Override
+    @Nonnull
+    public CharSequence subSequence(final int start, final int end) {
+      return buffer.subSequence(tokenStart + start, tokenStart + end);
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+      return buffer.subSequence(tokenStart, tokenEnd).toString();
+    }
+  }
+
+  private final TokenView tokenView = new TokenView();
   private CharSequence buffer = "";
   private int endOffset;
   private int tokenStart;
@@ -130,6 +159,88 @@ public final class MindMapLexer {
     return getTokenSequence().toString();
   }
 
+  /**
+   * Get view of the current token text. The view doesn't make any copy of chars and it is reused for all tokens, so its content is changed after each advance.
+   *
+   * @return view of the current token text
+   * @since 1.2.3
+   */
+  @Nonnull
+  public CharSequence getTokenView() {
+    return this.tokenView;
+  }
+
+  /**
+   * Get number of chars in the current token.
+   *
+   * @return length of token
+   * @since 1.2.3
+   */
+  public int getTokenLength() {
+    return this.tokenEnd - this.tokenStart;
+  }
+
+  /**
+   * Get char of the current token.
+   *
+   * @param index index of char inside token
+   * @return char from buffer
+   * @since 1.2.3
+   */
+  public char getTokenChar(final int index) {
+    return this.buffer.charAt(this.tokenStart + index);
+  }
+
+  /**
+   * Check that the current token text starts with text.
+   *
+   * @param text text to be checked
+   * @return true if the token starts with the text, false otherwise
+   * @since 1.2.3
+   */
+  public boolean isTokenStartsWith(@Nonnull final String text) {
+    final int len = text.length();
+    if (this.tokenEnd - this.tokenStart < len) {
+      return false;
+    }
+    for (int i = 0; i < len; i++) {
+      if (this.buffer.charAt(this.tokenStart + i) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Count chars on start of the current token.
+   *
+   * @param chr char to be counted
+   * @return number of the chars on start of token
+   * @since 1.2.3
+   */
+  public int countTokenStartChars(final char chr) {
+    int result = 0;
+    for (int i = this.tokenStart; i < this.tokenEnd && this.buffer.charAt(i) == chr; i++) {
+      result++;
+    }
+    return result;
+  }
+
+  /**
+   * Append part of the current token text to string builder without intermediate copy.
+   *
+   * @param out builder to get chars
+   * @param start start index inside token, inclusive
+   * @param end end index inside token, exclusive
+   * @return the same builder
+   * @since 1.2.3
+   */
+  @Nonnull
+  @ReturnsOriginal
+  public StringBuilder appendTokenText(@Nonnull final StringBuilder out, final int start, final int end) {
+    return out.append(this.buffer, this.tokenStart + start, this.tokenStart + end);
+  }
+
   @Nullable
   public TokenType getTokenType() {
     return this.tokenStart == this.tokenEnd ? null : this.tokenType;
@@ -201,9 +312,9 @@ public final class MindMapLexer {
         }
         break;
         case EXTRA_TEXT: {
-          if (getTokenLength() <= 5 && !isTokenMayStartWith("<pre>")) {
+          if (getProcessedTokenLength() <= 5 && !isTokenMayStartWith("<pre>")) {
             this.position.state = TokenType.UNKNOWN_LINE;
-          } else if (readChar() == '>' && getTokenLength() > 5) {
+          } else if (readChar() == '>' && getProcessedTokenLength() > 5) {
             if (prevTextInBufferIs("</pre>")) {
               tokenHasBeenCompleted = true;
               inAction = false;
@@ -224,7 +335,7 @@ public final class MindMapLexer {
         case ATTRIBUTE:
         case EXTRA_TYPE: {
           if (!isBufferEnd()) {
-            if (getTokenLength() == 1) {
+            if (getProcessedTokenLength() == 1) {
               if (readChar() != ' ') {
                 this.position.state = TokenType.UNKNOWN_LINE;
                 continue;
@@ -290,7 +401,7 @@ public final class MindMapLexer {
     }
   }
 
-  private int getTokenLength() {
+  private int getProcessedTokenLength() {
     return this.position.offset - this.tokenStart;
   }
 
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.igormaznitsa.meta.common.utils.Assertions;
+import com.igormaznitsa.mindmap.model.Extra;
+import com.igormaznitsa.mindmap.model.ModelUtils;
+
+/**
+ * Pull parser of mind map text. It reads text from reader by chunks and provides its content as sequence of events, so that the content can be processed without building of mind map model and without loading of the whole text into memory.
+ *
+ * @since 1.2.3
+ */
+public final class MindMapReader {
+
+  /**
+   * Type of parser event.
+   */
+  public enum EventType {
+    /**
+     * Line of mind map attributes in the header.
+     */
+    MAP_ATTRIBUTES,
+    /**
+     * Topic title with its level.
+     */
+    TOPIC,
+    /**
+     * Line of attributes of the last topic.
+     */
+    TOPIC_ATTRIBUTES,
+    /**
+     * Extra data of the last topic.
+     */
+    EXTRA,
+    /**
+     * Code snippet of the last topic.
+     */
+    CODE_SNIPPET,
+    /**
+     * End of data.
+     */
+    END
+  }
+
+  private static final int CHUNK_SIZE = 16384;
+  private static final Extra.ExtraType[] EXTRA_TYPES = Extra.ExtraType.values();
+
+  /**
+   * Sliding window over read text, it keeps absolute offsets for lexer and remembers the max offset requested by lexer.
+   */
+  private static final class TextWindow implements CharSequence {
+
+    private final StringBuilder text = new StringBuilder(CHUNK_SIZE);
+    private int start;
+    private int maxAccessed = -1;
+
+    @Override
+    public int length() {
+      return this.start + this.text.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+      if (index > this.maxAccessed) {
+        this.maxAccessed = index;
+      }
+      return this.text.charAt(index - this.start);
+    }
+
+    @Override
+    @Nonnull
+    public CharSequence subSequence(final int start, final int end) {
+      return this.text.subSequence(start - this.start, end - this.start);
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+      return this.text.toString();
+    }
+
+    private void dropBefore(final int offset) {
+      final int toRemove = offset - this.start;
+      if (toRemove > CHUNK_SIZE && toRemove > this.text.length() / 2) {
+        this.text.delete(0, toRemove);
+        this.start = offset;
+      }
+    }
+  }
+
+  private final Reader reader;
+  private final MindMapLexer lexer;
+  private final TextWindow window;
+  private final char[] chunk;
+  private boolean sourceEnded;
+  private boolean headerPassed;
+
+  private EventType event;
+
+  private int detectedLevel = -1;
+  private Extra.ExtraType pendingExtraType;
+  private String codeSnippetLanguage;
+  private final StringBuilder codeSnippetBody = new StringBuilder();
+
+  private int topicLevel;
+  private String text;
+  private Extra.ExtraType extraType;
+  private String snippetLanguage;
+
+  /**
+   * Make reader to parse whole mind map text from reader, the reader is not closed.
+   *
+   * @param reader source of mind map text
+   */
+  public MindMapReader(@Nonnull final Reader reader) {
+    this.reader = Assertions.assertNotNull(reader);
+    this.window = new TextWindow();
+    this.chunk = new char[CHUNK_SIZE];
+    this.lexer = new MindMapLexer();
+    this.lexer.start(this.window, 0, 0, MindMapLexer.TokenType.HEAD_LINE);
+  }
+
+  /**
+   * Make reader to parse topics from lexer which has already passed the header of mind map.
+   *
+   * @param lexer lexer positioned after mind map header
+   */
+  public MindMapReader(@Nonnull final MindMapLexer lexer) {
+    this.reader = null;
+    this.window = null;
+    this.chunk = null;
+    this.sourceEnded = true;
+    this.headerPassed = true;
+    this.lexer = Assertions.assertNotNull(lexer);
+  }
+
+  /**
+   * Read next event.
+   *
+   * @return type of the read event, {@link EventType#END} if there is no more data
+   * @throws IOException it will be thrown for transport errors
+   * @throws IllegalArgumentException if the mind map header is not ended
+   */
+  @Nonnull
+  public EventType next() throws IOException {
+    if (this.event == EventType.END) {
+      return EventType.END;
+    }
+
+    EventType result = null;
+    while (result == null) {
+      final MindMapLexer.TokenType token = advance();
+      if (token == null) {
+        if (!this.headerPassed) {
+          throw new IllegalArgumentException("Wrong format of mind map, end of header is not found");
+        }
+        result = EventType.END;
+      } else if (this.headerPassed) {
+        result = processTopicToken(token);
+      } else {
+        switch (token) {
+          case ATTRIBUTE: {
+            this.text = this.lexer.getTokenText();
+            result = EventType.MAP_ATTRIBUTES;
+          }
+          break;
+          case HEAD_DELIMITER: {
+            this.headerPassed = true;
+          }
+          break;
+          default:
+            break;
+        }
+      }
+    }
+    this.event = result;
+    return result;
+  }
+
+  @Nullable
+  private EventType processTopicToken(@Nonnull final MindMapLexer.TokenType token) {
+    EventType result = null;
+    switch (token) {
+      case TOPIC_LEVEL: {
+        this.detectedLevel = this.lexer.countTokenStartChars('#');
+      }
+      break;
+      case TOPIC_TITLE: {
+        this.topicLevel = this.detectedLevel;
+        this.text = ModelUtils.unescapeMarkdownStr(ModelUtils.removeISOControls(this.lexer.getTokenText()));
+        result = EventType.TOPIC;
+      }
+      break;
+      case EXTRA_TYPE: {
+        this.pendingExtraType = findExtraType(this.lexer.getTokenView());
+      }
+      break;
+      case CODE_SNIPPET_START: {
+        this.codeSnippetLanguage = this.lexer.getTokenView().subSequence(3, this.lexer.getTokenLength()).toString();
+        this.codeSnippetBody.setLength(0);
+      }
+      break;
+      case CODE_SNIPPET_BODY: {
+        if (this.codeSnippetLanguage != null) {
+          this.lexer.appendTokenText(this.codeSnippetBody, 0, this.lexer.getTokenLength());
+        }
+      }
+      break;
+      case CODE_SNIPPET_END: {
+        if (this.codeSnippetLanguage != null) {
+          this.snippetLanguage = this.codeSnippetLanguage.trim();
+          this.codeSnippetLanguage = null;
+          this.text = this.codeSnippetBody.toString();
+          this.codeSnippetBody.setLength(0);
+          result = EventType.CODE_SNIPPET;
+        }
+      }
+      break;
+      case ATTRIBUTE: {
+        this.text = this.lexer.getTokenText().trim();
+        this.pendingExtraType = null;
+        result = EventType.TOPIC_ATTRIBUTES;
+      }
+      break;
+      case EXTRA_TEXT: {
+        if (this.pendingExtraType != null) {
+          final int length = this.lexer.getTokenLength();
+          if (length >= 11) {
+            this.extraType = this.pendingExtraType;
+            this.text = this.lexer.getTokenView().subSequence(5, length - 6).toString();
+            result = EventType.EXTRA;
+          }
+          this.pendingExtraType = null;
+        }
+      }
+      break;
+      case UNKNOWN_LINE: {
+        this.pendingExtraType = null;
+      }
+      break;
+      default:
+        break;
+    }
+    return result;
+  }
+
+  /**
+   * Find extra type for name in extra type token, the token starts with '-' and the name can be surrounded by spaces and control chars like for String#trim().
+   *
+   * @param token token text
+   * @return found type or null
+   */
+  @Nullable
+  private static Extra.ExtraType findExtraType(@Nonnull final CharSequence token) {
+    int start = 1;
+    int end = token.length();
+    while (start < end && token.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && token.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    for (final Extra.ExtraType type : EXTRA_TYPES) {
+      final String name = type.name();
+      if (name.length() == end - start) {
+        boolean same = true;
+        for (int i = 0; i < name.length(); i++) {
+          if (name.charAt(i) != token.charAt(start + i)) {
+            same = false;
+            break;
+          }
+        }
+        if (same) {
+          return type;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private MindMapLexer.TokenType advance() throws IOException {
+    final MindMapLexer.LexerPosition position = this.lexer.getCurrentPosition();
+    if (this.window != null) {
+      this.window.dropBefore(Math.max(this.window.start, position.getOffset() - 1));
+    }
+
+    final int oldOffset = position.getOffset();
+    final MindMapLexer.LexerPosition saved = position.makeCopy();
+
+    while (true) {
+      if (this.window != null) {
+        this.window.maxAccessed = -1;
+      }
+      this.lexer.advance();
+
+      final int bufferEnd = this.lexer.getBufferEnd();
+      if (!this.sourceEnded && (position.getOffset() >= bufferEnd || this.window.maxAccessed >= bufferEnd - 1)) {
+        // token can be changed by next data, read more and repeat from the same position
+        readMore();
+        this.lexer.setBufferEndOffset(this.window.length());
+        this.lexer.restore(saved);
+        continue;
+      }
+
+      final MindMapLexer.TokenType token = this.lexer.getTokenType();
+      return token == null || oldOffset == position.getOffset() ? null : token;
+    }
+  }
+
+  private void readMore() throws IOException {
+    final int required = Math.max(CHUNK_SIZE, this.window.text.length());
+    int read = 0;
+    while (read < required) {
+      final int len = this.reader.read(this.chunk);
+      if (len < 0) {
+        this.sourceEnded = true;
+        break;
+      }
+      this.window.text.append(this.chunk, 0, len);
+      read += len;
+    }
+  }
+
+  /**
+   * Get type of the last event.
+   *
+   * @return type of the last event, null if there was not any read event
+   */
+  @Nullable
+  public EventType getEventType() {
+    return this.event;
+  }
+
+  /**
+   * Get level of topic for {@link EventType#TOPIC}, the root topic has level 1.
+   *
+   * @return level of the topic
+   */
+  public int getTopicLevel() {
+    return this.topicLevel;
+  }
+
+  /**
+   * Get text of the last event. It is unescaped title for {@link EventType#TOPIC}, attribute line for {@link EventType#MAP_ATTRIBUTES} and {@link EventType#TOPIC_ATTRIBUTES}, extra data text without preprocessing for {@link EventType#EXTRA} and code snippet body for {@link EventType#CODE_SNIPPET}
+   *
+   * @return text of the last event, can be null if there was not any event
+   */
+  @Nullable
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * Get type of extra for {@link EventType#EXTRA}.
+   *
+   * @return type of extra, null if the last event is not extra
+   */
+  @Nullable
+  public Extra.ExtraType getExtraType() {
+    return this.event == EventType.EXTRA ? this.extraType : null;
+  }
+
+  /**
+   * Get language of code snippet for {@link EventType#CODE_SNIPPET}.
+   *
+   * @return trimmed name of language, null if the last event is not code snippet
+   */
+  @Nullable
+  public String getCodeSnippetLanguage() {
+    return this.event == EventType.CODE_SNIPPET ? this.snippetLanguage : null;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IncrementalMindMapParserTest {
+
+  private static final String TEXT = "Mind Map generated by NB MindMap plugin   \n"
+      + "> __version__=`1.1`\n"
+      + "---\n"
+      + "# Root\n"
+      + "## First\n"
+      + "### First.1\n"
+      + "## Second\n"
+      + "> fillColor=`#FF0000`\n"
+      + "- NOTE\n"
+      + "<pre>some note</pre>\n"
+      + "## Third\n"
+      + "```java\n"
+      + "## not topic\n"
+      + "```\n";
+
+  private static final String[] FRAGMENTS = new String[]{
+    "## ", "### ", "#### ", "# ", "\n", "text", "> a=`b`\n", "> fillColor=`#00FF00`\n", "- NOTE\n", "- LINK\n", "<pre>note</pre>\n", "```java\n", "```\n", "#", "`", "-", "<pre>", "</pre>"
+  };
+
+  private static String fullParse(final String text) throws Exception {
+    return new MindMap(null, new StringReader(text)).packToString();
+  }
+
+  @Test
+  public void testEditOfTopicTitleUpdatesTopicInPlace() throws Exception {
+    final IncrementalMindMapParser parser = IncrementalMindMapParser.parse(null, TEXT);
+    final MindMap map = parser.getMindMap();
+    assertEquals(3, parser.getNumberOfSections());
+
+    final Topic first = map.getRoot().getChildren().get(0);
+    final Topic second = map.getRoot().getChildren().get(1);
+    final Topic third = map.getRoot().getChildren().get(2);
+
+    final int offset = TEXT.indexOf("Second") + "Second".length();
+    final List<MindMapModelEvent> events = parser.applyEdit(offset, 0, " topic");
+
+    assertEquals(1, events.size());
+    assertEquals(MindMapModelEvent.Type.TOPIC_TEXT_CHANGED, events.get(0).getType());
+    assertSame(second, events.get(0).getTopic());
+    assertEquals("Second topic", second.getText());
+    assertSame(first, map.getRoot().getChildren().get(0));
+    assertSame(second, map.getRoot().getChildren().get(1));
+    assertSame(third, map.getRoot().getChildren().get(2));
+    assertEquals(fullParse(parser.getText()), map.packToString());
+  }
+
+  @Test
+  public void testNewSectionIsInserted() throws Exception {
+    final IncrementalMindMapParser parser = IncrementalMindMapParser.parse(null, TEXT);
+    final MindMap map = parser.getMindMap();
+    final Topic third = map.getRoot().getChildren().get(2);
+
+    final List<MindMapModelEvent> events = parser.applyEdit(TEXT.indexOf("## Third"), 0, "## Inserted\n");
+
+    assertEquals(1, events.size());
+    assertEquals(MindMapModelEvent.Type.TOPIC_INSERTED, events.get(0).getType());
+    assertEquals(2, events.get(0).getIndex());
+    assertEquals("Inserted", map.getRoot().getChildren().get(2).getText());
+    assertSame(third, map.getRoot().getChildren().get(3));
+    assertEquals(4, parser.getNumberOfSections());
+    assertEquals(fullParse(parser.getText()), map.packToString());
+  }
+
+  @Test
+  public void testEditOfRootMakesFullReparse() throws Exception {
+    final IncrementalMindMapParser parser = IncrementalMindMapParser.parse(null, TEXT);
+    final List<MindMapModelEvent> events = parser.applyEdit(TEXT.indexOf("Root"), 4, "New root");
+    assertEquals(1, events.size());
+    assertEquals(MindMapModelEvent.Type.STRUCTURE_CHANGED, events.get(0).getType());
+    assertEquals("New root", parser.getMindMap().getRoot().getText());
+    assertEquals(fullParse(parser.getText()), parser.getMindMap().packToString());
+  }
+
+  @Test
+  public void testRandomEditsGiveTheSameResultAsFullParse() throws Exception {
+    final Random rnd = new Random(12345L);
+    final int headerEnd = TEXT.indexOf("# Root");
+    int incremental = 0;
+
+    for (int series = 0; series < 200; series++) {
+      final IncrementalMindMapParser parser = IncrementalMindMapParser.parse(null, TEXT);
+      for (int edit = 0; edit < 30; edit++) {
+        final String text = parser.getText();
+        final int offset = headerEnd + rnd.nextInt(text.length() - headerEnd + 1);
+        final int removed = rnd.nextInt(4) == 0 ? rnd.nextInt(Math.min(12, text.length() - offset) + 1) : 0;
+        final String inserted = rnd.nextInt(5) == 0 ? "" : FRAGMENTS[rnd.nextInt(FRAGMENTS.length)];
+
+        final List<MindMapModelEvent> events = parser.applyEdit(offset, removed, inserted);
+        if (events.isEmpty() || events.get(0).getType() != MindMapModelEvent.Type.STRUCTURE_CHANGED) {
+          incremental++;
+        }
+        assertEquals("Series " + series + ", edit " + edit, fullParse(parser.getText()), parser.getMindMap().packToString());
+      }
+    }
+    assertTrue(incremental > 1000);
+  }
+}
@@ -17,17 +17,35 @@ package com.igormaznitsa.mindmap.model;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
 
 public class MindMapTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
   
   @Test(expected = IllegalArgumentException.class)
   public void testMindMapParse_Error_Empty() throws Exception {
@@ -190,4 +208,847 @@ public class MindMapTest {
     final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()));
     assertTrue(in.readObject() instanceof MindMap);
   }
+
+  @Test
+  public void testSerializableDeserializable_TopicsWithContent() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("test\n---\n# Solar\n## Mercury\n> topicLinkUID=`AAA`\n\n## Venus\n- NOTE\n<pre>hot</pre>\n## Earth\n### Moon\n> collapsed=`true`\n\n## Mars\n"));
+    map.getRoot().getLast().setCodeSnippet("java", "int a = 1;");
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ObjectOutputStream stream = new ObjectOutputStream(buffer);
+    stream.writeObject(map);
+    stream.close();
+
+    final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+    final Topic root = ((MindMap) in.readObject()).getRoot();
+    assertEquals("Solar", root.getText());
+    assertEquals(4, root.getChildren().size());
+    assertEquals("AAA", root.getFirst().getAttribute("topicLinkUID"));
+    assertEquals("hot", root.getChildren().get(1).getExtras().get(Extra.ExtraType.NOTE).getValue());
+    assertEquals("Moon", root.getChildren().get(2).getFirst().getText());
+    assertEquals("true", root.getChildren().get(2).getFirst().getAttribute("collapsed"));
+    assertEquals("int a = 1;", root.getLast().getCodeSnippet("java"));
+  }
+
+  @Test
+  public void testFindTopicForLink_IndexFollowsChanges() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("test\n---\n# Solar\n## Mercury\n> topicLinkUID=`AAA`\n\n## Venus\n## Earth\n### Moon\n> topicLinkUID=`BBB`\n\n## Mars\n"));
+    final Topic mercury = map.getRoot().getChildren().get(0);
+    final Topic venus = map.getRoot().getChildren().get(1);
+    final Topic earth = map.getRoot().getChildren().get(2);
+    final Topic moon = earth.getFirst();
+    final Topic mars = map.getRoot().getChildren().get(3);
+
+    assertSame(mercury, map.findTopicForLink(new ExtraTopic("AAA")));
+    assertSame(moon, map.findTopicForLink(new ExtraTopic("BBB")));
+    assertNull(map.findTopicForLink(new ExtraTopic("CCC")));
+
+    venus.setAttribute(ExtraTopic.TOPIC_UID_ATTR, "CCC");
+    assertSame(venus, map.findTopicForLink(new ExtraTopic("CCC")));
+
+    mercury.setAttribute(ExtraTopic.TOPIC_UID_ATTR, null);
+    assertNull(map.findTopicForLink(new ExtraTopic("AAA")));
+
+    moon.moveToNewParent(mars);
+    assertSame(moon, map.findTopicForLink(new ExtraTopic("BBB")));
+
+    final Topic cloned = map.cloneTopic(mars, true);
+    assertNotNull(cloned);
+    assertNull(cloned.getFirst().getAttribute(ExtraTopic.TOPIC_UID_ATTR));
+    assertSame(moon, map.findTopicForLink(new ExtraTopic("BBB")));
+
+    map.removeTopic(mars);
+    assertNull(map.findTopicForLink(new ExtraTopic("BBB")));
+
+    venus.delete();
+    assertNull(map.findTopicForLink(new ExtraTopic("CCC")));
+
+    final Topic detached = new Topic(map, moon, true);
+    assertNull(map.findTopicForLink(new ExtraTopic("BBB")));
+    detached.moveToNewParent(earth);
+    assertSame(detached, map.findTopicForLink(new ExtraTopic("BBB")));
+
+    final MindMap copy = new MindMap(map, null);
+    assertEquals("Moon", copy.findTopicForLink(new ExtraTopic("BBB")).getText());
+    assertNotSame(detached, copy.findTopicForLink(new ExtraTopic("BBB")));
+  }
+
+  @Test
+  public void testRemoveTopic_RemovesOnlyLinksToRemovedTopic() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("test\n---\n# Solar\n## Mercury\n> topicLinkUID=`AAA`\n\n## Venus\n- TOPIC\n<pre>AAA</pre>\n## Earth\n- TOPIC\n<pre>AAA</pre>\n### Moon\n> topicLinkUID=`BBB`\n\n## Mars\n- TOPIC\n<pre>BBB</pre>\n"));
+    final Topic mercury = map.getRoot().getChildren().get(0);
+    final Topic venus = map.getRoot().getChildren().get(1);
+    final Topic earth = map.getRoot().getChildren().get(2);
+    final Topic moon = earth.getFirst();
+    final Topic mars = map.getRoot().getChildren().get(3);
+
+    assertEquals("AAA", venus.getExtras().get(Extra.ExtraType.TOPIC).getValue());
+    assertEquals("BBB", mars.getExtras().get(Extra.ExtraType.TOPIC).getValue());
+
+    assertTrue(map.removeTopic(moon));
+    assertNull(mars.getExtras().get(Extra.ExtraType.TOPIC));
+    assertNotNull(venus.getExtras().get(Extra.ExtraType.TOPIC));
+    assertNotNull(earth.getExtras().get(Extra.ExtraType.TOPIC));
+
+    final Topic newMoon = new Topic(map, earth, "New moon");
+    newMoon.setAttribute(ExtraTopic.TOPIC_UID_ATTR, "BBB");
+    mars.setExtra(ExtraTopic.makeLinkTo(map, newMoon));
+    venus.removeExtra(Extra.ExtraType.TOPIC);
+    assertTrue(map.removeTopic(mercury));
+    assertNull(venus.getExtras().get(Extra.ExtraType.TOPIC));
+    assertNull(earth.getExtras().get(Extra.ExtraType.TOPIC));
+    assertNotNull(mars.getExtras().get(Extra.ExtraType.TOPIC));
+
+    final Topic cloned = map.cloneTopic(mars, false);
+    assertNotNull(cloned);
+    assertEquals("BBB", cloned.getExtras().get(Extra.ExtraType.TOPIC).getValue());
+    assertTrue(map.removeTopic(newMoon));
+    assertNull(mars.getExtras().get(Extra.ExtraType.TOPIC));
+    assertNull(cloned.getExtras().get(Extra.ExtraType.TOPIC));
+    assertFalse(map.getRoot().getChildren().contains(mercury));
+  }
+
+  @Test
+  public void testFileLinks_IndexFollowsChanges() throws Exception {
+    final File base = new File("/project");
+    final MindMap map = new MindMap(null, true);
+    final Topic readme = new Topic(map, map.getRoot(), "readme", new ExtraFile("docs/readme.txt"));
+    final Topic info = new Topic(map, map.getRoot(), "info", new ExtraFile("docs/sub/info.txt"));
+    final Topic other = new Topic(map, map.getRoot(), "other", new ExtraFile("docs2/other.txt"));
+    final Topic absolute = new Topic(map, map.getRoot(), "absolute", new ExtraFile("file:///abs/docs/x.txt"));
+
+    assertTrue(map.doesContainFileLink(base, new MMapURI("docs/readme.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("docs/sub/info.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("file:///abs/docs/x.txt")));
+    assertFalse(map.doesContainFileLink(base, new MMapURI("docs")));
+    assertTrue(map.doesContainFileLink(new File("/another"), new MMapURI("docs/readme.txt")));
+    assertFalse(map.doesContainFileLink(new File("/another"), new MMapURI("file:///project/docs/readme.txt")));
+    assertTrue(map.doesContainFileLink(new File("/another"), new MMapURI("file:///abs/docs/x.txt")));
+
+    assertTrue(map.replaceAllLinksToFile(base, new MMapURI("docs"), new MMapURI("manual")));
+    assertFalse(map.doesContainFileLink(base, new MMapURI("docs/readme.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("manual/readme.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("manual/sub/info.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("docs2/other.txt")));
+    assertEquals("manual/readme.txt", ((ExtraFile) readme.getExtras().get(Extra.ExtraType.FILE)).getValue().asString(false, false));
+
+    assertTrue(map.replaceAllLinksToFile(base, new MMapURI("manual/readme.txt"), new MMapURI("manual/index.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("manual/index.txt")));
+    assertFalse(map.doesContainFileLink(base, new MMapURI("manual/readme.txt")));
+
+    other.setExtra(new ExtraFile("manual/other.txt"));
+    assertFalse(map.doesContainFileLink(base, new MMapURI("docs2/other.txt")));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("manual/other.txt")));
+
+    final Topic added = new Topic(map, map.getRoot(), "added", new ExtraFile("manual/added.txt"));
+    assertTrue(map.doesContainFileLink(base, new MMapURI("manual/added.txt")));
+    assertFalse(map.deleteAllLinksToFile(base, new MMapURI("manua")));
+    assertTrue(map.deleteAllLinksToFile(base, new MMapURI("manual/sub")));
+    assertNull(info.getExtras().get(Extra.ExtraType.FILE));
+    assertNotNull(readme.getExtras().get(Extra.ExtraType.FILE));
+
+    map.removeTopic(added);
+    assertFalse(map.doesContainFileLink(base, new MMapURI("manual/added.txt")));
+
+    assertTrue(map.deleteAllLinksToFile(base, new MMapURI("manual")));
+    assertNull(readme.getExtras().get(Extra.ExtraType.FILE));
+    assertNull(other.getExtras().get(Extra.ExtraType.FILE));
+    assertNotNull(absolute.getExtras().get(Extra.ExtraType.FILE));
+    assertFalse(map.doesContainFileLink(base, new MMapURI("manual/index.txt")));
+  }
+
+  @Test
+  public void testWriteToStreamAndSaveToFile() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("test\n> attr=`Привет`\n---\n# Solar ```\n> topicLinkUID=`AAA`,img=`a``b`\n\n- NOTE\n<pre>Some &lt;note&gt;\nline</pre>\n## Mercury \\# 1\n```Java\nint a = 1;\n```\n"));
+    final String text = map.packToString();
+
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    map.write(buffer, Charset.forName("UTF-8"));
+    assertEquals(text, new String(buffer.toByteArray(), "UTF-8"));
+
+    final File folder = this.tempFolder.newFolder();
+    final File file = new File(folder, "test.mmd");
+    FileUtils.write(file, "old content", "UTF-8");
+
+    map.saveToFile(file, Charset.forName("UTF-8"));
+    assertEquals(text, FileUtils.readFileToString(file, "UTF-8"));
+    assertEquals(1, folder.listFiles().length);
+    assertEquals(text, new MindMap(null, new StringReader(FileUtils.readFileToString(file, "UTF-8"))).packToString());
+  }
+
+  private static Map<String, String> parseAttributes(final String line, final boolean regex) {
+    final Map<String, String> result = new HashMap<String, String>();
+    final boolean found = regex ? MindMap.fillMapByAttributesWithRegex(line, result, null) : MindMap.fillMapByAttributes(line, result);
+    result.put("<found>", Boolean.toString(found));
+    return result;
+  }
+
+  @Test
+  public void testFillMapByAttributes() {
+    final Map<String, String> map = new HashMap<String, String>();
+    assertTrue(MindMap.fillMapByAttributes("> fillColor=`#FF0000`,collapsed=`true`,code=```a``b```\n", map));
+    assertEquals(3, map.size());
+    assertEquals("#FF0000", map.get("fillColor"));
+    assertEquals("true", map.get("collapsed"));
+    assertEquals("a``b", map.get("code"));
+    assertFalse(MindMap.fillMapByAttributes("- NOTE", map));
+    assertFalse(MindMap.fillMapByAttributes(">", map));
+  }
+
+  @Test
+  public void testFillMapByAttributes_SameAsRegex() {
+    final String[] etalons = new String[]{"> a=`1`", " \t>\ta = ` 1 ` , b=``2`` ", "> a=b=`1`", "> ,,a=`1`", "> a=```", "> a=`1`\r\n", "> a=`1`\n\n", ">\na=`1`",
+      "> a=`1`xyz,b=`2`", "> =`1`", "> a b=`1`", "> a=1`2`", "> a=`1`\u0085", "> \n", "x> a=`1`", "> a=`1`,"};
+    for (final String s : etalons) {
+      assertEquals(s, parseAttributes(s, true), parseAttributes(s, false));
+    }
+
+    final String alphabet = "> =`,ab\n\t";
+    final Random rnd = new Random(4321L);
+    for (int i = 0; i < 50000; i++) {
+      final StringBuilder buffer = new StringBuilder("> ");
+      final int len = rnd.nextInt(16);
+      for (int j = 0; j < len; j++) {
+        buffer.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+      final String text = buffer.toString();
+      assertEquals(text, parseAttributes(text, true), parseAttributes(text, false));
+    }
+  }
+
+  private static void collectRecursively(final Topic topic, final List<Topic> result) {
+    result.add(topic);
+    for (final Topic c : topic.getChildren()) {
+      collectRecursively(c, result);
+    }
+  }
+
+  private static MindMap makeRandomMap(final Random rnd, final int topics) {
+    final MindMap map = new MindMap(null, true);
+    final List<Topic> all = new ArrayList<Topic>();
+    all.add(map.getRoot());
+    for (int i = 0; i < topics; i++) {
+      all.add(new Topic(map, all.get(rnd.nextInt(all.size())), "topic" + i));
+    }
+    return map;
+  }
+
+  @Test
+  public void testIteratorsAndFindInPreorder() {
+    final Random rnd = new Random(777L);
+    for (int attempt = 0; attempt < 20; attempt++) {
+      final MindMap map = makeRandomMap(rnd, 200);
+      final List<Topic> etalon = new ArrayList<Topic>();
+      collectRecursively(map.getRoot(), etalon);
+
+      assertEquals(etalon, map.makePlainList());
+      final List<Topic> subtree = new ArrayList<Topic>();
+      for (final Topic t : etalon.get(1)) {
+        subtree.add(t);
+      }
+      final List<Topic> subtreeEtalon = new ArrayList<Topic>();
+      collectRecursively(etalon.get(1), subtreeEtalon);
+      assertEquals(subtreeEtalon.subList(1, subtreeEtalon.size()), subtree);
+
+      final Pattern pattern = Pattern.compile("topic\\d*7$");
+      for (int i = 0; i < etalon.size(); i++) {
+        Topic expectedNext = null;
+        for (int j = i + 1; j < etalon.size() && expectedNext == null; j++) {
+          expectedNext = pattern.matcher(etalon.get(j).getText()).find() ? etalon.get(j) : null;
+        }
+        Topic expectedPrev = null;
+        for (int j = i - 1; j >= 0 && expectedPrev == null; j--) {
+          expectedPrev = pattern.matcher(etalon.get(j).getText()).find() ? etalon.get(j) : null;
+        }
+        assertSame(expectedNext, map.findNext(null, etalon.get(i), pattern, true, null));
+        assertSame(expectedPrev, map.findPrev(null, etalon.get(i), pattern, true, null));
+      }
+      Topic lastMatched = null;
+      for (final Topic t : etalon) {
+        if (pattern.matcher(t.getText()).find()) {
+          lastMatched = t;
+        }
+      }
+      assertSame(lastMatched, map.findPrev(null, null, pattern, true, null));
+    }
+  }
+
+  @Test
+  public void testTraverse_SkipChildrenAndStop() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("Header\n---\n# Root\n## A\n### A1\n### A2\n## B\n### B1\n## C\n### C1\n"));
+    final List<String> visited = new ArrayList<String>();
+    final Topic stopped = map.traverse(new TopicVisitor() {
+      @Override
+      public Decision visit(final Topic topic) {
+        visited.add(topic.getText());
+        if (topic.getText().equals("A")) {
+          return Decision.SKIP_CHILDREN;
+        }
+        return topic.getText().equals("B1") ? Decision.STOP : Decision.CONTINUE;
+      }
+    });
+    assertEquals("B1", stopped.getText());
+    assertEquals(Arrays.asList("Root", "A", "B", "B1"), visited);
+
+    visited.clear();
+    assertNull(map.getRoot().getLast().traverse(new TopicVisitor() {
+      @Override
+      public Decision visit(final Topic topic) {
+        visited.add(topic.getText());
+        return Decision.CONTINUE;
+      }
+    }));
+    assertEquals(Arrays.asList("C", "C1"), visited);
+    assertNull(new MindMap(null, false).traverse(new TopicVisitor() {
+      @Override
+      public Decision visit(final Topic topic) {
+        fail("Must not be called");
+        return Decision.STOP;
+      }
+    }));
+  }
+
+  @Test
+  public void testIteratorRemoveAndRemoveNonExistingTopics() throws Exception {
+    final MindMap map = new MindMap(null, new StringReader("Header\n---\n# Root\n## A\n### A1\n### A2\n## B\n### B1\n## C\n"));
+    final List<Topic> all = map.makePlainList();
+    final Iterator<Topic> iterator = map.iterator();
+    while (iterator.hasNext()) {
+      final String text = iterator.next().getText();
+      if (text.equals("A") || text.equals("B1")) {
+        iterator.remove();
+      }
+    }
+    final List<String> rest = new ArrayList<String>();
+    for (final Topic t : map) {
+      rest.add(t.getText());
+    }
+    assertEquals(Arrays.asList("Root", "B", "C"), rest);
+
+    final List<Topic> existing = map.removeNonExistingTopics(all);
+    assertEquals(3, existing.size());
+    assertSame(map.getRoot(), existing.get(0));
+    assertEquals("B", existing.get(1).getText());
+    assertEquals("C", existing.get(2).getText());
+    assertTrue(map.removeNonExistingTopics(new ArrayList<Topic>()).isEmpty());
+  }
+
+  @Test
+  public void testAncestryIndexFollowsChanges() {
+    final Random rnd = new Random(999L);
+    final MindMap map = makeRandomMap(rnd, 150);
+    final List<Topic> all = map.makePlainList();
+    final Topic detached = all.get(1 + rnd.nextInt(all.size() - 1));
+    assertTrue(map.containsTopic(detached));
+    detached.delete();
+    all.remove(detached);
+
+    int generation = map.getStructureGeneration();
+    for (int i = 0; i < 300; i++) {
+      final Topic topic = all.get(1 + rnd.nextInt(all.size() - 1));
+      final Topic other = all.get(rnd.nextInt(all.size()));
+      switch (rnd.nextInt(4)) {
+        case 0: {
+          if (!other.hasAncestor(topic) && topic.moveToNewParent(other)) {
+            assertTrue(map.getStructureGeneration() != generation);
+          }
+        }
+        break;
+        case 1: {
+          topic.setAttribute("collapsed", rnd.nextBoolean() ? "true" : null);
+        }
+        break;
+        case 2: {
+          if (topic.makeFirst()) {
+            assertTrue(map.getStructureGeneration() != generation);
+          }
+        }
+        break;
+        default: {
+          assertFalse(map.containsTopic(detached));
+        }
+        break;
+      }
+      generation = map.getStructureGeneration();
+
+      for (int j = 0; j < 20; j++) {
+        final Topic a = all.get(rnd.nextInt(all.size()));
+        final Topic b = all.get(rnd.nextInt(all.size()));
+        assertEquals(map.getRoot().containTopic(a), map.containsTopic(a));
+        assertEquals(b.hasAncestor(a), map.isAncestor(a, b));
+        assertEquals(b.findAttributeInAncestors("collapsed"), map.findAttributeInAncestors(b, "collapsed"));
+      }
+    }
+    assertFalse(map.containsTopic(detached));
+    assertFalse(map.containsTopic(new Topic(new MindMap(null, true), null, "alien")));
+  }
+
+  @Test
+  public void testReadLockIsSharedButBlocksWriters() throws Exception {
+    final MindMap map = makeRandomMap(new Random(123L), 100);
+    final AtomicReference<String> packed = new AtomicReference<String>();
+
+    boolean locked = true;
+    map.lockRead();
+    try {
+      final Thread reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          packed.set(map.packToString());
+        }
+      });
+      reader.start();
+      reader.join(10000L);
+      assertFalse("Reader must not be blocked by other reader", reader.isAlive());
+      assertNotNull(packed.get());
+
+      final Thread writer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          map.getRoot().setText("changed");
+        }
+      });
+      writer.start();
+      writer.join(200L);
+      assertTrue("Writer must wait for readers", writer.isAlive());
+      assertEquals("", map.getRoot().getText());
+
+      locked = false;
+      map.unlockRead();
+      writer.join(10000L);
+      assertFalse(writer.isAlive());
+      assertEquals("changed", map.getRoot().getText());
+    }
+    finally {
+      if (locked) {
+        map.unlockRead();
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReadersAndWriter() throws Exception {
+    final Random rnd = new Random(4567L);
+    final MindMap map = makeRandomMap(rnd, 300);
+    final List<Topic> all = map.makePlainList();
+
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final int readers = 4;
+    final CountDownLatch started = new CountDownLatch(readers + 1);
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int r = 0; r < readers; r++) {
+      final int readerIndex = r;
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            started.countDown();
+            started.await();
+            final Random random = new Random(readerIndex);
+            while (!stop.get()) {
+              final String text;
+              final int topics;
+              map.lockRead();
+              try {
+                text = map.packToString();
+                topics = map.makePlainList().size();
+                final Topic topic = all.get(random.nextInt(all.size()));
+                if (map.containsTopic(topic)) {
+                  assertEquals(topic.findAttributeInAncestors("collapsed"), map.findAttributeInAncestors(topic, "collapsed"));
+                  assertTrue(map.isAncestor(map.getRoot(), topic) || topic == map.getRoot());
+                }
+              }
+              finally {
+                map.unlockRead();
+              }
+              assertEquals(topics, new MindMap(null, new StringReader(text)).makePlainList().size());
+              map.findNext(null, null, Pattern.compile("topic1"), true, null);
+            }
+          }
+          catch (Throwable ex) {
+            error.compareAndSet(null, ex);
+          }
+        }
+      }));
+    }
+
+    threads.add(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          started.countDown();
+          started.await();
+          for (int i = 0; i < 3000 && error.get() == null; i++) {
+            final Topic topic = all.get(1 + rnd.nextInt(all.size() - 1));
+            final Topic other = all.get(rnd.nextInt(all.size()));
+            switch (rnd.nextInt(4)) {
+              case 0: {
+                map.lock();
+                try {
+                  if (!other.hasAncestor(topic) && other.isAttachedToMap()) {
+                    topic.moveToNewParent(other);
+                  }
+                }
+                finally {
+                  map.unlock();
+                }
+              }
+              break;
+              case 1: {
+                topic.setAttribute("collapsed", rnd.nextBoolean() ? "true" : null);
+              }
+              break;
+              case 2: {
+                topic.makeFirst();
+              }
+              break;
+              default: {
+                topic.setText("topic" + rnd.nextInt(1000));
+              }
+              break;
+            }
+          }
+        }
+        catch (Throwable ex) {
+          error.compareAndSet(null, ex);
+        }
+        finally {
+          stop.set(true);
+        }
+      }
+    }));
+
+    for (final Thread t : threads) {
+      t.start();
+    }
+    for (final Thread t : threads) {
+      t.join(60000L);
+      assertFalse(t.isAlive());
+    }
+
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+    assertEquals(all.size(), map.makePlainList().size());
+  }
+
+  @Test
+  public void testMakeCopy() throws Exception {
+    final MindMap map = makeRandomMap(new Random(5432L), 50);
+    map.getRoot().setText("root");
+    map.getRoot().getFirst().setAttribute("collapsed", "true");
+    map.getRoot().getLast().setAttribute("collapsed", "true");
+    map.getRoot().getLast().setAttribute("other", "value");
+    final MindMap snapshot = map.snapshot();
+
+    final MindMap expanded = snapshot.makeCopy("collapsed");
+    assertFalse(expanded.isReadOnly());
+    assertNotSame(snapshot, expanded);
+    assertNotSame(expanded, map.makeCopy("collapsed"));
+    assertSame(snapshot, map.snapshot());
+    assertEquals(map.makePlainList().size(), expanded.makePlainList().size());
+    for (final Topic t : expanded) {
+      assertNull(t.getAttribute("collapsed"));
+      assertNull(t.getPayload());
+    }
+    assertEquals("value", expanded.getRoot().getLast().getAttribute("other"));
+    assertEquals("true", map.getRoot().getFirst().getAttribute("collapsed"));
+    assertEquals("true", snapshot.getRoot().getFirst().getAttribute("collapsed"));
+
+    expanded.getRoot().setPayload("payload");
+    assertNull(snapshot.getRoot().getPayload());
+    assertEquals(map.packToString(), snapshot.makeCopy(null).packToString());
+  }
+
+  @Test
+  public void testSnapshot_NotDroppedByChangesWithoutEffect() throws Exception {
+    final MindMap map = makeRandomMap(new Random(1234L), 30);
+    map.getRoot().setText("root");
+    map.getRoot().setAttribute("some", "value");
+    map.setAttribute("mapattr", "value");
+    final MindMap snapshot = map.snapshot();
+
+    map.getRoot().setText("root");
+    map.getRoot().setAttribute("some", "value");
+    map.getRoot().setAttribute("absent", null);
+    map.getRoot().setCodeSnippet("java", null);
+    assertFalse(map.getRoot().removeExtra(Extra.ExtraType.NOTE));
+    map.setAttribute("mapattr", "value");
+    map.resetPayload();
+    assertSame(snapshot, map.snapshot());
+
+    map.setAttribute("mapattr", "other");
+    assertNotSame(snapshot, map.snapshot());
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    final MindMap map = makeRandomMap(new Random(9876L), 50);
+    map.getRoot().setText("root");
+    map.getRoot().getFirst().setAttribute("collapsed", "true");
+    map.getRoot().getLast().setExtra(new ExtraNote("note"));
+    final String text = map.packToString();
+
+    final MindMap snapshot = map.snapshot();
+    assertTrue(snapshot.isReadOnly());
+    assertFalse(map.isReadOnly());
+    assertSame(snapshot, snapshot.snapshot());
+    assertSame(snapshot, map.snapshot());
+    assertEquals(text, snapshot.packToString());
+    assertNotSame(map.getRoot(), snapshot.getRoot());
+    assertSame(snapshot, snapshot.getRoot().getFirst().getMap());
+
+    map.getRoot().getFirst().setText("changed");
+    new Topic(map, map.getRoot(), "added");
+    assertEquals(text, snapshot.packToString());
+
+    final MindMap nextSnapshot = map.snapshot();
+    assertNotSame(snapshot, nextSnapshot);
+    assertEquals(map.packToString(), nextSnapshot.packToString());
+    assertSame(nextSnapshot, map.snapshot());
+
+    try {
+      snapshot.getRoot().setPayload("payload");
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    try {
+      snapshot.resetPayload();
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    try {
+      snapshot.getRoot().setText("some");
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    try {
+      snapshot.getRoot().getFirst().delete();
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    try {
+      new Topic(snapshot, snapshot.getRoot(), "new");
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    try {
+      snapshot.setAttribute("some", "value");
+      fail("Must throw ISE");
+    }
+    catch (IllegalStateException ex) {
+    }
+    assertEquals(text, snapshot.packToString());
+
+    final MindMap copy = new MindMap(snapshot, null);
+    assertFalse(copy.isReadOnly());
+    copy.getRoot().setText("copy");
+    assertEquals("copy", copy.getRoot().getText());
+  }
+
+  @Test
+  public void testTypedModelEventsAndTreeModelEvents() {
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    final Topic first = new Topic(map, root, "first");
+    final Topic second = new Topic(map, root, "second");
+
+    final List<String> events = new ArrayList<String>();
+    final List<String> treeEvents = new ArrayList<String>();
+    map.addMindMapModelListener(new MindMapModelListener() {
+      @Override
+      public void onMindMapModelEvent(final MindMapModelEvent event) {
+        assertSame(map, event.getMindMap());
+        events.add(event.getType() + ":" + (event.getTopic() == null ? null : event.getTopic().getText()) + ":" + event.getIndex()
+            + (event.getName() == null ? "" : ":" + event.getName()) + (event.getExtraType() == null ? "" : ":" + event.getExtraType()));
+      }
+    });
+    map.addTreeModelListener(new TreeModelListener() {
+      private String describe(final TreeModelEvent e) {
+        return ((Topic) e.getTreePath().getLastPathComponent()).getText() + (e.getChildIndices() == null || e.getChildIndices().length == 0 ? "" : ":" + Arrays.toString(e.getChildIndices()));
+      }
+
+      @Override
+      public void treeNodesChanged(final TreeModelEvent e) {
+        treeEvents.add("changed:" + describe(e));
+      }
+
+      @Override
+      public void treeNodesInserted(final TreeModelEvent e) {
+        treeEvents.add("inserted:" + describe(e));
+      }
+
+      @Override
+      public void treeNodesRemoved(final TreeModelEvent e) {
+        treeEvents.add("removed:" + describe(e));
+      }
+
+      @Override
+      public void treeStructureChanged(final TreeModelEvent e) {
+        treeEvents.add("structure:" + describe(e));
+      }
+    });
+
+    root.setText("root");
+    root.setText("root");
+    second.setText("2");
+    first.setAttribute("collapsed", "true");
+    first.setAttribute("collapsed", "true");
+    second.setExtra(new ExtraNote("note"));
+    second.removeExtra(Extra.ExtraType.NOTE);
+    second.setCodeSnippet("java", "code");
+    final Topic third = root.makeChild("third", null);
+    third.makeFirst();
+    first.moveToNewParent(second);
+    first.delete();
+    map.setRoot(root, true);
+
+    assertEquals(Arrays.asList(
+        "TOPIC_TEXT_CHANGED:root:-1",
+        "TOPIC_TEXT_CHANGED:2:1",
+        "TOPIC_ATTRIBUTE_CHANGED:first:0:collapsed",
+        "TOPIC_EXTRA_CHANGED:2:1:NOTE",
+        "TOPIC_EXTRA_CHANGED:2:1:NOTE",
+        "TOPIC_CODE_SNIPPET_CHANGED:2:1:java",
+        "TOPIC_INSERTED:third:2",
+        "TOPIC_MOVED:third:0",
+        "TOPIC_REMOVED:first:1",
+        "TOPIC_INSERTED:first:0",
+        "TOPIC_REMOVED:first:0",
+        "STRUCTURE_CHANGED:root:-1"
+    ), events);
+
+    assertEquals(Arrays.asList(
+        "changed:root",
+        "changed:root:[1]",
+        "changed:root:[0]",
+        "changed:root:[1]",
+        "changed:root:[1]",
+        "changed:root:[1]",
+        "inserted:root:[2]",
+        "structure:root",
+        "removed:root:[1]",
+        "inserted:2:[0]",
+        "removed:2:[0]",
+        "structure:root"
+    ), treeEvents);
+  }
+
+  @Test
+  public void testRemoveAllChildrenSendsEventsFromLastChild() {
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    for (int i = 0; i < 3; i++) {
+      new Topic(map, root, "t" + i);
+    }
+    final List<String> events = new ArrayList<String>();
+    map.addMindMapModelListener(new MindMapModelListener() {
+      @Override
+      public void onMindMapModelEvent(final MindMapModelEvent event) {
+        assertSame(root, event.getParent());
+        events.add(event.getType() + ":" + event.getTopic().getText() + ":" + event.getIndex());
+      }
+    });
+    root.removeAllChildren();
+    assertEquals(Arrays.asList("TOPIC_REMOVED:t2:2", "TOPIC_REMOVED:t1:1", "TOPIC_REMOVED:t0:0"), events);
+  }
+
+  @Test
+  public void testBatchCoalescesEvents() {
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    final Topic first = new Topic(map, root, "first");
+
+    final List<MindMapModelEvent> events = new ArrayList<MindMapModelEvent>();
+    final List<TreeModelEvent> treeEvents = new ArrayList<TreeModelEvent>();
+    map.addMindMapModelListener(new MindMapModelListener() {
+      @Override
+      public void onMindMapModelEvent(final MindMapModelEvent event) {
+        events.add(event);
+      }
+    });
+    map.addTreeModelListener(new TreeModelListener() {
+      @Override
+      public void treeNodesChanged(final TreeModelEvent e) {
+        treeEvents.add(e);
+      }
+
+      @Override
+      public void treeNodesInserted(final TreeModelEvent e) {
+        treeEvents.add(e);
+      }
+
+      @Override
+      public void treeNodesRemoved(final TreeModelEvent e) {
+        treeEvents.add(e);
+      }
+
+      @Override
+      public void treeStructureChanged(final TreeModelEvent e) {
+        treeEvents.add(e);
+      }
+    });
+
+    assertFalse(map.isInBatch());
+    map.beginBatch();
+    try {
+      assertTrue(map.isInBatch());
+      for (int i = 0; i < 10; i++) {
+        first.setText("text" + i);
+        first.setAttribute("attr", Integer.toString(i));
+      }
+      map.beginBatch();
+      try {
+        root.makeChild("second", null);
+      }
+      finally {
+        map.endBatch();
+      }
+      assertTrue(events.isEmpty());
+      assertTrue(treeEvents.isEmpty());
+      map.removeTopic(first);
+    }
+    finally {
+      map.endBatch();
+    }
+    assertFalse(map.isInBatch());
+
+    assertEquals(1, events.size());
+    final MindMapModelEvent batch = events.get(0);
+    assertEquals(MindMapModelEvent.Type.BATCH, batch.getType());
+    assertSame(root, batch.getTopic());
+    final List<MindMapModelEvent.Type> types = new ArrayList<MindMapModelEvent.Type>();
+    for (final MindMapModelEvent e : batch.getBatchEvents()) {
+      types.add(e.getType());
+    }
+    assertEquals(Arrays.asList(
+        MindMapModelEvent.Type.TOPIC_TEXT_CHANGED,
+        MindMapModelEvent.Type.TOPIC_ATTRIBUTE_CHANGED,
+        MindMapModelEvent.Type.TOPIC_INSERTED,
+        MindMapModelEvent.Type.TOPIC_REMOVED), types);
+
+    assertEquals(1, treeEvents.size());
+    assertSame(root, treeEvents.get(0).getTreePath().getLastPathComponent());
+
+    events.clear();
+    map.beginBatch();
+    map.endBatch();
+    assertTrue(events.isEmpty());
+
+    root.setText("after");
+    assertEquals(1, events.size());
+    assertEquals(MindMapModelEvent.Type.TOPIC_TEXT_CHANGED, events.get(0).getType());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEndBatchWithoutBegin() {
+    new MindMap(null, true).endBatch();
+  }
 }
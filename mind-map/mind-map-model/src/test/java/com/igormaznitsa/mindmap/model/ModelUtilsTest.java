@@ -18,6 +18,7 @@ package com.igormaznitsa.mindmap.model;
 import java.io.File;
 import java.net.URI;
 import java.util.Properties;
+import java.util.Random;
 import org.apache.commons.lang.SystemUtils;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -72,6 +73,26 @@ public class ModelUtilsTest {
     assertEquals("", ModelUtils.unescapeMarkdownStr(""));
   }
 
+  @Test
+  public void testUnescapeMarkdownStr_SameAsRegex() {
+    final String[] etalons = new String[]{"\\<br>", "\\\\<br>", "< BR / >", "<br//>", "<\tbR\n>", "\\,\\+\\/", "\\", "a\\", "<b r>", "<br", "\\<\\<br/>"};
+    for (final String s : etalons) {
+      assertEquals(s, ModelUtils.unescapeMarkdownStrByRegex(s), ModelUtils.unescapeMarkdownStr(s));
+    }
+
+    final String alphabet = "\\<>/ brBR\n\t`*,.+a\u0085";
+    final Random rnd = new Random(1234L);
+    for (int i = 0; i < 50000; i++) {
+      final StringBuilder buffer = new StringBuilder();
+      final int len = rnd.nextInt(16);
+      for (int j = 0; j < len; j++) {
+        buffer.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+      final String text = buffer.toString();
+      assertEquals(text, ModelUtils.unescapeMarkdownStrByRegex(text), ModelUtils.unescapeMarkdownStr(text));
+    }
+  }
+
   @Test
   public void testEscapeMarkdownStr() {
     assertEquals("Hello<br/>World", ModelUtils.escapeMarkdownStr("Hello\nWorld"));
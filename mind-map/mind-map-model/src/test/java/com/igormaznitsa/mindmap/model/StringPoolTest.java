@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model;
+
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+  @Test
+  public void testIntern() {
+    final StringPool pool = new StringPool();
+    final String first = pool.intern("collapsed=true", 0, 9);
+    assertEquals("collapsed", first);
+    assertSame(first, pool.intern(new String("collapsed")));
+    assertSame(first, pool.intern("#collapsed#", 1, 10));
+    assertEquals(1, pool.size());
+    assertEquals(3L, pool.getRequests());
+    assertEquals(2L, pool.getHits());
+
+    for (int i = 0; i < 1000; i++) {
+      pool.intern("value" + i);
+    }
+    assertEquals(1001, pool.size());
+    assertSame(first, pool.intern("collapsed"));
+    assertEquals("value567", pool.intern("xvalue567", 1, 9));
+    assertEquals(1001, pool.size());
+  }
+
+  @Test
+  public void testLongStringsAreNotPooled() {
+    final StringPool pool = new StringPool();
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i <= StringPool.MAX_POOLED_LENGTH; i++) {
+      buffer.append('a');
+    }
+    final String longString = buffer.toString();
+    assertSame(longString, pool.intern(longString));
+    assertNotSame(longString, pool.intern(new String(longString)));
+    assertEquals(0, pool.size());
+    assertEquals(0L, pool.getRequests());
+  }
+
+  @Test
+  public void testMindMapSharesAttributes() throws Exception {
+    final StringPool pool = new StringPool();
+    final MindMap map = new MindMap(null, new StringReader("Header\n> __version__=`1.1`\n---\n# Root\n> fillColor=`#FFFFFF`,collapsed=`true`\n## Child1\n> fillColor=`#FFFFFF`,collapsed=`true`\n## Child2\n> collapsed=`true`\n```Java\nint a;\n```\n"), pool);
+    final Topic child1 = map.getRoot().getChildren().get(0);
+    final Topic child2 = map.getRoot().getChildren().get(1);
+    assertSame(map.getRoot().getAttribute("fillColor"), child1.getAttribute("fillColor"));
+    assertSame(child1.getAttribute("collapsed"), child2.getAttribute("collapsed"));
+    assertSame(child1.getAttributes().keySet().iterator().next(), child2.getAttributes().keySet().iterator().next());
+    assertEquals("int a;\n", child2.getCodeSnippet("Java"));
+    assertEquals(7, pool.size());
+    assertEquals(13L, pool.getRequests());
+    assertEquals(6L, pool.getHits());
+  }
+}
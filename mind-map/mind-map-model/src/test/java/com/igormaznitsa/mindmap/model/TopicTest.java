@@ -18,6 +18,12 @@ package com.igormaznitsa.mindmap.model;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -325,5 +331,166 @@ public class TopicTest {
     assertEquals("`Root\ntopic`",parsed.getRoot().getText());
     assertEquals("Hello world \n <br>```Some```",((ExtraNote)parsed.getRoot().getExtras().get(Extra.ExtraType.NOTE)).getValue());
   }
-  
+
+  private long parseCodeSnippetAndGetTime(final String snippet) throws Exception {
+    final MindMap mm = new MindMap(null, true);
+    final long start = System.nanoTime();
+    final Topic topic = Topic.parse(mm, makeLexer("# Root\n```Java\n" + snippet + "```\n## Child\n"));
+    final long time = System.nanoTime() - start;
+    assertEquals(snippet, topic.getCodeSnippet("Java"));
+    assertEquals("Child", topic.getFirst().getText());
+    final MindMap streamed = new MindMap(null, new StringReader("test\n---\n# Root\n```Java\n" + snippet + "```\n"));
+    assertEquals(snippet, streamed.getRoot().getCodeSnippet("Java"));
+    return time;
+  }
+
+  @Test(timeout = 30000L)
+  public void testParse_LongCodeSnippetInLinearTime() throws Exception {
+    final StringBuilder oneMb = new StringBuilder();
+    int index = 0;
+    while (oneMb.length() < 1024 * 1024) {
+      oneMb.append("System.out.println(\"line ").append(index++).append("\");\n");
+    }
+    final StringBuilder fiveMb = new StringBuilder(oneMb.length() * 5);
+    for (int i = 0; i < 5; i++) {
+      fiveMb.append(oneMb);
+    }
+
+    parseCodeSnippetAndGetTime(oneMb.toString());
+    final long timeOne = parseCodeSnippetAndGetTime(oneMb.toString());
+    final long timeFive = parseCodeSnippetAndGetTime(fiveMb.toString());
+    assertTrue("Parse time must grow linearly [" + timeOne + ',' + timeFive + ']', timeFive < timeOne * 5L * 4L + 500000000L);
+  }
+
+  @Test
+  public void testLeafTopicSharesEmptyViews() {
+    final MindMap mm = new MindMap(null, true);
+    final Topic leaf = new Topic(mm, mm.getRoot(), "leaf");
+    assertSame(Collections.emptyMap(), leaf.getAttributes());
+    assertSame(Collections.emptyMap(), leaf.getExtras());
+    assertSame(Collections.emptyMap(), leaf.getCodeSnippets());
+    assertEquals(0, leaf.extrasToArray().length);
+    assertNull(leaf.getAttribute("some"));
+    assertNull(leaf.getCodeSnippet("Java"));
+    assertFalse(leaf.setAttribute("some", null));
+    assertFalse(leaf.setCodeSnippet("Java", null));
+    assertFalse(leaf.removeExtra(Extra.ExtraType.NOTE));
+    leaf.removeExtras();
+    assertTrue(leaf.getChildren().isEmpty());
+
+    assertTrue(leaf.setAttribute("some", "value"));
+    assertEquals("value", leaf.getAttributes().get("some"));
+  }
+
+  @Test
+  public void testChildrenListFollowsChanges() {
+    final MindMap mm = new MindMap(null, true);
+    final Topic root = mm.getRoot();
+    final List<Topic> children = root.getChildren();
+    final Topic[] topics = new Topic[100];
+    for (int i = 0; i < topics.length; i++) {
+      topics[i] = new Topic(mm, root, "topic" + i);
+    }
+    assertEquals(100, children.size());
+    assertSame(topics[99], root.getLast());
+
+    topics[50].makeFirst();
+    topics[0].makeLast();
+    topics[10].moveAfter(topics[20]);
+    topics[30].moveBefore(topics[1]);
+    final List<Topic> expected = new ArrayList<Topic>(Arrays.asList(topics));
+    expected.remove(topics[50]);
+    expected.add(0, topics[50]);
+    expected.remove(topics[0]);
+    expected.add(topics[0]);
+    expected.remove(topics[10]);
+    expected.add(expected.indexOf(topics[20]) + 1, topics[10]);
+    expected.remove(topics[30]);
+    expected.add(expected.indexOf(topics[1]), topics[30]);
+    assertEquals(expected, children);
+    assertEquals(expected.indexOf(topics[10]), children.indexOf(topics[10]));
+
+    final Iterator<Topic> iterator = root.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getText().endsWith("5")) {
+        iterator.remove();
+      }
+    }
+    assertEquals(90, children.size());
+    assertNull(topics[5].nextSibling());
+
+    root.removeAllChildren();
+    assertTrue(children.isEmpty());
+    assertNull(root.getFirst());
+    assertFalse(root.hasChildren());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testChildrenListIsReadOnly() {
+    final MindMap mm = new MindMap(null, true);
+    new Topic(mm, mm.getRoot(), "child");
+    mm.getRoot().getChildren().remove(0);
+  }
+
+  private static void assertStructureIndexes(final Topic topic, final int expectedLevel) {
+    assertEquals(expectedLevel, topic.getTopicLevel());
+    assertEquals(expectedLevel + 1, topic.getPath().length);
+    final List<Topic> children = topic.getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      final Topic child = children.get(i);
+      assertSame(topic, child.getParent());
+      assertEquals(i, child.getPositionPath()[expectedLevel + 1]);
+      assertSame(i == 0 ? null : children.get(i - 1), child.prevSibling());
+      assertSame(i == children.size() - 1 ? null : children.get(i + 1), child.nextSibling());
+      assertStructureIndexes(child, expectedLevel + 1);
+    }
+  }
+
+  @Test
+  public void testLevelAndPositionFollowStructureChanges() {
+    final Random rnd = new Random(12345L);
+    final MindMap mm = new MindMap(null, true);
+    final List<Topic> all = new ArrayList<Topic>();
+    all.add(mm.getRoot());
+    for (int i = 0; i < 300; i++) {
+      all.add(new Topic(mm, all.get(rnd.nextInt(all.size())), "topic" + i));
+    }
+
+    for (int i = 0; i < 2000; i++) {
+      final Topic topic = all.get(1 + rnd.nextInt(all.size() - 1));
+      final Topic other = all.get(rnd.nextInt(all.size()));
+      switch (rnd.nextInt(7)) {
+        case 0:
+          topic.makeFirst();
+          break;
+        case 1:
+          topic.makeLast();
+          break;
+        case 2:
+          topic.moveBefore(other);
+          break;
+        case 3:
+          topic.moveAfter(other);
+          break;
+        case 4:
+          if (!other.hasAncestor(topic)) {
+            topic.moveToNewParent(other);
+          }
+          break;
+        case 5:
+          if (topic.getParent() != null && topic.getChildren().isEmpty() && all.size() > 50) {
+            mm.removeTopic(topic);
+            all.remove(topic);
+          }
+          break;
+        default:
+          all.add(topic.makeChild("new" + i, topic.getFirst()));
+          break;
+      }
+    }
+    assertStructureIndexes(mm.getRoot(), 0);
+
+    final Topic copy = new Topic(new MindMap(null, false), mm.getRoot(), true);
+    assertStructureIndexes(copy, 0);
+  }
 }
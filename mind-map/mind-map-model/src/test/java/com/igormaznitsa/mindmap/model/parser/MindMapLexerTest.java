@@ -20,6 +20,7 @@ import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.apache.commons.io.IOUtils;
 import com.igormaznitsa.mindmap.model.parser.MindMapLexer.TokenType;
@@ -548,5 +549,44 @@ public class MindMapLexerTest {
     assertEquals(etalon,accum2.toString());
     assertEquals(etalon,accum3.toString());
   }
-  
+
+  @Test
+  public void testTokenAccessorsWithoutCopy() {
+    final MindMapLexer lexer = new MindMapLexer();
+    final String testString = "Header\n---\n## Hello\n-  NOTE \n```Java\nint a;\n```\n";
+    lexer.start(testString, 0, testString.length(), MindMapLexer.TokenType.HEAD_LINE);
+    final CharSequence view = lexer.getTokenView();
+
+    lexer.advance();
+    assertEquals(TokenType.HEAD_LINE, lexer.getTokenType());
+    assertEquals(7, lexer.getTokenLength());
+    assertEquals("Header\n", view.toString());
+    assertTrue(lexer.isTokenStartsWith("Head"));
+    assertFalse(lexer.isTokenStartsWith("Header\n\n"));
+
+    lexer.advance();
+    lexer.advance();
+    assertEquals(TokenType.TOPIC_LEVEL, lexer.getTokenType());
+    assertEquals(2, lexer.countTokenStartChars('#'));
+    assertEquals('#', lexer.getTokenChar(0));
+
+    lexer.advance();
+    assertEquals(TokenType.TOPIC_TITLE, lexer.getTokenType());
+    assertEquals("Hello\n", view.toString());
+    assertEquals(6, view.length());
+    assertEquals('H', view.charAt(0));
+    assertEquals("ell", view.subSequence(1, 4).toString());
+
+    lexer.advance();
+    assertEquals(TokenType.EXTRA_TYPE, lexer.getTokenType());
+    assertEquals("-  NOTE \n", view.toString());
+
+    lexer.advance();
+    assertEquals(TokenType.CODE_SNIPPET_START, lexer.getTokenType());
+    lexer.advance();
+    assertEquals(TokenType.CODE_SNIPPET_BODY, lexer.getTokenType());
+    final StringBuilder buffer = new StringBuilder("body:");
+    assertSame(buffer, lexer.appendTokenText(buffer, 0, lexer.getTokenLength()));
+    assertEquals("body:int a;\n", buffer.toString());
+  }
 }
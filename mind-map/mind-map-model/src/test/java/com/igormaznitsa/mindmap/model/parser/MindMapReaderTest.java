@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.model.parser;
+
+import com.igormaznitsa.mindmap.model.Extra;
+import com.igormaznitsa.mindmap.model.MindMap;
+import com.igormaznitsa.mindmap.model.Topic;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MindMapReaderTest {
+
+  private static final String MAP_TEXT = "Mind Map generated by NB MindMap plugin\n"
+      + "> __version__=`1.1`,someAttr=`hello`\n"
+      + "---\n"
+      + "\n"
+      + "# Root\n"
+      + "> topicLinkUID=`AAA`\n"
+      + "\n"
+      + "- NOTE\n"
+      + "<pre>first line\nsecond line\n\nthird line</pre>\n"
+      + "\n"
+      + "## Child \\# one\n"
+      + "- LINK\n"
+      + "<pre>http://www.google.com</pre>\n"
+      + "- WRONGTYPE\n"
+      + "<pre>ignored</pre>\n"
+      + "```Java\n"
+      + "public class Test {\n"
+      + "  String s = \"```\";\n"
+      + "}\n"
+      + "```\n"
+      + "\n"
+      + "### Grandchild\n"
+      + "```Shell\n"
+      + "echo ok\n"
+      + "```\n"
+      + "## Child two\n"
+      + "- TOPIC\n"
+      + "<pre>AAA</pre>\n";
+
+  private static final class ByPortionsReader extends Reader {
+
+    private final String text;
+    private final int portion;
+    private int pos;
+
+    ByPortionsReader(final String text, final int portion) {
+      this.text = text;
+      this.portion = portion;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+      if (this.pos >= this.text.length()) {
+        return -1;
+      }
+      final int toRead = Math.min(Math.min(len, this.portion), this.text.length() - this.pos);
+      this.text.getChars(this.pos, this.pos + toRead, cbuf, off);
+      this.pos += toRead;
+      return toRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  private static List<String> readEvents(final MindMapReader reader) throws IOException {
+    final List<String> result = new ArrayList<String>();
+    while (true) {
+      final MindMapReader.EventType type = reader.next();
+      switch (type) {
+        case TOPIC:
+          result.add(type + ":" + reader.getTopicLevel() + ":" + reader.getText());
+          break;
+        case EXTRA:
+          result.add(type + ":" + reader.getExtraType() + ":" + reader.getText());
+          break;
+        case CODE_SNIPPET:
+          result.add(type + ":" + reader.getCodeSnippetLanguage() + ":" + reader.getText());
+          break;
+        case END:
+          result.add(type.name());
+          return result;
+        default:
+          result.add(type + ":" + reader.getText());
+          break;
+      }
+    }
+  }
+
+  @Test
+  public void testEvents() throws Exception {
+    final List<String> events = readEvents(new MindMapReader(new StringReader(MAP_TEXT)));
+    assertEquals(12, events.size());
+    assertEquals("MAP_ATTRIBUTES:> __version__=`1.1`,someAttr=`hello`\n", events.get(0));
+    assertEquals("TOPIC:1:Root", events.get(1));
+    assertEquals("TOPIC_ATTRIBUTES:> topicLinkUID=`AAA`", events.get(2));
+    assertEquals("EXTRA:NOTE:first line\nsecond line\n\nthird line", events.get(3));
+    assertEquals("TOPIC:2:Child # one", events.get(4));
+    assertEquals("EXTRA:LINK:http://www.google.com", events.get(5));
+    assertEquals("CODE_SNIPPET:Java:public class Test {\n  String s = \"```\";\n}\n", events.get(6));
+    assertEquals("TOPIC:3:Grandchild", events.get(7));
+    assertEquals("CODE_SNIPPET:Shell:echo ok\n", events.get(8));
+    assertEquals("TOPIC:2:Child two", events.get(9));
+    assertEquals("EXTRA:TOPIC:AAA", events.get(10));
+    assertEquals("END", events.get(11));
+  }
+
+  @Test
+  public void testEventsDontDependOnReadPortions() throws Exception {
+    final List<String> etalon = readEvents(new MindMapReader(new StringReader(MAP_TEXT)));
+    for (int portion = 1; portion < 64; portion++) {
+      assertEquals("Portion " + portion, etalon, readEvents(new MindMapReader(new ByPortionsReader(MAP_TEXT, portion))));
+    }
+  }
+
+  @Test
+  public void testSameAsLexerOverWholeText() throws Exception {
+    final MindMapLexer lexer = new MindMapLexer();
+    lexer.start(MAP_TEXT, 0, MAP_TEXT.length(), MindMapLexer.TokenType.HEAD_LINE);
+    do {
+      lexer.advance();
+    } while (lexer.getTokenType() != MindMapLexer.TokenType.HEAD_DELIMITER);
+
+    final List<String> fromLexer = readEvents(new MindMapReader(lexer));
+    final List<String> fromReader = readEvents(new MindMapReader(new ByPortionsReader(MAP_TEXT, 7)));
+    assertEquals(fromLexer, fromReader.subList(1, fromReader.size()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testErrorForNonClosedHeader() throws Exception {
+    readEvents(new MindMapReader(new ByPortionsReader("Header\n> attr=`1`\n", 3)));
+  }
+
+  @Test
+  public void testBuildModel() throws Exception {
+    final MindMap map = new MindMap(null, new ByPortionsReader(MAP_TEXT, 5));
+    assertEquals("hello", map.getAttribute("someAttr"));
+    final Topic root = map.getRoot();
+    assertEquals("Root", root.getText());
+    assertEquals("AAA", root.getAttribute("topicLinkUID"));
+    assertEquals("first line\nsecond line\n\nthird line", root.getExtras().get(Extra.ExtraType.NOTE).getValue());
+    assertEquals(2, root.getChildren().size());
+    assertEquals("public class Test {\n  String s = \"```\";\n}\n", root.getFirst().getCodeSnippet("Java"));
+    assertEquals("echo ok\n", root.getFirst().getFirst().getCodeSnippet("Shell"));
+    assertSame(root, map.findTopicForLink((com.igormaznitsa.mindmap.model.ExtraTopic) root.getLast().getExtras().get(Extra.ExtraType.TOPIC)));
+    assertEquals(map.packToString(), new MindMap(null, new StringReader(map.packToString())).packToString());
+  }
+
+  @Test
+  public void testLongLinesAndNotes() throws Exception {
+    final StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 200000; i++) {
+      longValue.append((char) ('a' + i % 26));
+    }
+    final StringBuilder note = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      note.append("line ").append(i).append('\n');
+    }
+
+    final StringBuilder text = new StringBuilder("Header\n---\n# Root\n");
+    for (int i = 0; i < 100; i++) {
+      text.append("## Child ").append(i).append('\n');
+      text.append("> mmd.image=`").append(longValue).append("`\n");
+      text.append("- NOTE\n<pre>").append(note).append("</pre>\n");
+    }
+
+    final MindMap map = new MindMap(null, new ByPortionsReader(text.toString(), 1000));
+    assertEquals(100, map.getRoot().getChildren().size());
+    for (final Topic t : map.getRoot().getChildren()) {
+      assertEquals(longValue.toString(), t.getAttribute("mmd.image"));
+      assertEquals(note.toString(), t.getExtras().get(Extra.ExtraType.NOTE).getValue());
+    }
+  }
+}
@@ -15,7 +15,7 @@
  */
 package com.igormaznitsa.mindmap.plugins.exporters;
 
-import static com.igormaznitsa.mindmap.swing.panel.MindMapPanel.calculateSizeOfMapInPixels;
+import static com.igormaznitsa.mindmap.swing.panel.MindMapPanel.calculateSizeOfWorkMapInPixels;
 import static com.igormaznitsa.mindmap.swing.panel.MindMapPanel.drawOnGraphicsForConfiguration;
 import static com.igormaznitsa.mindmap.swing.panel.MindMapPanel.layoutFullDiagramWithCenteringToPaper;
 import java.awt.BasicStroke;
@@ -29,6 +29,7 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
@@ -74,6 +75,7 @@ import com.igormaznitsa.mindmap.swing.panel.utils.Utils;
 import com.igormaznitsa.mindmap.swing.services.UIComponentFactory;
 import com.igormaznitsa.mindmap.swing.services.UIComponentFactoryProvider;
 import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.TextMetricsCache;
 
 public class SVGImageExporter extends AbstractExporter {
 
@@ -204,13 +206,13 @@ public class SVGImageExporter extends AbstractExporter {
 
     @Override
     public float getFontMaxAscent() {
-      return this.context.getFontMetrics().getMaxAscent();
+      return TextMetricsCache.getInstance().getMaxAscent(this.context);
     }
 
     @Override
     @Nonnull
     public Rectangle2D getStringBounds(@Nonnull final String s) {
-      return this.context.getFontMetrics().getStringBounds(s, this.context);
+      return (Rectangle2D) TextMetricsCache.getInstance().getStringBounds(this.context, s).clone();
     }
 
     @Override
@@ -301,6 +303,17 @@ public class SVGImageExporter extends AbstractExporter {
       this.buffer.append('>').append(StringEscapeUtils.escapeXml(text)).append("</text>").append(NEXT_LINE);
     }
 
+    @Override
+    @Nullable
+    public GlyphVector makeGlyphVector(@Nonnull final String text) {
+      return null;
+    }
+
+    @Override
+    public void drawGlyphVector(@Nonnull final GlyphVector glyphs, @Nonnull final String text, final int x, final int y, @Nullable final Color color) {
+      drawString(text, x, y, color);
+    }
+
     @Override
     public void drawRect(final int x, final int y, final int width, final int height, final @Nullable Color border, final @Nullable Color fill) {
       this.buffer.append("<rect x=\"").append(dbl2str(this.translateX + x))
@@ -549,18 +562,13 @@ public class SVGImageExporter extends AbstractExporter {
       }
     }
 
-    final MindMap workMap = new MindMap(panel.getModel(), null);
-    workMap.resetPayload();
-
-    if (this.flagExpandAllNodes) {
-      MindMapUtils.removeCollapseAttr(workMap);
-    }
+    final MindMap workMap = MindMapPanel.makeMapForRendering(panel.getModel(), this.flagExpandAllNodes);
 
     final MindMapPanelConfig newConfig = new MindMapPanelConfig(panel.getConfiguration(), false);
     newConfig.setDrawBackground(this.flagDrawBackground);
     newConfig.setScale(1.0f);
 
-    final Dimension2D blockSize = calculateSizeOfMapInPixels(workMap, newConfig, flagExpandAllNodes);
+    final Dimension2D blockSize = calculateSizeOfWorkMapInPixels(workMap, newConfig);
     if (blockSize == null) {
       return;
     }
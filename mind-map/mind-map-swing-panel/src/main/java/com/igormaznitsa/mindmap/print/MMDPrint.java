@@ -71,7 +71,7 @@ public class MMDPrint {
 
       cfg.setScale(pageZoomFactor);
 
-      final MindMap theModel = new MindMap(panel.getModel(), null);
+      final MindMap theModel = panel.getModel().snapshot();
 
       BufferedImage renderedMap = GetUtils.ensureNonNull(MindMapPanel.renderMindMapAsImage(theModel, cfg, false),EMPTY_IMAGE);
 
@@ -22,6 +22,7 @@ import com.igormaznitsa.mindmap.swing.panel.ui.ElementLevelFirst;
 import com.igormaznitsa.mindmap.swing.panel.ui.ElementLevelOther;
 import com.igormaznitsa.mindmap.swing.panel.ui.AbstractElement;
 import com.igormaznitsa.mindmap.swing.panel.ui.AbstractCollapsableElement;
+import com.igormaznitsa.mindmap.swing.panel.ui.ElementQuadTree;
 import com.igormaznitsa.mindmap.model.*;
 import com.igormaznitsa.mindmap.model.logger.Logger;
 import com.igormaznitsa.mindmap.model.logger.LoggerFactory;
@@ -199,6 +200,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
   private volatile MindMap model;
   private volatile String errorText;
+  private volatile boolean layoutInvalid = true;
 
   private final List<MindMapListener> mindMapListeners = new CopyOnWriteArrayList<MindMapListener>();
 
@@ -217,6 +219,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
   private transient MouseSelectedArea mouseDragSelection = null;
   private transient DraggedElement draggedElement = null;
+  private transient ElementQuadTree elementIndex = null;
   private transient AbstractElement destinationElement = null;
 
   private volatile boolean popupMenuActive = false;
@@ -575,10 +578,10 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
               if (draggedElement != null) {
                 draggedElement.updatePosition(e.getPoint());
                 if (endDragOfElement(draggedElement, destinationElement)) {
-                  updateView(true);
+                  updateViewForDirtyElements(true);
                 }
               } else if (mouseDragSelection != null) {
-                final List<Topic> covered = mouseDragSelection.getAllSelectedElements(model);
+                final List<Topic> covered = mouseDragSelection.getAllSelectedElements(model, findActualElementIndex());
                 if (e.isShiftDown()) {
                   for (final Topic m : covered) {
                     select(m, false);
@@ -850,9 +853,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
         }
       }
     }
-    this.model.resetPayload();
-    notifyModelChanged();
-    repaint();
+    updateViewForDirtyElements(true);
   }
 
   @Nullable
@@ -1087,6 +1088,8 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
           if (lastSelectedTopic.isCollapsed()) {
             ((AbstractCollapsableElement) lastSelectedTopic).setCollapse(false);
             modelChanged = true;
+            // elements of unfolded children are created only during layout
+            updateElementsAndSizeForCurrentGraphics(true, false);
           }
 
           nextFocused = (AbstractElement) (lastSelectedTopic.getModel().getChildren().get(0)).getPayload();
@@ -1138,14 +1141,20 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     Utils.safeSwingCall(new Runnable() {
       @Override
       public void run() {
-        for (final ModelJob j : jobs) {
-          try {
-            if (!j.doChangeModel(model)) {
-              break;
+        final MindMap theModel = model;
+        theModel.beginBatch();
+        try {
+          for (final ModelJob j : jobs) {
+            try {
+              if (!j.doChangeModel(theModel)) {
+                break;
+              }
+            } catch (Exception ex) {
+              LOGGER.error("Errot during job execution", ex);
             }
-          } catch (Exception ex) {
-            LOGGER.error("Errot during job execution", ex);
           }
+        } finally {
+          theModel.endBatch();
         }
         notifyModelChanged();
       }
@@ -1252,7 +1261,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
           }
 
           select(newTopic, false);
-          updateView(false);
+          updateViewForDirtyElements(false);
           startEdit((AbstractElement) newTopic.getPayload());
         }
       } finally {
@@ -1327,13 +1336,18 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
         if (allowed) {
           removeAllSelection();
-          for (final Topic t : topics) {
-            for (final ModelAwarePlugin p : plugins) {
-              p.onDeleteTopic(this, t);
+          this.model.beginBatch();
+          try {
+            for (final Topic t : topics) {
+              for (final ModelAwarePlugin p : plugins) {
+                p.onDeleteTopic(this, t);
+              }
+              this.model.removeTopic(t);
             }
-            this.model.removeTopic(t);
+          } finally {
+            this.model.endBatch();
           }
-          updateView(true);
+          updateViewForDirtyElements(true);
         }
       } finally {
         unlock();
@@ -1349,8 +1363,17 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
         if (this.model.getRoot() != null) {
           final AbstractElement root = (AbstractElement) assertNotNull(this.model.getRoot()).getPayload();
-          if (root != null && root.collapseOrExpandAllChildren(collapse)) {
-            updateView(true);
+          if (root != null) {
+            final boolean changed;
+            this.model.beginBatch();
+            try {
+              changed = root.collapseOrExpandAllChildren(collapse);
+            } finally {
+              this.model.endBatch();
+            }
+            if (changed) {
+              updateViewForDirtyElements(true);
+            }
           }
         }
       } finally {
@@ -1492,7 +1515,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
             editedElement.setText(newText);
           }
           this.textEditorPanel.setVisible(false);
-          updateView(true);
+          updateViewForDirtyElements(true);
           fireNotificationEnsureTopicVisibility(editedTopic);
         }
       } finally {
@@ -1535,8 +1558,13 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
   private void findDestinationElementForDragged() {
     final Topic theroot = this.model.getRoot();
     if (this.draggedElement != null && theroot != null) {
-      final AbstractElement root = (AbstractElement) assertNotNull(theroot.getPayload());
-      this.destinationElement = root.findNearestOpenedTopicToPoint(this.draggedElement.getElement(), this.draggedElement.getPosition());
+      final ElementQuadTree index = findActualElementIndex();
+      if (index == null) {
+        final AbstractElement root = (AbstractElement) assertNotNull(theroot.getPayload());
+        this.destinationElement = root.findNearestOpenedTopicToPoint(this.draggedElement.getElement(), this.draggedElement.getPosition());
+      } else {
+        this.destinationElement = index.findNearestOpenedTopicToPoint(this.draggedElement.getElement(), this.draggedElement.getPosition());
+      }
     } else {
       this.destinationElement = null;
     }
@@ -1715,6 +1743,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     if (this.lockIfNotDisposed()) {
       try {
         this.config.setScale(zoom);
+        invalidate();
       } finally {
         this.unlock();
       }
@@ -1957,13 +1986,27 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
   }
 
   private static void drawTopicTree(@Nonnull final MMGraphics gfx, @Nonnull final Topic topic, @Nonnull final MindMapPanelConfig cfg) {
-    paintTopic(gfx, topic, cfg);
+    final Rectangle clip = gfx.getClipBounds();
+    if (clip == null) {
+      drawTopicTree(gfx, topic, cfg, null, null);
+    } else {
+      final double margin = (cfg.getCollapsatorSize() + cfg.getShadowOffset() + cfg.getElementBorderWidth() + cfg.getConnectorWidth()) * cfg.getScale();
+      final Rectangle2D visibleArea = new Rectangle2D.Double(clip.getX() - margin, clip.getY() - margin, clip.getWidth() + margin * 2, clip.getHeight() + margin * 2);
+      drawTopicTree(gfx, topic, cfg, visibleArea, new Rectangle2D.Double());
+    }
+  }
+
+  private static void drawTopicTree(@Nonnull final MMGraphics gfx, @Nonnull final Topic topic, @Nonnull final MindMapPanelConfig cfg, @Nullable final Rectangle2D visibleArea, @Nullable final Rectangle2D buffer) {
     final AbstractElement w = assertNotNull((AbstractElement) topic.getPayload());
+    if (visibleArea != null && !visibleArea.intersects(w.calcBlockBounds(buffer))) {
+      return;
+    }
+    paintTopic(gfx, topic, cfg);
     if (w.isCollapsed()) {
       return;
     }
     for (final Topic t : topic.getChildren()) {
-      drawTopicTree(gfx, t, cfg);
+      drawTopicTree(gfx, t, cfg, visibleArea, buffer);
     }
   }
 
@@ -2003,9 +2046,25 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     }
   }
 
-  private static void setElementSizesForElementAndChildren(@Nonnull final MMGraphics gfx, @Nonnull final MindMapPanelConfig cfg, @Nonnull final Topic topic, final int level) {
+  private static boolean isElementForLevel(@Nonnull final AbstractElement element, final int level) {
+    final Class<?> expected;
+    switch (level) {
+      case 0:
+        expected = ElementRoot.class;
+        break;
+      case 1:
+        expected = ElementLevelFirst.class;
+        break;
+      default:
+        expected = ElementLevelOther.class;
+        break;
+    }
+    return element.getClass() == expected;
+  }
+
+  private static boolean setElementSizesForElementAndChildren(@Nonnull final MMGraphics gfx, @Nonnull final MindMapPanelConfig cfg, @Nonnull final Topic topic, final int level) {
     AbstractElement widget = (AbstractElement) topic.getPayload();
-    if (widget == null) {
+    if (widget == null || !isElementForLevel(widget, level)) {
       switch (level) {
         case 0:
           widget = new ElementRoot(topic);
@@ -2020,19 +2079,63 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
       topic.setPayload(widget);
     }
 
-    widget.updateElementBounds(gfx, cfg);
+    boolean changed = widget.isDirty();
+    if (changed) {
+      widget.updateElementBounds(gfx, cfg);
+    }
+
+    if (!widget.isCollapsed()) {
+      for (final Topic t : topic.getChildren()) {
+        changed |= setElementSizesForElementAndChildren(gfx, cfg, t, level + 1);
+      }
+    }
+
+    if (changed || widget.isStructureChanged()) {
+      widget.updateBlockSize(cfg);
+      widget.fixLayoutState();
+      changed = true;
+    }
+    return changed;
+  }
+
+  private static void refreshElementsForTopicAndChildren(@Nonnull final Topic topic, final int level) {
+    final Object payload = topic.getPayload();
+    if (payload instanceof AbstractElement && isElementForLevel((AbstractElement) payload, level)) {
+      ((AbstractElement) payload).refreshFromModel();
+    } else {
+      topic.setPayload(null);
+    }
     for (final Topic t : topic.getChildren()) {
-      setElementSizesForElementAndChildren(gfx, cfg, t, level + 1);
+      refreshElementsForTopicAndChildren(t, level + 1);
     }
-    widget.updateBlockSize(cfg);
   }
 
+  /**
+   * Refresh existing element payloads of model by their topics and mark them as dirty, elements which don't fit level of their topics are removed. It allows to make full measuring of model without creation of new elements.
+   *
+   * @param model model which elements should be refreshed, can be null
+   * @since 1.4.1
+   */
+  public static void refreshElements(@Nullable final MindMap model) {
+    final Topic root = model == null ? null : model.getRoot();
+    if (root != null) {
+      refreshElementsForTopicAndChildren(root, 0);
+    }
+  }
+
+  /**
+   * Calculate sizes of elements of model, the method reuses already existing element payloads and measures only dirty elements and elements which structure has been changed. Elements are created and measured only for visible topics, descendants of collapsed topics are processed when they become visible. Call {@link #refreshElements(MindMap)} or {@link MindMap#resetPayload()} before the method to make full measuring.
+   *
+   * @param gfx graphics context to be used for measuring
+   * @param model model which elements should be measured
+   * @param cfg configuration
+   * @return true if elements have been processed, false otherwise
+   */
   public static boolean calculateElementSizes(@Nonnull final MMGraphics gfx, @Nullable final MindMap model, @Nonnull final MindMapPanelConfig cfg) {
     boolean result = false;
 
     final Topic root = model == null ? null : model.getRoot();
     if (root != null && model != null) {
-      model.resetPayload();
       setElementSizesForElementAndChildren(gfx, cfg, root, 0);
       result = true;
     }
@@ -2120,6 +2223,25 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     }
   }
 
+  /**
+   * Update view for changes made through the panel, only dirty elements and elements which structure has been changed are measured and aligned.
+   *
+   * @param structureWasChanged true if listeners should be notified about changed model
+   */
+  private void updateViewForDirtyElements(final boolean structureWasChanged) {
+    if (this.lockIfNotDisposed()) {
+      try {
+        revalidate();
+        if (structureWasChanged) {
+          fireNotificationMindMapChanged();
+        }
+        repaint();
+      } finally {
+        this.unlock();
+      }
+    }
+  }
+
   public boolean updateElementsAndSizeForCurrentGraphics(final boolean enforce, final boolean doListenerNotification) {
     assertSwingDispatchThread();
 
@@ -2142,6 +2264,9 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
               }
 
               changeSizeOfComponent(layoutFullDiagramWithCenteringToPaper(gfx, this.model, this.config, pageSize), doListenerNotification);
+              final Topic root = this.model.getRoot();
+              this.elementIndex = root == null || root.getPayload() == null ? null : new ElementQuadTree((AbstractElement) root.getPayload());
+              this.layoutInvalid = false;
               result = true;
               fireNotificationComponentElementsLayouted(graph);
             }
@@ -2190,7 +2315,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
   public boolean isValid() {
     if (this.lockIfNotDisposed()) {
       try {
-        return isModelValid(this.model);
+        return !this.layoutInvalid && isModelValid(this.model);
       } finally {
         this.unlock();
       }
@@ -2208,8 +2333,10 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     if (lockIfNotDisposed()) {
       try {
         super.invalidate();
+        this.layoutInvalid = true;
+        this.elementIndex = null;
         if (this.model != null && this.model.getRoot() != null) {
-          this.model.resetPayload();
+          refreshElements(this.model);
         }
       } finally {
         this.unlock();
@@ -2246,7 +2373,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
           if (error != null) {
             drawErrorText(gfx, this.getSize(), error);
           } else {
-            revalidate();
+            updateElementsAndSizeForCurrentGraphics(false, true);
             drawOnGraphicsForConfiguration(new MMGraphics2DWrapper(gfx), this.config, this.model, true, this.selectedTopics);
             drawDestinationElement(gfx, this.config);
           }
@@ -2268,6 +2395,13 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     }
   }
 
+  @Nullable
+  private ElementQuadTree findActualElementIndex() {
+    final ElementQuadTree index = this.elementIndex;
+    final Topic root = this.model == null ? null : this.model.getRoot();
+    return index == null || root == null || root.getPayload() != index.getRootElement() ? null : index;
+  }
+
   @Nullable
   public AbstractElement findTopicUnderPoint(@Nonnull final Point point) {
     if (this.lockIfNotDisposed()) {
@@ -2276,9 +2410,14 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
         if (this.model != null) {
           final Topic root = this.model.getRoot();
           if (root != null) {
-            final AbstractElement rootWidget = (AbstractElement) root.getPayload();
-            if (rootWidget != null) {
-              result = rootWidget.findForPoint(point);
+            final ElementQuadTree index = findActualElementIndex();
+            if (index == null) {
+              final AbstractElement rootWidget = (AbstractElement) root.getPayload();
+              if (rootWidget != null) {
+                result = rootWidget.findForPoint(point);
+              }
+            } else {
+              result = index.findForPoint(point);
             }
           }
         }
@@ -2312,12 +2451,8 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     if (this.lockIfNotDisposed()) {
       try {
         if (theTopic != null) {
-          final AbstractElement element = (AbstractElement) theTopic.getPayload();
-          if (element != null && element instanceof AbstractCollapsableElement) {
-            final AbstractCollapsableElement cel = (AbstractCollapsableElement) element;
-            if (MindMapUtils.ensureVisibility(cel.getModel())) {
-              updateView(true);
-            }
+          if (theTopic.getParent() != null && MindMapUtils.ensureVisibility(theTopic)) {
+            updateViewForDirtyElements(true);
           }
 
           removeAllSelection();
@@ -2346,7 +2481,7 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
       if (cloned != null) {
         cloned.moveAfter(topic);
-        updateView(true);
+        updateViewForDirtyElements(true);
       }
 
       return true;
@@ -2388,11 +2523,34 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     }
   }
 
+  /**
+   * Make private work map to be measured and rendered, elements are kept in payloads of its topics so that the work map must not be shared between renderings. The model can be read-only snapshot, it is not changed.
+   *
+   * @param model source mind map
+   * @param expandAll true if all topics must be expanded in the result
+   * @return new copy of the model without topic payloads
+   * @since 1.4.1
+   */
+  @Nonnull
+  public static MindMap makeMapForRendering(@Nonnull final MindMap model, final boolean expandAll) {
+    return model.makeCopy(expandAll ? StandardTopicAttribute.ATTR_COLLAPSED.getText() : null);
+  }
+
   @Nullable
   public static Dimension2D calculateSizeOfMapInPixels(@Nonnull final MindMap model, @Nonnull final MindMapPanelConfig cfg, final boolean expandAll) {
-    final MindMap workMap = new MindMap(model, null);
-    workMap.resetPayload();
+    return calculateSizeOfWorkMapInPixels(makeMapForRendering(model, expandAll), cfg);
+  }
 
+  /**
+   * Calculate size of work map made by {@link #makeMapForRendering(MindMap, boolean)}, elements of the work map are created and laid out in its topic payloads.
+   *
+   * @param workMap private work map to be measured
+   * @param cfg configuration to be used for measuring
+   * @return size of the map in pixels with paper margins, null if the map is empty
+   * @since 1.4.1
+   */
+  @Nullable
+  public static Dimension2D calculateSizeOfWorkMapInPixels(@Nonnull final MindMap workMap, @Nonnull final MindMapPanelConfig cfg) {
     BufferedImage img = new BufferedImage(32, 32, cfg.isDrawBackground() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
     Dimension2D blockSize = null;
     final Graphics2D g = img.createGraphics();
@@ -2400,11 +2558,6 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
     try {
       Utils.prepareGraphicsForQuality(g);
       if (calculateElementSizes(gfx, workMap, cfg)) {
-        if (expandAll) {
-          final AbstractElement root = assertNotNull((AbstractElement) assertNotNull(workMap.getRoot()).getPayload());
-          root.collapseOrExpandAllChildren(false);
-          calculateElementSizes(gfx, workMap, cfg);
-        }
         blockSize = assertNotNull(layoutModelElements(workMap, cfg));
         final double paperMargin = cfg.getPaperMargins() * cfg.getScale();
         blockSize.setSize(blockSize.getWidth() + paperMargin * 2, blockSize.getHeight() + paperMargin * 2);
@@ -2417,17 +2570,13 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
 
   @Nullable
   public static BufferedImage renderMindMapAsImage(@Nonnull final MindMap model, @Nonnull final MindMapPanelConfig cfg, final boolean expandAll) {
-    final MindMap workMap = new MindMap(model, null);
-    workMap.resetPayload();
-
-    if (expandAll) {
-      MindMapUtils.removeCollapseAttr(workMap);
-    }
+    final MindMap workMap = makeMapForRendering(model, expandAll);
 
-    final Dimension2D blockSize = calculateSizeOfMapInPixels(workMap, cfg, expandAll);
+    final Dimension2D blockSize = calculateSizeOfWorkMapInPixels(workMap, cfg);
     if (blockSize == null) {
       return null;
     }
+    workMap.resetPayload();
 
     final BufferedImage img = new BufferedImage((int) blockSize.getWidth(), (int) blockSize.getHeight(), BufferedImage.TYPE_INT_ARGB);
     final Graphics2D g = img.createGraphics();
@@ -2563,13 +2712,18 @@ public class MindMapPanel extends JPanel implements ClipboardOwner {
               final Topic [] selected = this.getSelectedTopics();
               
               if (selected.length>0){
-                for(final Topic s : selected){
-                  for(final Topic t : container.getTopics()) {
-                    final Topic newTopic = new Topic(this.model,t,true);
-                    newTopic.removeExtra(Extra.ExtraType.TOPIC);
-                    newTopic.moveToNewParent(s);
-                    MindMapUtils.ensureVisibility(newTopic);
+                this.model.beginBatch();
+                try {
+                  for(final Topic s : selected){
+                    for(final Topic t : container.getTopics()) {
+                      final Topic newTopic = new Topic(this.model,t,true);
+                      newTopic.removeExtra(Extra.ExtraType.TOPIC);
+                      newTopic.moveToNewParent(s);
+                      MindMapUtils.ensureVisibility(newTopic);
+                    }
                   }
+                } finally {
+                  this.model.endBatch();
                 }
               }
               
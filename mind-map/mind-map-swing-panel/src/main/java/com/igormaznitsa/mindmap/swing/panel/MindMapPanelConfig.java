@@ -16,6 +16,8 @@
 package com.igormaznitsa.mindmap.swing.panel;
 
 
+import com.igormaznitsa.mindmap.swing.panel.ui.LayoutEngine;
+import com.igormaznitsa.mindmap.swing.panel.ui.LinearLayoutEngine;
 import com.igormaznitsa.mindmap.swing.panel.utils.KeyShortcut;
 
 import java.awt.Color;
@@ -111,6 +113,8 @@ public final class MindMapPanelConfig implements Serializable {
   private double scale = 1.0d;
   private boolean dropShadow = true;
 
+  private transient LayoutEngine layoutEngine = LinearLayoutEngine.INSTANCE;
+
   private transient volatile boolean notificationEnabled = true;
 
   private transient final Map<String, KeyShortcut> mapShortCut = new HashMap<String, KeyShortcut>();
@@ -756,6 +760,23 @@ public final class MindMapPanelConfig implements Serializable {
     notifyCfgListenersAboutChange();
   }
 
+  /**
+   * Get engine to place elements of mind map, it is not saved into preferences.
+   *
+   * @return layout engine, linear one by default
+   * @since 1.4.1
+   */
+  @Nonnull
+  public LayoutEngine getLayoutEngine () {
+    final LayoutEngine result = this.layoutEngine;
+    return result == null ? LinearLayoutEngine.INSTANCE : result;
+  }
+
+  public void setLayoutEngine (@Nonnull final LayoutEngine engine) {
+    this.layoutEngine = assertNotNull(engine);
+    notifyCfgListenersAboutChange();
+  }
+
   public boolean isDropShadow () {
     return this.dropShadow;
   }
@@ -22,6 +22,7 @@ import com.igormaznitsa.mindmap.swing.panel.utils.MindMapUtils;
 
 import java.awt.Dimension;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
@@ -142,9 +143,9 @@ public abstract class AbstractCollapsableElement extends AbstractElement {
           } else {
             notFirstChiild = true;
           }
-          ((AbstractElement) assertNotNull(t.getPayload())).calcBlockSize(cfg, result, false);
-          width = Math.max(baseWidth + result.getWidth(), width);
-          childrenHeight += result.getHeight();
+          final Dimension2D childBlockSize = ((AbstractElement) assertNotNull(t.getPayload())).getBlockSize();
+          width = Math.max(baseWidth + childBlockSize.getWidth(), width);
+          childrenHeight += childBlockSize.getHeight();
         }
 
         height = Math.max(height, childrenHeight);
@@ -157,60 +158,31 @@ public abstract class AbstractCollapsableElement extends AbstractElement {
     return result;
   }
 
-  @Override
-  public void alignElementAndChildren(@Nonnull final MindMapPanelConfig cfg, final boolean leftSide, final double leftX, final double topY) {
-    super.alignElementAndChildren(cfg, leftSide, leftX, topY);
-    
-    final double horzInset = cfg.getOtherLevelHorizontalInset() * cfg.getScale();
-
-    double childrenX;
-
-    final double COLLAPSATORSIZE = cfg.getCollapsatorSize() * cfg.getScale();
-    final double COLLAPSATORDISTANCE = cfg.getCollapsatorSize() * 0.1d * cfg.getScale();
-
-    final double collapsatorX;
-
-    if (leftSide) {
-      childrenX = leftX + this.blockSize.getWidth() - this.bounds.getWidth();
-      this.moveTo(childrenX, topY + (this.blockSize.getHeight() - this.bounds.getHeight()) / 2);
-      childrenX -= horzInset;
-      collapsatorX = -COLLAPSATORSIZE - COLLAPSATORDISTANCE;
-    } else {
-      childrenX = leftX;
-      this.moveTo(childrenX, topY + (this.blockSize.getHeight() - this.bounds.getHeight()) / 2);
-      childrenX += this.bounds.getWidth() + horzInset;
-      collapsatorX = this.bounds.getWidth() + COLLAPSATORDISTANCE;
-    }
-
-    this.collapsatorZone.setRect(collapsatorX, (this.bounds.getHeight() - COLLAPSATORSIZE) / 2, COLLAPSATORSIZE, COLLAPSATORSIZE);
-
-    if (!this.isCollapsed()) {
-      final double vertInset = cfg.getOtherLevelVerticalInset() * cfg.getScale();
-
-      final Dimension2D childBlockSize = calcBlockSize(cfg, null, true);
-      double currentY = topY + (this.blockSize.getHeight() - childBlockSize.getHeight()) / 2.0d;
-
-      boolean notFirstChild = false;
-
-      for (final Topic t : this.model.getChildren()) {
-        if (notFirstChild) {
-          currentY += vertInset;
-        } else {
-          notFirstChild = true;
-        }
-        final AbstractElement w = (AbstractElement) assertNotNull(t.getPayload());
-        w.alignElementAndChildren(cfg, leftSide, leftSide ? childrenX - w.getBlockSize().getWidth() : childrenX, currentY);
-        currentY += w.getBlockSize().getHeight();
-      }
-    }
+  /**
+   * Place collapsator zone of the element for direction of its branch.
+   *
+   * @param cfg configuration
+   * @param leftSide direction of the branch
+   * @since 1.4.1
+   */
+  protected void updateCollapsatorZone(@Nonnull final MindMapPanelConfig cfg, final boolean leftSide) {
+    final double collapsatorSize = cfg.getCollapsatorSize() * cfg.getScale();
+    final double collapsatorDistance = cfg.getCollapsatorSize() * 0.1d * cfg.getScale();
+    final double collapsatorX = leftSide ? -collapsatorSize - collapsatorDistance : this.bounds.getWidth() + collapsatorDistance;
+    this.collapsatorZone.setRect(collapsatorX, (this.bounds.getHeight() - collapsatorSize) / 2, collapsatorSize, collapsatorSize);
   }
 
   @Override
   public void doPaintConnectors(@Nonnull final MMGraphics g, final boolean leftDirection, @Nonnull final MindMapPanelConfig cfg) {
     final Rectangle2D source = new Rectangle2D.Double(this.bounds.getX() + this.collapsatorZone.getX(), this.bounds.getY() + this.collapsatorZone.getY(), this.collapsatorZone.getWidth(), this.collapsatorZone.getHeight());
     final boolean lefDir = isLeftDirection();
+    final Rectangle clip = g.getClipBounds();
+    final double margin = cfg.safeScaleFloatValue(cfg.getConnectorWidth(), 0.1f);
     for (final Topic t : this.model.getChildren()) {
-      this.drawConnector(g, source, (assertNotNull((AbstractElement) t.getPayload())).getBounds(), lefDir, cfg);
+      final Rectangle2D destination = (assertNotNull((AbstractElement) t.getPayload())).getBounds();
+      if (isConnectorVisible(clip, source, destination, margin)) {
+        this.drawConnector(g, source, destination, lefDir, cfg);
+      }
     }
   }
 
@@ -20,6 +20,7 @@ import com.igormaznitsa.mindmap.model.Topic;
 
 import static com.igormaznitsa.mindmap.swing.panel.StandardTopicAttribute.*;
 
+import com.igormaznitsa.mindmap.swing.panel.utils.MindMapUtils;
 import com.igormaznitsa.mindmap.swing.panel.utils.Utils;
 
 import java.awt.Color;
@@ -28,6 +29,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Rectangle2D;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,6 +55,17 @@ public abstract class AbstractElement {
   protected Color textColor;
   protected Color borderColor;
 
+  private boolean dirty = true;
+  private boolean collapsedAtLayout;
+  private Topic[] childrenAtLayout;
+
+  private Object layoutData;
+
+  private boolean alignmentValid;
+  private boolean leftSideAtAlignment;
+  private double alignedX;
+  private double alignedY;
+
   @Nonnull
   public String getText() {
     return this.model.getText();
@@ -61,6 +74,123 @@ public abstract class AbstractElement {
   public void setText(@Nonnull final String text) {
     this.model.setText(text);
     this.textBlock.updateText(text);
+    markDirty();
+  }
+
+  /**
+   * Mark the element and all its ancestors as dirty, they will be measured and aligned again during next layout.
+   *
+   * @since 1.4.1
+   */
+  public void markDirty() {
+    AbstractElement element = this;
+    while (element != null) {
+      element.dirty = true;
+      element.alignmentValid = false;
+      element = element.getParent();
+    }
+  }
+
+  /**
+   * Check that the element must be measured again.
+   *
+   * @return true if the element is dirty, false otherwise
+   * @since 1.4.1
+   */
+  public boolean isDirty() {
+    return this.dirty;
+  }
+
+  /**
+   * Check that list of children or collapsed state of the topic have been changed since last layout of the element.
+   *
+   * @return true if the structure has been changed, false otherwise
+   * @since 1.4.1
+   */
+  public boolean isStructureChanged() {
+    final Topic[] children = this.childrenAtLayout;
+    if (children == null || this.collapsedAtLayout != this.isCollapsed()) {
+      return true;
+    }
+    final List<Topic> current = this.model.getChildren();
+    if (current.size() != children.length) {
+      return true;
+    }
+    for (int i = 0; i < children.length; i++) {
+      if (current.get(i) != children[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remember current state of the element as measured, it resets the dirty flag.
+   *
+   * @since 1.4.1
+   */
+  public void fixLayoutState() {
+    this.dirty = false;
+    this.alignmentValid = false;
+    this.collapsedAtLayout = this.isCollapsed();
+    final List<Topic> children = this.model.getChildren();
+    if (this.childrenAtLayout == null || this.childrenAtLayout.length != children.size()) {
+      this.childrenAtLayout = new Topic[children.size()];
+    }
+    for (int i = 0; i < this.childrenAtLayout.length; i++) {
+      this.childrenAtLayout[i] = children.get(i);
+    }
+  }
+
+  /**
+   * Get data saved by layout engine during measuring of the element.
+   *
+   * @return saved data, can be null
+   */
+  @Nullable
+  Object getLayoutData() {
+    return this.layoutData;
+  }
+
+  void setLayoutData(@Nullable final Object data) {
+    this.layoutData = data;
+  }
+
+  /**
+   * Try to reuse results of previous alignment of the element branch, the branch will be just moved if it was aligned for another position.
+   *
+   * @param leftSide direction of the branch
+   * @param x new x coordinate of the branch
+   * @param y new y coordinate of the branch
+   * @return true if the previous alignment has been reused, false if the branch must be aligned
+   * @since 1.4.1
+   */
+  protected boolean reuseAlignment(final boolean leftSide, final double x, final double y) {
+    boolean result = false;
+    if (this.alignmentValid && !this.dirty && this.leftSideAtAlignment == leftSide) {
+      final double dx = x - this.alignedX;
+      final double dy = y - this.alignedY;
+      if (dx != 0.0d || dy != 0.0d) {
+        moveWholeTreeBranchCoordinates(dx, dy);
+      }
+      result = true;
+    }
+    return result;
+  }
+
+  /**
+   * Remember coordinates of made alignment of the element branch.
+   *
+   * @param leftSide direction of the branch
+   * @param x x coordinate of the branch
+   * @param y y coordinate of the branch
+   * @since 1.4.1
+   */
+  protected void fixAlignment(final boolean leftSide, final double x, final double y) {
+    this.alignmentValid = true;
+    this.leftSideAtAlignment = leftSide;
+    this.alignedX = x;
+    this.alignedY = y;
   }
 
   protected AbstractElement(@Nonnull final AbstractElement orig) {
@@ -70,6 +200,7 @@ public abstract class AbstractElement {
     this.visualAttributeImageBlock = new VisualAttributeImageBlock(orig.visualAttributeImageBlock);
     this.bounds.setRect(orig.bounds);
     this.blockSize.setSize(orig.blockSize);
+    this.layoutData = orig.layoutData;
     this.fillColor = orig.fillColor;
     this.textColor = orig.textColor;
     this.borderColor = orig.borderColor;
@@ -84,6 +215,19 @@ public abstract class AbstractElement {
     updateColorAttributeFromModel();
   }
 
+  /**
+   * Refresh the element by current state of its topic (text, text align and colors) and mark it as dirty, ancestors are not touched. It allows to reuse the element instance instead of making new one.
+   *
+   * @since 1.4.1
+   */
+  public void refreshFromModel() {
+    this.textBlock.updateText(this.model.getText());
+    this.textBlock.setTextAlign(TextAlign.findForName(this.model.getAttribute("align"))); //NOI18N
+    updateColorAttributeFromModel();
+    this.dirty = true;
+    this.alignmentValid = false;
+  }
+
   public final void updateColorAttributeFromModel() {
     this.borderColor = Utils.html2color(this.model.getAttribute(ATTR_BORDER_COLOR.getText()), false);
     this.textColor = Utils.html2color(this.model.getAttribute(ATTR_TEXT_COLOR.getText()), false);
@@ -109,6 +253,7 @@ public abstract class AbstractElement {
   public void setTextAlign(@Nonnull final TextAlign textAlign) {
     this.textBlock.setTextAlign(textAlign);
     this.model.setAttribute("align", this.textBlock.getTextAlign().name()); //NOI18N
+    markDirty();
   }
 
   public void updateElementBounds(@Nonnull final MMGraphics gfx, @Nonnull final MindMapPanelConfig cfg) {
@@ -132,8 +277,13 @@ public abstract class AbstractElement {
     this.bounds.setRect(0d, 0d, width, Math.max(this.visualAttributeImageBlock.getBounds().getHeight(),Math.max(this.textBlock.getBounds().getHeight(), this.extrasIconBlock.getBounds().getHeight())));
   }
 
+  /**
+   * Calculate block size of the element by layout engine from configuration, block sizes of children must be already calculated.
+   *
+   * @param cfg configuration
+   */
   public void updateBlockSize(@Nonnull final MindMapPanelConfig cfg) {
-    this.calcBlockSize(cfg, this.blockSize, false);
+    cfg.getLayoutEngine().calcBlockSize(cfg, this);
   }
 
   @Nonnull
@@ -147,6 +297,8 @@ public abstract class AbstractElement {
 
   public void moveWholeTreeBranchCoordinates(final double deltaX, final double deltaY) {
     moveTo(this.bounds.getX() + deltaX, this.bounds.getY() + deltaY);
+    this.alignedX += deltaX;
+    this.alignedY += deltaY;
     for (final Topic t : this.model.getChildren()) {
       final AbstractElement el = (AbstractElement) t.getPayload();
       if (el != null) {
@@ -183,9 +335,35 @@ public abstract class AbstractElement {
 
   public void doPaintConnectors(@Nonnull final MMGraphics g, final boolean leftDirection, @Nonnull final MindMapPanelConfig cfg) {
     final Rectangle2D source = this.bounds;
+    final Rectangle clip = g.getClipBounds();
+    final double margin = cfg.safeScaleFloatValue(cfg.getConnectorWidth(), 0.1f);
     for (final Topic t : this.model.getChildren()) {
-      drawConnector(g, source, (assertNotNull((AbstractElement) t.getPayload())).getBounds(), leftDirection, cfg);
+      final Rectangle2D destination = (assertNotNull((AbstractElement) t.getPayload())).getBounds();
+      if (isConnectorVisible(clip, source, destination, margin)) {
+        drawConnector(g, source, destination, leftDirection, cfg);
+      }
+    }
+  }
+
+  /**
+   * Check that a connector between two rectangles can be visible in clip area.
+   *
+   * @param clip clip area, can be null
+   * @param source source rectangle of the connector
+   * @param destination destination rectangle of the connector
+   * @param margin additional margin around the connector area
+   * @return true if the connector can be visible or there is no clip, false otherwise
+   * @since 1.4.1
+   */
+  protected static boolean isConnectorVisible(@Nullable final Rectangle clip, @Nonnull final Rectangle2D source, @Nonnull final Rectangle2D destination, final double margin) {
+    if (clip == null) {
+      return true;
     }
+    final double minX = Math.min(source.getMinX(), destination.getMinX()) - margin;
+    final double minY = Math.min(source.getMinY(), destination.getMinY()) - margin;
+    final double maxX = Math.max(source.getMaxX(), destination.getMaxX()) + margin;
+    final double maxY = Math.max(source.getMaxY(), destination.getMaxY()) + margin;
+    return clip.intersects(minX, minY, maxX - minX, maxY - minY);
   }
 
   public boolean hasChildren() {
@@ -206,7 +384,25 @@ public abstract class AbstractElement {
 
   public abstract boolean isCollapsed();
 
-  public void alignElementAndChildren(@Nonnull MindMapPanelConfig cfg, boolean leftSide, double centerX, double centerY){
+  /**
+   * Place the element and its visible descendants by layout engine from configuration.
+   *
+   * @param cfg configuration
+   * @param leftSide direction of the branch
+   * @param x x coordinate of the block
+   * @param y y coordinate of the block
+   */
+  public void alignElementAndChildren(@Nonnull final MindMapPanelConfig cfg, final boolean leftSide, final double x, final double y) {
+    cfg.getLayoutEngine().alignElementAndChildren(cfg, this, leftSide, x, y);
+  }
+
+  /**
+   * Place inner blocks of the element (text, icons and image) inside its bounds.
+   *
+   * @param cfg configuration
+   * @since 1.4.1
+   */
+  protected void alignInnerBlocks(@Nonnull final MindMapPanelConfig cfg) {
     final double textMargin = cfg.getScale() * cfg.getTextMargins();
     final double centralBlockLineY = textMargin + Math.max(this.visualAttributeImageBlock.getBounds().getHeight(), Math.max(this.textBlock.getBounds().getHeight(), this.extrasIconBlock.getBounds().getHeight())) / 2;
 
@@ -227,8 +423,16 @@ public abstract class AbstractElement {
     }
   }
 
+  /**
+   * Calculate size of block for linear layout, block sizes of children must be already calculated.
+   *
+   * @param cfg configuration
+   * @param size object to be filled by the size, can be null
+   * @param childrenOnly true if to calculate block of children only
+   * @return the filled size
+   */
   @Nonnull
-  public abstract Dimension2D calcBlockSize(@Nonnull MindMapPanelConfig cfg, @Nonnull Dimension2D size, boolean childrenOnly);
+  public abstract Dimension2D calcBlockSize(@Nonnull MindMapPanelConfig cfg, @Nullable Dimension2D size, boolean childrenOnly);
 
   public abstract boolean hasDirection();
 
@@ -287,6 +491,20 @@ public abstract class AbstractElement {
     return result;
   }
 
+  /**
+   * Calculate rectangle of the element block which contains the element and all its visible descendants.
+   *
+   * @param result rectangle to be filled by coordinates, can be null
+   * @return the filled rectangle
+   * @since 1.4.1
+   */
+  @Nonnull
+  public Rectangle2D calcBlockBounds(@Nullable final Rectangle2D result) {
+    final Rectangle2D rect = result == null ? new Rectangle2D.Double() : result;
+    rect.setRect(calcBlockX(), calcBlockY(), this.blockSize.getWidth(), this.blockSize.getHeight());
+    return rect;
+  }
+
   protected double calcBlockY() {
     return this.bounds.getY() - (this.blockSize.getHeight() - this.bounds.getHeight()) / 2;
   }
@@ -420,7 +638,9 @@ public abstract class AbstractElement {
     if (this.hasChildren()) {
       for (final Topic t : this.model.getChildren()) {
         final AbstractElement e = (AbstractElement) t.getPayload();
-        if (e != null) {
+        if (e == null) {
+          result |= collapseOrExpandTopicAndChildren(t, collapse);
+        } else {
           result |= e.collapseOrExpandAllChildren(collapse);
         }
       }
@@ -429,6 +649,18 @@ public abstract class AbstractElement {
     return result;
   }
 
+  private static boolean collapseOrExpandTopicAndChildren(@Nonnull final Topic topic, final boolean collapse) {
+    boolean result = false;
+    if (collapse != MindMapUtils.isCollapsed(topic)) {
+      MindMapUtils.setCollapsed(topic, collapse);
+      result = true;
+    }
+    for (final Topic t : topic.getChildren()) {
+      result |= collapseOrExpandTopicAndChildren(t, collapse);
+    }
+    return result;
+  }
+
   @Nonnull
   public abstract Color getBackgroundColor(@Nonnull MindMapPanelConfig config);
 
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import java.awt.geom.Dimension2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+import com.igormaznitsa.mindmap.model.Topic;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Layout engine which packs branches compactly in the manner of Reingold-Tilford algorithm. Every branch keeps its contour (extents of its levels) and a sibling branch is moved up until its contour touches contour of previous siblings, so that narrow branches can be placed near deep parts of wide branches. The parent element is centered to its first and last children. Blocks of elements are extended to be symmetric around elements, so they are larger than occupied area.
+ *
+ * @since 1.4.1
+ */
+public final class CompactLayoutEngine implements LayoutEngine {
+
+  public static final CompactLayoutEngine INSTANCE = new CompactLayoutEngine();
+
+  private CompactLayoutEngine() {
+  }
+
+  /**
+   * Extents of levels of branch, coordinates are relative to the top of the branch element and to its side which is near to the parent.
+   */
+  private static final class Contour {
+
+    private final double[] x0;
+    private final double[] x1;
+    private final double[] top;
+    private final double[] bottom;
+
+    private Contour(final int levels) {
+      this.x0 = new double[levels];
+      this.x1 = new double[levels];
+      this.top = new double[levels];
+      this.bottom = new double[levels];
+    }
+
+    private int levels() {
+      return this.x0.length;
+    }
+
+    private double getWidth() {
+      double result = 0.0d;
+      for (final double x : this.x1) {
+        result = Math.max(result, x);
+      }
+      return result;
+    }
+
+    private double getTop() {
+      double result = 0.0d;
+      for (final double y : this.top) {
+        result = Math.min(result, y);
+      }
+      return result;
+    }
+
+    private double getBottom() {
+      double result = 0.0d;
+      for (final double y : this.bottom) {
+        result = Math.max(result, y);
+      }
+      return result;
+    }
+
+    /**
+     * Find minimal vertical offset of contour to be placed below this contour without intersection.
+     */
+    private double findOffsetBelow(@Nonnull final Contour that, final double gap) {
+      double result = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < this.levels(); i++) {
+        for (int j = 0; j < that.levels(); j++) {
+          if (this.x0[i] < that.x1[j] && that.x0[j] < this.x1[i]) {
+            result = Math.max(result, this.bottom[i] + gap - that.top[j]);
+          }
+        }
+      }
+      return result == Double.NEGATIVE_INFINITY ? 0.0d : result;
+    }
+
+    @Nonnull
+    private Contour merge(@Nullable final Contour base, final double dy) {
+      if (base == null) {
+        return shift(0, 0.0d, dy);
+      }
+      final Contour result = new Contour(Math.max(base.levels(), this.levels()));
+      for (int i = 0; i < result.levels(); i++) {
+        final boolean inBase = i < base.levels();
+        final boolean inThis = i < this.levels();
+        if (inBase && inThis) {
+          result.x0[i] = Math.min(base.x0[i], this.x0[i]);
+          result.x1[i] = Math.max(base.x1[i], this.x1[i]);
+          result.top[i] = Math.min(base.top[i], this.top[i] + dy);
+          result.bottom[i] = Math.max(base.bottom[i], this.bottom[i] + dy);
+        } else if (inBase) {
+          result.x0[i] = base.x0[i];
+          result.x1[i] = base.x1[i];
+          result.top[i] = base.top[i];
+          result.bottom[i] = base.bottom[i];
+        } else {
+          result.x0[i] = this.x0[i];
+          result.x1[i] = this.x1[i];
+          result.top[i] = this.top[i] + dy;
+          result.bottom[i] = this.bottom[i] + dy;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Make copy of contour shifted on number of levels and coordinates, new levels are zero filled.
+     */
+    @Nonnull
+    private Contour shift(final int levelOffset, final double dx, final double dy) {
+      final Contour result = new Contour(this.levels() + levelOffset);
+      for (int i = 0; i < this.levels(); i++) {
+        result.x0[i + levelOffset] = this.x0[i] + dx;
+        result.x1[i + levelOffset] = this.x1[i] + dx;
+        result.top[i + levelOffset] = this.top[i] + dy;
+        result.bottom[i + levelOffset] = this.bottom[i] + dy;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Saved result of element measuring.
+   */
+  private static final class LayoutData {
+
+    private final Contour contour;
+    private final double[] childOffsets;
+
+    private LayoutData(@Nullable final Contour contour, @Nonnull final double[] childOffsets) {
+      this.contour = contour;
+      this.childOffsets = childOffsets;
+    }
+  }
+
+  private static final double[] NO_OFFSETS = new double[0];
+
+  @Override
+  public void calcBlockSize(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element) {
+    if (element instanceof ElementRoot) {
+      measureRoot(cfg, (ElementRoot) element);
+    } else {
+      measureBranch(cfg, element);
+    }
+  }
+
+  @Override
+  public void alignElementAndChildren(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element, final boolean leftSide, final double x, final double y) {
+    getData(cfg, element);
+    if (element instanceof ElementRoot) {
+      alignRoot(cfg, (ElementRoot) element, x, y);
+    } else {
+      alignBranch(cfg, (AbstractCollapsableElement) element, leftSide, x, y);
+    }
+  }
+
+  /**
+   * Get saved data of element, the element is measured if it has been measured by another engine.
+   */
+  @Nonnull
+  private LayoutData getData(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element) {
+    if (!(element.getLayoutData() instanceof LayoutData)) {
+      if (!element.isCollapsed()) {
+        for (final Topic t : element.getModel().getChildren()) {
+          getData(cfg, (AbstractElement) assertNotNull(t.getPayload()));
+        }
+      }
+      calcBlockSize(cfg, element);
+    }
+    return (LayoutData) assertNotNull(element.getLayoutData());
+  }
+
+  private static double calcChildBlockTop(@Nonnull final AbstractElement child, final double childTop) {
+    return childTop - (child.getBlockSize().getHeight() - child.bounds.getHeight()) / 2;
+  }
+
+  /**
+   * Place contours of elements one by one from top to bottom as close as possible.
+   *
+   * @param cfg configuration
+   * @param elements elements which contours should be placed
+   * @param gap vertical gap between contours
+   * @param offsets array to be filled by vertical offsets of elements
+   * @return merged contour of all elements
+   */
+  @Nonnull
+  private Contour stack(@Nonnull final MindMapPanelConfig cfg, @Nonnull @MustNotContainNull final List<AbstractElement> elements, final double gap, @Nonnull final double[] offsets) {
+    Contour result = null;
+    for (int i = 0; i < elements.size(); i++) {
+      final Contour contour = assertNotNull(getData(cfg, elements.get(i)).contour);
+      offsets[i] = result == null ? 0.0d : result.findOffsetBelow(contour, gap);
+      result = contour.merge(result, offsets[i]);
+    }
+    return assertNotNull(result);
+  }
+
+  private void measureBranch(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element) {
+    final double width = element.bounds.getWidth();
+    final double height = element.bounds.getHeight();
+
+    final Contour contour;
+    final double[] offsets;
+
+    if (element.hasChildren() && !element.isCollapsed()) {
+      final List<AbstractElement> children = new ArrayList<AbstractElement>();
+      for (final Topic t : element.getModel().getChildren()) {
+        children.add((AbstractElement) assertNotNull(t.getPayload()));
+      }
+      offsets = new double[children.size()];
+      final Contour childrenContour = stack(cfg, children, cfg.getOtherLevelVerticalInset() * cfg.getScale(), offsets);
+
+      final AbstractElement last = children.get(children.size() - 1);
+      final double elementTop = (offsets[offsets.length - 1] + last.bounds.getHeight()) / 2 - height / 2;
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] -= elementTop;
+      }
+
+      contour = childrenContour.shift(1, width + cfg.getOtherLevelHorizontalInset() * cfg.getScale(), -elementTop);
+    } else {
+      offsets = NO_OFFSETS;
+      contour = new Contour(1);
+    }
+
+    contour.x0[0] = 0.0d;
+    contour.x1[0] = width + (element.hasChildren() && element.isCollapsed() ? cfg.getCollapsatorSize() * cfg.getScale() : 0.0d);
+    contour.top[0] = 0.0d;
+    contour.bottom[0] = height;
+
+    final double halfOfBlock = Math.max(-contour.getTop(), contour.getBottom() - height);
+    element.blockSize.setSize(contour.getWidth(), height + 2 * halfOfBlock);
+    element.setLayoutData(new LayoutData(contour, offsets));
+  }
+
+  private void measureRoot(@Nonnull final MindMapPanelConfig cfg, @Nonnull final ElementRoot root) {
+    final double insetV = cfg.getScale() * cfg.getFirstLevelVerticalInset();
+    final double insetH = cfg.getScale() * cfg.getFirstLevelHorizontalInset();
+    final double height = root.bounds.getHeight();
+
+    final List<Topic> topics = root.getModel().getChildren();
+    final double[] offsets = new double[topics.size()];
+
+    double blockHeight = height;
+    double blockWidth = root.bounds.getWidth();
+
+    for (int side = 0; side < 2; side++) {
+      final boolean left = side == 0;
+      final List<AbstractElement> children = new ArrayList<AbstractElement>();
+      final List<Integer> indexes = new ArrayList<Integer>();
+      for (int i = 0; i < topics.size(); i++) {
+        final AbstractElement e = (AbstractElement) assertNotNull(topics.get(i).getPayload());
+        if (e.isLeftDirection() == left) {
+          children.add(e);
+          indexes.add(i);
+        }
+      }
+
+      final Dimension2D sideSize = left ? root.getLeftBlockSize() : root.getRightBlockSize();
+      if (children.isEmpty()) {
+        sideSize.setSize(0.0d, 0.0d);
+        continue;
+      }
+
+      final double[] sideOffsets = new double[children.size()];
+      final Contour contour = stack(cfg, children, insetV, sideOffsets);
+      final AbstractElement last = children.get(children.size() - 1);
+      final double rootTop = (sideOffsets[sideOffsets.length - 1] + last.bounds.getHeight()) / 2 - height / 2;
+
+      for (int i = 0; i < sideOffsets.length; i++) {
+        offsets[indexes.get(i)] = sideOffsets[i] - rootTop;
+      }
+
+      final double halfOfBlock = Math.max(rootTop + height / 2 - contour.getTop(), contour.getBottom() - rootTop - height / 2);
+      sideSize.setSize(insetH + contour.getWidth(), 2 * halfOfBlock);
+      blockWidth += insetH + contour.getWidth();
+      blockHeight = Math.max(blockHeight, 2 * halfOfBlock);
+    }
+
+    root.blockSize.setSize(blockWidth, blockHeight);
+    root.setLayoutData(new LayoutData(null, offsets));
+  }
+
+  private void alignRoot(@Nonnull final MindMapPanelConfig cfg, @Nonnull final ElementRoot root, final double x, final double y) {
+    root.alignInnerBlocks(cfg);
+    root.moveTo(x, y);
+
+    final double insetH = cfg.getScale() * cfg.getFirstLevelHorizontalInset();
+    final double[] offsets = getData(cfg, root).childOffsets;
+    final List<Topic> topics = root.getModel().getChildren();
+
+    for (int i = 0; i < topics.size(); i++) {
+      final AbstractCollapsableElement child = (AbstractCollapsableElement) assertNotNull(topics.get(i).getPayload());
+      final boolean left = child.isLeftDirection();
+      final double childX = left ? x - insetH - child.getBlockSize().getWidth() : x + root.bounds.getWidth() + insetH;
+      alignBranch(cfg, child, left, childX, calcChildBlockTop(child, y + offsets[i]));
+    }
+  }
+
+  private void alignBranch(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractCollapsableElement element, final boolean leftSide, final double leftX, final double topY) {
+    if (element.reuseAlignment(leftSide, leftX, topY)) {
+      return;
+    }
+
+    element.alignInnerBlocks(cfg);
+
+    final double width = element.bounds.getWidth();
+    final double top = topY + (element.getBlockSize().getHeight() - element.bounds.getHeight()) / 2;
+    final double x = leftSide ? leftX + element.getBlockSize().getWidth() - width : leftX;
+    element.moveTo(x, top);
+    element.updateCollapsatorZone(cfg, leftSide);
+
+    if (!element.isCollapsed()) {
+      final double insetH = cfg.getOtherLevelHorizontalInset() * cfg.getScale();
+      final double[] offsets = getData(cfg, element).childOffsets;
+      final List<Topic> topics = element.getModel().getChildren();
+      for (int i = 0; i < offsets.length; i++) {
+        final AbstractCollapsableElement child = (AbstractCollapsableElement) assertNotNull(topics.get(i).getPayload());
+        final double childX = leftSide ? x - insetH - child.getBlockSize().getWidth() : x + width + insetH;
+        alignBranch(cfg, child, leftSide, childX, calcChildBlockTop(child, top + offsets[i]));
+      }
+    }
+
+    element.fixAlignment(leftSide, leftX, topY);
+  }
+}
@@ -20,6 +20,7 @@ import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
 import com.igormaznitsa.mindmap.model.Topic;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
 
@@ -75,8 +76,13 @@ public class ElementLevelOther extends ElementLevelFirst {
   @Override
   public void doPaintConnectors(@Nonnull final MMGraphics g, final boolean leftDirection, @Nonnull final MindMapPanelConfig cfg) {
     final Rectangle2D source = new Rectangle2D.Double(this.bounds.getX() + this.collapsatorZone.getX(), this.bounds.getY() + this.collapsatorZone.getY(), this.collapsatorZone.getWidth(), this.collapsatorZone.getHeight());
+    final Rectangle clip = g.getClipBounds();
+    final double margin = cfg.safeScaleFloatValue(cfg.getConnectorWidth(), 0.1f);
     for (final Topic t : this.model.getChildren()) {
-      this.drawConnector(g, source, assertNotNull(((AbstractElement) t.getPayload())).getBounds(), leftDirection, cfg);
+      final Rectangle2D destination = assertNotNull(((AbstractElement) t.getPayload())).getBounds();
+      if (isConnectorVisible(clip, source, destination, margin)) {
+        this.drawConnector(g, source, destination, leftDirection, cfg);
+      }
     }
   }
   
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+import com.igormaznitsa.mindmap.model.Topic;
+
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Quadtree of bounds of visible elements, it allows to make search of elements for point and area without walking through the whole element tree. The tree is a snapshot of coordinates of elements and must be rebuilt after each layout.
+ *
+ * @since 1.4.1
+ */
+public final class ElementQuadTree {
+
+  private static final int MAX_ENTRIES_IN_NODE = 16;
+  private static final int MAX_DEPTH = 16;
+
+  private static final Comparator<Entry> ORDER_COMPARATOR = new Comparator<Entry>() {
+    @Override
+    public int compare(@Nonnull final Entry o1, @Nonnull final Entry o2) {
+      return o1.order < o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
+    }
+  };
+
+  private static final class Entry {
+
+    private final AbstractElement element;
+    private final int order;
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    private Entry(@Nonnull final AbstractElement element, final int order) {
+      this.element = element;
+      this.order = order;
+
+      final Rectangle2D bounds = element.getBounds();
+      double x1 = bounds.getMinX();
+      double y1 = bounds.getMinY();
+      double x2 = bounds.getMaxX();
+      double y2 = bounds.getMaxY();
+
+      if (element instanceof AbstractCollapsableElement && element.hasChildren()) {
+        final Rectangle2D collapsator = ((AbstractCollapsableElement) element).getCollapsatorArea();
+        x1 = Math.min(x1, bounds.getX() + collapsator.getMinX());
+        y1 = Math.min(y1, bounds.getY() + collapsator.getMinY());
+        x2 = Math.max(x2, bounds.getX() + collapsator.getMaxX());
+        y2 = Math.max(y2, bounds.getY() + collapsator.getMaxY());
+      }
+
+      this.minX = x1;
+      this.minY = y1;
+      this.maxX = x2;
+      this.maxY = y2;
+    }
+
+    private boolean isPointInside(final double x, final double y) {
+      final Rectangle2D bounds = this.element.getBounds();
+      boolean result = bounds.contains(x, y);
+      if (!result && this.element instanceof AbstractCollapsableElement && this.element.hasChildren()) {
+        result = ((AbstractCollapsableElement) this.element).getCollapsatorArea().contains(x - bounds.getX(), y - bounds.getY());
+      }
+      return result;
+    }
+  }
+
+  private static final class Node {
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final int depth;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private Node[] children;
+
+    private Node(final double minX, final double minY, final double maxX, final double maxY, final int depth) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      this.depth = depth;
+    }
+
+    private boolean contains(@Nonnull final Entry entry) {
+      return entry.minX >= this.minX && entry.maxX <= this.maxX && entry.minY >= this.minY && entry.maxY <= this.maxY;
+    }
+
+    private boolean intersects(final double x1, final double y1, final double x2, final double y2) {
+      return x1 <= this.maxX && x2 >= this.minX && y1 <= this.maxY && y2 >= this.minY;
+    }
+
+    private double distanceTo(final double x, final double y) {
+      final double dx = x < this.minX ? this.minX - x : (x > this.maxX ? x - this.maxX : 0.0d);
+      final double dy = y < this.minY ? this.minY - y : (y > this.maxY ? y - this.maxY : 0.0d);
+      return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    @Nullable
+    private Node findChildFor(@Nonnull final Entry entry) {
+      for (final Node c : this.children) {
+        if (c.contains(entry)) {
+          return c;
+        }
+      }
+      return null;
+    }
+
+    private void add(@Nonnull final Entry entry) {
+      Node node = this;
+      while (true) {
+        if (node.children == null) {
+          if (node.entries.size() < MAX_ENTRIES_IN_NODE || node.depth >= MAX_DEPTH) {
+            node.entries.add(entry);
+            return;
+          }
+          node.split();
+        }
+        final Node child = node.findChildFor(entry);
+        if (child == null) {
+          node.entries.add(entry);
+          return;
+        }
+        node = child;
+      }
+    }
+
+    private void split() {
+      final double cx = (this.minX + this.maxX) / 2;
+      final double cy = (this.minY + this.maxY) / 2;
+      final int nextDepth = this.depth + 1;
+      this.children = new Node[]{
+        new Node(this.minX, this.minY, cx, cy, nextDepth),
+        new Node(cx, this.minY, this.maxX, cy, nextDepth),
+        new Node(this.minX, cy, cx, this.maxY, nextDepth),
+        new Node(cx, cy, this.maxX, this.maxY, nextDepth)
+      };
+
+      final List<Entry> current = new ArrayList<Entry>(this.entries);
+      this.entries.clear();
+      for (final Entry e : current) {
+        final Node child = findChildFor(e);
+        if (child == null) {
+          this.entries.add(e);
+        } else {
+          child.entries.add(e);
+        }
+      }
+    }
+  }
+
+  private static final class NodeDistance implements Comparable<NodeDistance> {
+
+    private final Node node;
+    private final double distance;
+
+    private NodeDistance(@Nonnull final Node node, final double distance) {
+      this.node = node;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(@Nonnull final NodeDistance o) {
+      return Double.compare(this.distance, o.distance);
+    }
+  }
+
+  private final AbstractElement rootElement;
+  private final Node root;
+  private final int size;
+
+  /**
+   * Build index for visible elements of branch.
+   *
+   * @param rootElement root element of the branch, its topic must have payloads for all visible descendants
+   */
+  public ElementQuadTree(@Nonnull final AbstractElement rootElement) {
+    this.rootElement = rootElement;
+
+    final List<Entry> entries = new ArrayList<Entry>();
+    collectVisible(rootElement, entries);
+    this.size = entries.size();
+
+    double minX = Double.MAX_VALUE;
+    double minY = Double.MAX_VALUE;
+    double maxX = -Double.MAX_VALUE;
+    double maxY = -Double.MAX_VALUE;
+    for (final Entry e : entries) {
+      minX = Math.min(minX, e.minX);
+      minY = Math.min(minY, e.minY);
+      maxX = Math.max(maxX, e.maxX);
+      maxY = Math.max(maxY, e.maxY);
+    }
+
+    this.root = new Node(minX, minY, maxX, maxY, 0);
+    for (final Entry e : entries) {
+      this.root.add(e);
+    }
+  }
+
+  private static void collectVisible(@Nonnull final AbstractElement start, @Nonnull @MustNotContainNull final List<Entry> result) {
+    final List<AbstractElement> stack = new ArrayList<AbstractElement>();
+    stack.add(start);
+    while (!stack.isEmpty()) {
+      final AbstractElement element = stack.remove(stack.size() - 1);
+      result.add(new Entry(element, result.size()));
+      if (!element.isCollapsed()) {
+        final List<Topic> children = element.getModel().getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+          final AbstractElement child = (AbstractElement) children.get(i).getPayload();
+          if (child != null) {
+            stack.add(child);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get root element of the indexed branch.
+   *
+   * @return the root element
+   */
+  @Nonnull
+  public AbstractElement getRootElement() {
+    return this.rootElement;
+  }
+
+  /**
+   * Get number of indexed elements.
+   *
+   * @return number of elements in index
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Find element which area or collapsator contains point, the same as {@link AbstractElement#findForPoint(java.awt.Point)} for the root element but collapsator is checked only for elements which have children.
+   *
+   * @param point point to be checked, can be null
+   * @return found element or null
+   */
+  @Nullable
+  public AbstractElement findForPoint(@Nullable final Point point) {
+    if (point == null) {
+      return null;
+    }
+
+    final double x = point.getX();
+    final double y = point.getY();
+
+    Entry result = null;
+    final List<Node> nodes = new ArrayList<Node>();
+    nodes.add(this.root);
+
+    while (!nodes.isEmpty()) {
+      final Node node = nodes.remove(nodes.size() - 1);
+      if (node.intersects(x, y, x, y)) {
+        for (final Entry e : node.entries) {
+          if ((result == null || e.order < result.order) && e.isPointInside(x, y)) {
+            result = e;
+          }
+        }
+        if (node.children != null) {
+          Collections.addAll(nodes, node.children);
+        }
+      }
+    }
+    return result == null ? null : result.element;
+  }
+
+  /**
+   * Find nearest element to point, the same as {@link AbstractElement#findNearestOpenedTopicToPoint(com.igormaznitsa.mindmap.swing.panel.ui.AbstractElement, java.awt.Point)} for the root element.
+   *
+   * @param elementToIgnore element which should be ignored, can be null
+   * @param point point to find nearest element
+   * @return found element or null
+   */
+  @Nullable
+  public AbstractElement findNearestOpenedTopicToPoint(@Nullable final AbstractElement elementToIgnore, @Nonnull final Point point) {
+    final double x = point.getX();
+    final double y = point.getY();
+
+    Entry result = null;
+    double resultDistance = Double.MAX_VALUE;
+
+    final PriorityQueue<NodeDistance> queue = new PriorityQueue<NodeDistance>();
+    queue.add(new NodeDistance(this.root, this.root.distanceTo(x, y)));
+
+    while (!queue.isEmpty()) {
+      final NodeDistance next = queue.poll();
+      if (next.distance > resultDistance) {
+        break;
+      }
+
+      for (final Entry e : next.node.entries) {
+        if (e.element != elementToIgnore) {
+          final double distance = e.element.calcAverageDistanceToPoint(point);
+          if (distance < resultDistance || (distance == resultDistance && result != null && e.order < result.order)) {
+            result = e;
+            resultDistance = distance;
+          }
+        }
+      }
+
+      if (next.node.children != null) {
+        for (final Node c : next.node.children) {
+          final double distance = c.distanceTo(x, y);
+          if (distance <= resultDistance) {
+            queue.add(new NodeDistance(c, distance));
+          }
+        }
+      }
+    }
+    return result == null ? null : result.element;
+  }
+
+  /**
+   * Find all topics which elements are fully covered by rectangle.
+   *
+   * @param rect rectangle to check elements
+   * @return list of covered topics in the order of the tree walk
+   */
+  @Nonnull
+  @MustNotContainNull
+  public List<Topic> findCoveredTopics(@Nonnull final Rectangle2D rect) {
+    final double x1 = rect.getMinX();
+    final double y1 = rect.getMinY();
+    final double x2 = rect.getMaxX();
+    final double y2 = rect.getMaxY();
+
+    final List<Entry> found = new ArrayList<Entry>();
+    final List<Node> nodes = new ArrayList<Node>();
+    nodes.add(this.root);
+
+    while (!nodes.isEmpty()) {
+      final Node node = nodes.remove(nodes.size() - 1);
+      if (node.intersects(x1, y1, x2, y2)) {
+        for (final Entry e : node.entries) {
+          if (rect.contains(e.element.getBounds())) {
+            found.add(e);
+          }
+        }
+        if (node.children != null) {
+          Collections.addAll(nodes, node.children);
+        }
+      }
+    }
+
+    Collections.sort(found, ORDER_COMPARATOR);
+
+    final List<Topic> result = new ArrayList<Topic>(found.size());
+    for (final Entry e : found) {
+      result.add(e.element.getModel());
+    }
+    return result;
+  }
+}
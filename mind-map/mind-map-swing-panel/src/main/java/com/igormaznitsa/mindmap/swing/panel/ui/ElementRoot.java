@@ -114,64 +114,6 @@ public final class ElementRoot extends AbstractElement {
     g.drawCurve(startX, source.getCenterY(), destination.getCenterX(), destination.getCenterY(), cfg.getConnectorColor());
   }
 
-  private double calcTotalChildrenHeight(final double vertInset, final boolean left) {
-    double result = 0.0d;
-    boolean nonfirst = false;
-    for (final Topic t : this.model.getChildren()) {
-      final AbstractCollapsableElement w = assertNotNull((AbstractCollapsableElement) t.getPayload());
-      final boolean lft = w.isLeftDirection();
-      if ((left && lft) || (!left && !lft)) {
-        if (nonfirst) {
-          result += vertInset;
-        }
-        else {
-          nonfirst = true;
-        }
-        result += w.getBlockSize().getHeight();
-      }
-    }
-    return result;
-  }
-
-  @Override
-  public void alignElementAndChildren(@Nonnull final MindMapPanelConfig cfg, final boolean leftSide, final double cx, final double cy) {
-    super.alignElementAndChildren(cfg, leftSide, cx, cy);
-    
-    final double dx = cx;
-    final double dy = cy;
-    this.moveTo(dx, dy);
-
-    final double insetVert = cfg.getFirstLevelVerticalInset() * cfg.getScale();
-    final double insetHorz = cfg.getFirstLevelHorizontalInset() * cfg.getScale();
-
-    final double leftHeight = calcTotalChildrenHeight(insetVert, true);
-    final double rightHeight = calcTotalChildrenHeight(insetVert, false);
-
-    if (leftHeight > 0.0d) {
-      final double ddx = dx - insetHorz;
-      double ddy = dy - (leftHeight - this.bounds.getHeight()) / 2;
-      for (final Topic t : this.model.getChildren()) {
-        final AbstractCollapsableElement c = assertNotNull((AbstractCollapsableElement) t.getPayload());
-        if (c.isLeftDirection()) {
-          c.alignElementAndChildren(cfg, true, ddx - c.getBlockSize().getWidth(), ddy);
-          ddy += c.getBlockSize().getHeight() + insetVert;
-        }
-      }
-    }
-
-    if (rightHeight > 0.0d) {
-      final double ddx = dx + this.bounds.getWidth() + insetHorz;
-      double ddy = dy - (rightHeight - this.bounds.getHeight()) / 2;
-      for (final Topic t : this.model.getChildren()) {
-        final AbstractCollapsableElement c = assertNotNull((AbstractCollapsableElement) t.getPayload());
-        if (!c.isLeftDirection()) {
-          c.alignElementAndChildren(cfg, false, ddx, ddy);
-          ddy += c.getBlockSize().getHeight() + insetVert;
-        }
-      }
-    }
-  }
-
   @Override
   public void updateElementBounds(@Nonnull final MMGraphics gfx, @Nonnull final MindMapPanelConfig cfg) {
     super.updateElementBounds(gfx, cfg);
@@ -179,6 +121,11 @@ public final class ElementRoot extends AbstractElement {
     this.bounds.setRect(this.bounds.getX(), this.bounds.getY(), this.bounds.getWidth() + marginOffset, this.bounds.getHeight() + marginOffset);
   }
 
+  @Override
+  protected double calcBlockX() {
+    return this.bounds.getX() - this.leftBlockSize.getWidth();
+  }
+
   @Nonnull
   public Dimension2D getLeftBlockSize() {
     return this.leftBlockSize;
@@ -191,11 +138,11 @@ public final class ElementRoot extends AbstractElement {
 
   @Override
   @Nonnull
-  public Dimension2D calcBlockSize(@Nonnull final MindMapPanelConfig cfg, @Nonnull final Dimension2D size, final boolean childrenOnly) {
+  public Dimension2D calcBlockSize(@Nonnull final MindMapPanelConfig cfg, @Nullable final Dimension2D size, final boolean childrenOnly) {
     final double insetV = cfg.getScale() * cfg.getFirstLevelVerticalInset();
     final double insetH = cfg.getScale() * cfg.getFirstLevelHorizontalInset();
 
-    final Dimension2D result = size;
+    final Dimension2D result = size == null ? new Dimension() : size;
 
     double leftWidth = 0.0d;
     double leftHeight = 0.0d;
@@ -208,11 +155,11 @@ public final class ElementRoot extends AbstractElement {
     for (final Topic t : this.model.getChildren()) {
       final ElementLevelFirst w = assertNotNull((ElementLevelFirst) t.getPayload());
 
-      w.calcBlockSize(cfg, result, false);
+      final Dimension2D childBlockSize = w.getBlockSize();
 
       if (w.isLeftDirection()) {
-        leftWidth = Math.max(leftWidth, result.getWidth());
-        leftHeight += result.getHeight();
+        leftWidth = Math.max(leftWidth, childBlockSize.getWidth());
+        leftHeight += childBlockSize.getHeight();
         if (nonfirstOnLeft) {
           leftHeight += insetV;
         }
@@ -221,8 +168,8 @@ public final class ElementRoot extends AbstractElement {
         }
       }
       else {
-        rightWidth = Math.max(rightWidth, result.getWidth());
-        rightHeight += result.getHeight();
+        rightWidth = Math.max(rightWidth, childBlockSize.getWidth());
+        rightHeight += childBlockSize.getHeight();
         if (nonfirstOnRight) {
           rightHeight += insetV;
         }
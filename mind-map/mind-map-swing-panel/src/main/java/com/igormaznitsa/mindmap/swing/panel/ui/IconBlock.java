@@ -68,7 +68,9 @@ public class IconBlock {
       final double scaledIconHeight = ScalableIcon.BASE_HEIGHT * this.scale;
       this.bounds.setRect(0d, 0d, scaledIconWidth * numberOfIcons, scaledIconHeight);
       this.contentPresented = true;
-      this.currentExtras = new Extra<?>[numberOfIcons];
+      if (this.currentExtras == null || this.currentExtras.length != numberOfIcons) {
+        this.currentExtras = new Extra<?>[numberOfIcons];
+      }
       int index = 0;
       for(final Extra<?> e : this.model.getExtras().values()){
         this.currentExtras[index++] = e;
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import javax.annotation.Nonnull;
+
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
+
+/**
+ * Engine to place elements of mind map. Layout is made in two passes, at first block sizes are calculated bottom-up for every element (children are always processed before their parent), then elements are placed top-down starting from the root.
+ *
+ * @since 1.4.1
+ */
+public interface LayoutEngine {
+
+  /**
+   * Calculate and save block size of element, block sizes of its children are already calculated by the engine. The block must contain the element and all its visible descendants, the element must be in the vertical center of the block.
+   *
+   * @param cfg configuration
+   * @param element element to be processed
+   */
+  void calcBlockSize(@Nonnull MindMapPanelConfig cfg, @Nonnull AbstractElement element);
+
+  /**
+   * Place element and its visible descendants.
+   *
+   * @param cfg configuration
+   * @param element element to be placed
+   * @param leftSide direction of the branch
+   * @param x x coordinate of the element block, for the root it is x coordinate of the root element
+   * @param y y coordinate of the element block, for the root it is y coordinate of the root element
+   */
+  void alignElementAndChildren(@Nonnull MindMapPanelConfig cfg, @Nonnull AbstractElement element, boolean leftSide, double x, double y);
+}
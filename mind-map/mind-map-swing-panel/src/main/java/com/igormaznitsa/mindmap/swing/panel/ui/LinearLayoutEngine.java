@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import java.awt.geom.Dimension2D;
+
+import javax.annotation.Nonnull;
+
+import com.igormaznitsa.mindmap.model.Topic;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Default layout engine, children of every element are placed in column one by one and the column is centered vertically to the element. Every element is processed only once during each pass.
+ *
+ * @since 1.4.1
+ */
+public final class LinearLayoutEngine implements LayoutEngine {
+
+  public static final LinearLayoutEngine INSTANCE = new LinearLayoutEngine();
+
+  private LinearLayoutEngine() {
+  }
+
+  @Override
+  public void calcBlockSize(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element) {
+    element.calcBlockSize(cfg, element.blockSize, false);
+    element.setLayoutData(null);
+  }
+
+  @Override
+  public void alignElementAndChildren(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractElement element, final boolean leftSide, final double x, final double y) {
+    if (element instanceof ElementRoot) {
+      alignRoot(cfg, (ElementRoot) element, x, y);
+    } else {
+      alignBranch(cfg, (AbstractCollapsableElement) element, leftSide, x, y);
+    }
+  }
+
+  private static double calcTotalChildrenHeight(@Nonnull final ElementRoot root, final double vertInset, final boolean left) {
+    double result = 0.0d;
+    boolean nonfirst = false;
+    for (final Topic t : root.getModel().getChildren()) {
+      final AbstractCollapsableElement w = assertNotNull((AbstractCollapsableElement) t.getPayload());
+      final boolean lft = w.isLeftDirection();
+      if ((left && lft) || (!left && !lft)) {
+        if (nonfirst) {
+          result += vertInset;
+        } else {
+          nonfirst = true;
+        }
+        result += w.getBlockSize().getHeight();
+      }
+    }
+    return result;
+  }
+
+  private void alignRoot(@Nonnull final MindMapPanelConfig cfg, @Nonnull final ElementRoot root, final double cx, final double cy) {
+    root.alignInnerBlocks(cfg);
+
+    final double dx = cx;
+    final double dy = cy;
+    root.moveTo(dx, dy);
+
+    final double insetVert = cfg.getFirstLevelVerticalInset() * cfg.getScale();
+    final double insetHorz = cfg.getFirstLevelHorizontalInset() * cfg.getScale();
+
+    final double leftHeight = calcTotalChildrenHeight(root, insetVert, true);
+    final double rightHeight = calcTotalChildrenHeight(root, insetVert, false);
+
+    if (leftHeight > 0.0d) {
+      final double ddx = dx - insetHorz;
+      double ddy = dy - (leftHeight - root.bounds.getHeight()) / 2;
+      for (final Topic t : root.getModel().getChildren()) {
+        final AbstractCollapsableElement c = assertNotNull((AbstractCollapsableElement) t.getPayload());
+        if (c.isLeftDirection()) {
+          alignBranch(cfg, c, true, ddx - c.getBlockSize().getWidth(), ddy);
+          ddy += c.getBlockSize().getHeight() + insetVert;
+        }
+      }
+    }
+
+    if (rightHeight > 0.0d) {
+      final double ddx = dx + root.bounds.getWidth() + insetHorz;
+      double ddy = dy - (rightHeight - root.bounds.getHeight()) / 2;
+      for (final Topic t : root.getModel().getChildren()) {
+        final AbstractCollapsableElement c = assertNotNull((AbstractCollapsableElement) t.getPayload());
+        if (!c.isLeftDirection()) {
+          alignBranch(cfg, c, false, ddx, ddy);
+          ddy += c.getBlockSize().getHeight() + insetVert;
+        }
+      }
+    }
+  }
+
+  private void alignBranch(@Nonnull final MindMapPanelConfig cfg, @Nonnull final AbstractCollapsableElement element, final boolean leftSide, final double leftX, final double topY) {
+    if (element.reuseAlignment(leftSide, leftX, topY)) {
+      return;
+    }
+
+    element.alignInnerBlocks(cfg);
+
+    final double horzInset = cfg.getOtherLevelHorizontalInset() * cfg.getScale();
+    final Dimension2D blockSize = element.getBlockSize();
+    final double elementWidth = element.bounds.getWidth();
+    final double elementHeight = element.bounds.getHeight();
+
+    double childrenX;
+
+    if (leftSide) {
+      childrenX = leftX + blockSize.getWidth() - elementWidth;
+      element.moveTo(childrenX, topY + (blockSize.getHeight() - elementHeight) / 2);
+      childrenX -= horzInset;
+    } else {
+      childrenX = leftX;
+      element.moveTo(childrenX, topY + (blockSize.getHeight() - elementHeight) / 2);
+      childrenX += elementWidth + horzInset;
+    }
+
+    element.updateCollapsatorZone(cfg, leftSide);
+
+    if (!element.isCollapsed()) {
+      final double vertInset = cfg.getOtherLevelVerticalInset() * cfg.getScale();
+
+      final Dimension2D childBlockSize = element.calcBlockSize(cfg, null, true);
+      double currentY = topY + (blockSize.getHeight() - childBlockSize.getHeight()) / 2.0d;
+
+      boolean notFirstChild = false;
+
+      for (final Topic t : element.getModel().getChildren()) {
+        if (notFirstChild) {
+          currentY += vertInset;
+        } else {
+          notFirstChild = true;
+        }
+        final AbstractCollapsableElement w = (AbstractCollapsableElement) assertNotNull(t.getPayload());
+        alignBranch(cfg, w, leftSide, leftSide ? childrenX - w.getBlockSize().getWidth() : childrenX, currentY);
+        currentY += w.getBlockSize().getHeight();
+      }
+    }
+
+    element.fixAlignment(leftSide, leftX, topY);
+  }
+}
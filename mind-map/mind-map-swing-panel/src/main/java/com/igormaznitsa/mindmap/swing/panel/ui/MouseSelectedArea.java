@@ -62,6 +62,26 @@ public class MouseSelectedArea {
     return result;
   }
 
+  /**
+   * Get all topics which elements are covered by the area, the index is used if it is provided.
+   *
+   * @param map mind map
+   * @param index spatial index of elements of the map, can be null
+   * @return list of covered topics
+   * @since 1.4.1
+   */
+  @Nonnull
+  @MustNotContainNull
+  public List<Topic> getAllSelectedElements(@Nonnull final MindMap map, @Nullable final ElementQuadTree index) {
+    final List<Topic> result;
+    if (index == null) {
+      result = getAllSelectedElements(map);
+    } else {
+      result = index.findCoveredTopics(asRectangle().getBounds2D());
+    }
+    return result;
+  }
+
   private void addCoveredToList(@Nonnull @MustNotContainNull final List<Topic> list, @Nullable final Topic root, @Nonnull final Rectangle2D rect) {
     if (root == null || root.getPayload() == null) {
       return;
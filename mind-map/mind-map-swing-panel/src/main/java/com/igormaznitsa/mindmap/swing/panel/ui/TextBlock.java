@@ -21,6 +21,7 @@ import static com.igormaznitsa.mindmap.model.ModelUtils.breakToLines;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Rectangle2D;
 
 import javax.annotation.Nonnull;
@@ -29,6 +30,7 @@ import javax.swing.text.JTextComponent;
 
 import com.igormaznitsa.meta.common.utils.Assertions;
 import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.TextMetricsCache;
 
 public final class TextBlock implements Cloneable {
 
@@ -36,19 +38,24 @@ public final class TextBlock implements Cloneable {
 
     private final Rectangle2D bounds;
     private final String line;
+    private final GlyphVector glyphs;
 
-    private Line(@Nonnull final String line, @Nonnull final Rectangle2D bounds) {
+    private Line(@Nonnull final String line, @Nonnull final Rectangle2D bounds, @Nullable final GlyphVector glyphs) {
       this.bounds = bounds;
       this.line = line;
+      this.glyphs = glyphs;
     }
   }
 
   private String text;
   private Line[] lines;
+  private String[] brokenText;
   private Font font;
   private float maxLineAscent;
   private final Rectangle2D bounds = new Rectangle2D.Double();
   private TextAlign textAlign;
+  private Font baseFont;
+  private double baseScale;
   
   private static final Rectangle2D ZERO = new Rectangle2D.Float();
 
@@ -59,6 +66,9 @@ public final class TextBlock implements Cloneable {
     this.maxLineAscent = orig.maxLineAscent;
     this.bounds.setRect(orig.getBounds());
     this.textAlign = orig.textAlign;
+    this.baseFont = orig.baseFont;
+    this.baseScale = orig.baseScale;
+    this.brokenText = orig.brokenText;
   }
   
   public TextBlock(@Nonnull final String text, @Nonnull final TextAlign justify) {
@@ -67,8 +77,12 @@ public final class TextBlock implements Cloneable {
   }
 
   public void updateText(@Nullable final String text) {
-    this.text = text == null ? "" : text; //NOI18N
-    invalidate();
+    final String newText = text == null ? "" : text; //NOI18N
+    if (!newText.equals(this.text)) {
+      this.text = newText;
+      this.brokenText = null;
+      invalidate();
+    }
   }
 
   public void fillByTextAndFont(@Nonnull final JTextComponent compo) {
@@ -88,7 +102,6 @@ public final class TextBlock implements Cloneable {
   
   public void setTextAlign(@Nullable final TextAlign textAlign){
     this.textAlign = textAlign == null ? TextAlign.CENTER : textAlign;
-    invalidate();
   }
   
   public void invalidate() {
@@ -100,7 +113,12 @@ public final class TextBlock implements Cloneable {
   }
   
   public void updateSize(@Nonnull final MMGraphics gfx, @Nonnull final MindMapPanelConfig cfg) {
-      this.font = cfg.getFont().deriveFont(cfg.safeScaleFloatValue(cfg.getFont().getSize2D(),2f));
+      if (this.lines != null && this.font != null && cfg.getFont() == this.baseFont && Double.compare(cfg.getScale(), this.baseScale) == 0) {
+        return;
+      }
+      this.baseFont = cfg.getFont();
+      this.baseScale = cfg.getScale();
+      this.font = TextMetricsCache.getInstance().deriveFont(cfg.getFont(), cfg.safeScaleFloatValue(cfg.getFont().getSize2D(),2f));
       gfx.setFont(font);
       
       this.maxLineAscent = gfx.getFontMaxAscent();
@@ -108,7 +126,10 @@ public final class TextBlock implements Cloneable {
       float maxWidth = 0.0f;
       float maxHeight = 0.0f;
 
-      final String[] brokenText = breakToLines(this.text);
+      if (this.brokenText == null) {
+        this.brokenText = breakToLines(this.text);
+      }
+      final String[] brokenText = this.brokenText;
 
       this.lines = new Line[brokenText.length];
 
@@ -119,7 +140,7 @@ public final class TextBlock implements Cloneable {
           maxWidth = (float) lineBounds.getWidth();
         }
         maxHeight += (float) lineBounds.getHeight();
-        this.lines[index++] = new Line(s, lineBounds);
+        this.lines[index++] = new Line(s, lineBounds, gfx.makeGlyphVector(s));
       }
       this.bounds.setRect(0f, 0f, maxWidth, maxHeight);
   }
@@ -147,7 +168,11 @@ public final class TextBlock implements Cloneable {
             throw new Error("unexpected situation #283794"); //NOI18N
         }
 
-        gfx.drawString(l.line, (int)Math.round(drawX), (int)Math.round(posy),color);
+        if (l.glyphs == null) {
+          gfx.drawString(l.line, (int)Math.round(drawX), (int)Math.round(posy),color);
+        } else {
+          gfx.drawGlyphVector(l.glyphs, l.line, (int)Math.round(drawX), (int)Math.round(posy),color);
+        }
         posy += l.bounds.getHeight();
       }
     }
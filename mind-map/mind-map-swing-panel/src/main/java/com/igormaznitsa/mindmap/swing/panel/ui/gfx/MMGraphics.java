@@ -20,6 +20,7 @@ import java.awt.Font;
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Rectangle2D;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -55,9 +56,37 @@ public interface MMGraphics {
 
   void setClip(int x, int y, int w, int h);
 
+  /**
+   * Get bounds of string drawn by current font.
+   *
+   * @param s text to be measured
+   * @return bounds of the string, the returned object belongs to the caller and can be changed without side effects
+   */
   @Nonnull
   Rectangle2D getStringBounds(@Nonnull String s);
 
   void drawString(@Nonnull String text, int x, int y, @Nullable Color fill);
 
+  /**
+   * Make glyph vector of text for current font, it allows to paint the same text many times without new layout of glyphs. The glyph vector must be shaped in the same way as {@link #drawString(java.lang.String, int, int, java.awt.Color)} draws the text.
+   *
+   * @param text text to be converted
+   * @return glyph vector or null if the graphics doesn't support glyph vectors or the text must be drawn as string (for instance it needs bidi reordering)
+   * @since 1.4.1
+   */
+  @Nullable
+  GlyphVector makeGlyphVector(@Nonnull String text);
+
+  /**
+   * Draw glyph vector made by {@link #makeGlyphVector(java.lang.String)}.
+   *
+   * @param glyphs glyph vector to be drawn
+   * @param text text of the glyph vector, it can be drawn instead of the glyph vector
+   * @param x x coordinate of base line start
+   * @param y y coordinate of base line
+   * @param fill color of text, if null then nothing drawn
+   * @since 1.4.1
+   */
+  void drawGlyphVector(@Nonnull GlyphVector glyphs, @Nonnull String text, int x, int y, @Nullable Color fill);
+
 }
@@ -23,8 +23,10 @@ import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
+import java.text.Bidi;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -164,13 +166,13 @@ public class MMGraphics2DWrapper implements MMGraphics {
 
   @Override
   public float getFontMaxAscent() {
-    return this.wrapped.getFontMetrics().getMaxAscent();
+    return TextMetricsCache.getInstance().getMaxAscent(this.wrapped);
   }
 
   @Override
   @Nonnull
   public Rectangle2D getStringBounds(@Nonnull final String str) {
-    return this.wrapped.getFontMetrics().getStringBounds(str, this.wrapped);
+    return (Rectangle2D) TextMetricsCache.getInstance().getStringBounds(this.wrapped, str).clone();
   }
 
   @Override
@@ -178,6 +180,25 @@ public class MMGraphics2DWrapper implements MMGraphics {
     this.wrapped.setFont(font);
   }
 
+  @Override
+  @Nullable
+  public GlyphVector makeGlyphVector(@Nonnull final String text) {
+    final char[] chars = text.toCharArray();
+    if (Bidi.requiresBidi(chars, 0, chars.length)) {
+      // right-to-left text is drawn as string to get bidi reordering
+      return null;
+    }
+    return this.wrapped.getFont().layoutGlyphVector(this.wrapped.getFontRenderContext(), chars, 0, chars.length, Font.LAYOUT_LEFT_TO_RIGHT);
+  }
+
+  @Override
+  public void drawGlyphVector(@Nonnull final GlyphVector glyphs, @Nonnull final String text, final int x, final int y, @Nullable final Color color) {
+    if (color != null) {
+      this.wrapped.setColor(color);
+      this.wrapped.drawGlyphVector(glyphs, x, y);
+    }
+  }
+
   @Override
   public void drawString(@Nonnull final String text, final int x, final int y, @Nullable Color color) {
     if (color != null) {
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui.gfx;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of derived fonts and text metrics with LRU eviction. Metrics are kept for font, font render context and text so that the same strings are not measured again during re-layout.
+ *
+ * @since 1.4.1
+ */
+public final class TextMetricsCache {
+
+  private static final int DEFAULT_MAX_ENTRIES = 8192;
+
+  private static final TextMetricsCache INSTANCE = new TextMetricsCache(DEFAULT_MAX_ENTRIES);
+
+  private static final int KIND_FONT = 0;
+  private static final int KIND_ASCENT = 1;
+  private static final int KIND_BOUNDS = 2;
+
+  private static final class Key {
+
+    private final int kind;
+    private final Font font;
+    private final Object context;
+    private final String text;
+    private final int hash;
+
+    private Key(final int kind, @Nonnull final Font font, @Nonnull final Object context, @Nullable final String text) {
+      this.kind = kind;
+      this.font = font;
+      this.context = context;
+      this.text = text;
+      this.hash = ((kind * 31 + font.hashCode()) * 31 + context.hashCode()) * 31 + (text == null ? 0 : text.hashCode());
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) obj;
+      return this.hash == that.hash
+          && this.kind == that.kind
+          && this.font.equals(that.font)
+          && this.context.equals(that.context)
+          && (this.text == null ? that.text == null : this.text.equals(that.text));
+    }
+  }
+
+  private final Map<Key, Object> cache;
+
+  private long hits;
+  private long misses;
+
+  /**
+   * Make new cache.
+   *
+   * @param maxEntries max number of entries in the cache, the least recently used entries are removed if the cache becomes bigger
+   */
+  public TextMetricsCache(final int maxEntries) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Max number of entries must be greater than zero"); //NOI18N
+    }
+    this.cache = new LinkedHashMap<Key, Object>(Math.min(maxEntries, 1024), 0.75f, true) {
+      private static final long serialVersionUID = -4216710437869234181L;
+
+      @Override
+      protected boolean removeEldestEntry(@Nonnull final Map.Entry<Key, Object> eldest) {
+        return this.size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Get the shared cache.
+   *
+   * @return the shared cache instance
+   */
+  @Nonnull
+  public static TextMetricsCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Get font derived from base font for size.
+   *
+   * @param base base font
+   * @param size size of derived font
+   * @return derived font
+   */
+  @Nonnull
+  public synchronized Font deriveFont(@Nonnull final Font base, final float size) {
+    final Key key = new Key(KIND_FONT, base, Float.valueOf(size), null);
+    Font result = (Font) this.cache.get(key);
+    if (result == null) {
+      this.misses++;
+      result = base.deriveFont(size);
+      this.cache.put(key, result);
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Get max ascent of current font of graphics.
+   *
+   * @param gfx graphics which font should be used
+   * @return max ascent of the font
+   */
+  public synchronized float getMaxAscent(@Nonnull final Graphics2D gfx) {
+    final Font font = gfx.getFont();
+    final FontRenderContext context = gfx.getFontRenderContext();
+    final Key key = new Key(KIND_ASCENT, font, context, null);
+    Float result = (Float) this.cache.get(key);
+    if (result == null) {
+      this.misses++;
+      result = Float.valueOf(gfx.getFontMetrics(font).getMaxAscent());
+      this.cache.put(key, result);
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Get bounds of string drawn by current font of graphics.
+   *
+   * @param gfx graphics which font should be used
+   * @param text text to be measured
+   * @return bounds of the string, the returned object is shared and must not be changed
+   */
+  @Nonnull
+  public synchronized Rectangle2D getStringBounds(@Nonnull final Graphics2D gfx, @Nonnull final String text) {
+    final Font font = gfx.getFont();
+    final FontRenderContext context = gfx.getFontRenderContext();
+    final Key key = new Key(KIND_BOUNDS, font, context, text);
+    Rectangle2D result = (Rectangle2D) this.cache.get(key);
+    if (result == null) {
+      this.misses++;
+      result = gfx.getFontMetrics(font).getStringBounds(text, gfx);
+      this.cache.put(key, result);
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Get number of requests served from the cache.
+   *
+   * @return number of cache hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get number of requests which needed calculation.
+   *
+   * @return number of cache misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  public synchronized int size() {
+    return this.cache.size();
+  }
+
+  public synchronized void clear() {
+    this.cache.clear();
+    this.hits = 0L;
+    this.misses = 0L;
+  }
+}
@@ -43,7 +43,7 @@ public final class MindMapUtils {
     if (topic == null) {
       return true;
     }
-    final String collapsed = topic.findAttributeInAncestors(ATTR_COLLAPSED.getText());
+    final String collapsed = topic.getMap().findAttributeInAncestors(topic, ATTR_COLLAPSED.getText());
     return collapsed != null && Boolean.parseBoolean(collapsed);
   }
 
@@ -274,7 +274,7 @@ public final class MindMapUtils {
       final Iterator<Topic> iterator = result.iterator();
       while(iterator.hasNext()){
         final Topic listed = iterator.next();
-        if (listed == t || listed.hasAncestor(t)){
+        if (listed == t || (listed.getMap() == t.getMap() && t.getMap().isAncestor(t, listed))){
           iterator.remove();
         }
       }
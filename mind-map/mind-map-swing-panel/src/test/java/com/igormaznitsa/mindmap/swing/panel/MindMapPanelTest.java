@@ -16,8 +16,36 @@
 package com.igormaznitsa.mindmap.swing.panel;
 
 import static org.junit.Assert.*;
+import org.junit.Assume;
 import org.junit.Test;
 import static org.mockito.Mockito.*;
+import com.igormaznitsa.mindmap.model.MindMap;
+import com.igormaznitsa.mindmap.model.Topic;
+import com.igormaznitsa.mindmap.swing.panel.ui.AbstractElement;
+import com.igormaznitsa.mindmap.swing.panel.ui.CompactLayoutEngine;
+import com.igormaznitsa.mindmap.swing.panel.ui.ElementLevelFirst;
+import com.igormaznitsa.mindmap.swing.panel.ui.LinearLayoutEngine;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics2DWrapper;
+import com.igormaznitsa.mindmap.swing.panel.utils.MindMapUtils;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Dimension2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.awt.Color;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.swing.SwingUtilities;
 
 public class MindMapPanelTest {
 
@@ -33,4 +61,471 @@ public class MindMapPanelTest {
     assertNotSame(config,panel.getConfiguration());
   }
   
+  @Test
+  public void testInvalidate_NextPaintLaysOutPanelAgain() throws Exception {
+    final MindMapPanelConfig config = new MindMapPanelConfig();
+    final MindMapPanelController controller = mock(MindMapPanelController.class);
+    when(controller.provideConfigForMindMapPanel(any(MindMapPanel.class))).thenReturn(config);
+
+    final BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+    final MindMapPanel panel = new MindMapPanel(controller) {
+      @Override
+      public Graphics getGraphics() {
+        return image.createGraphics();
+      }
+    };
+    final MindMap map = makeTestMap();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    SwingUtilities.invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          panel.setModel(map);
+          panel.updateElementsAndSizeForCurrentGraphics(true, false);
+          assertTrue(panel.isValid());
+          final Topic root = map.getRoot();
+          final AbstractElement rootElement = (AbstractElement) root.getPayload();
+          final double width = rootElement.getBounds().getWidth();
+
+          final Topic added = new Topic(map, root, "added externally");
+          panel.setScale(2.0d);
+          assertFalse(panel.isValid());
+          assertTrue(panel.updateElementsAndSizeForCurrentGraphics(false, false));
+          assertTrue(panel.isValid());
+
+          assertSame(rootElement, root.getPayload());
+          assertNotNull(added.getPayload());
+          assertTrue(rootElement.getBounds().getWidth() > width);
+          assertFalse(rootElement.isDirty());
+        } catch (Throwable ex) {
+          error.set(ex);
+        }
+      }
+    });
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+  }
+
+  @Test
+  public void testRenderingOfSnapshot_InPrivateWorkMaps() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = makeTestMap();
+    MindMapUtils.setCollapsed(map.getRoot().getFirst(), true);
+    final MindMap snapshot = map.snapshot();
+
+    final MindMap workMap = MindMapPanel.makeMapForRendering(snapshot, false);
+    assertNotSame(snapshot, workMap);
+    assertNotSame(workMap, MindMapPanel.makeMapForRendering(snapshot, false));
+    assertFalse(workMap.isReadOnly());
+    assertTrue(MindMapUtils.isCollapsed(workMap.getRoot().getFirst()));
+    final MindMap expanded = MindMapPanel.makeMapForRendering(snapshot, true);
+    assertFalse(MindMapUtils.isCollapsed(expanded.getRoot().getFirst()));
+    assertTrue(MindMapUtils.isCollapsed(snapshot.getRoot().getFirst()));
+
+    final Dimension2D collapsedSize = MindMapPanel.calculateSizeOfMapInPixels(snapshot, cfg, false);
+    final Dimension2D expandedSize = MindMapPanel.calculateSizeOfMapInPixels(snapshot, cfg, true);
+    assertNotNull(collapsedSize);
+    assertNotNull(expandedSize);
+    assertTrue(expandedSize.getHeight() > collapsedSize.getHeight());
+    assertEquals(collapsedSize, MindMapPanel.calculateSizeOfWorkMapInPixels(workMap, cfg));
+    assertNotNull(workMap.getRoot().getPayload());
+
+    final BufferedImage image = MindMapPanel.renderMindMapAsImage(snapshot, cfg, false);
+    assertNotNull(image);
+    assertEquals((int) collapsedSize.getWidth(), image.getWidth());
+    for (final Topic t : snapshot) {
+      assertNull(t.getPayload());
+    }
+    assertTrue(MindMapUtils.isCollapsed(map.getRoot().getFirst()));
+    assertSame(snapshot, map.snapshot());
+  }
+
+  @Test
+  public void testRenderingOfSnapshot_ConcurrentRenderingsGiveSameResult() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = makeTestMap();
+    for (int i = 0; i < 50; i++) {
+      new Topic(map, map.getRoot().getLast(), "topic " + i); //NOI18N
+    }
+    final MindMap snapshot = map.snapshot();
+    final Dimension2D expected = MindMapPanel.calculateSizeOfMapInPixels(snapshot, cfg, false);
+    assertNotNull(expected);
+
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final boolean image = i % 2 == 0;
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 20; j++) {
+              if (image) {
+                final BufferedImage rendered = MindMapPanel.renderMindMapAsImage(snapshot, cfg, false);
+                assertEquals((int) expected.getWidth(), rendered.getWidth());
+                assertEquals((int) expected.getHeight(), rendered.getHeight());
+              } else {
+                assertEquals(expected, MindMapPanel.calculateSizeOfMapInPixels(snapshot, cfg, false));
+              }
+            }
+          } catch (Throwable ex) {
+            error.set(ex);
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (final Thread t : threads) {
+      t.join(60000L);
+    }
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+  }
+
+  private static MindMap makeTestMap() throws Exception {
+    return new MindMap(null, new StringReader("Mind Map generated by NB MindMap plugin\n> __version__=`1.1`\n---\n# root\n## first\n### first1\n### first2\n#### first21\n## second\n### second1\n## third\n"));
+  }
+
+  private static List<Rectangle2D> collectBounds(final MindMap map) {
+    final List<Rectangle2D> result = new ArrayList<Rectangle2D>();
+    for (final Topic t : map) {
+      if (MindMapUtils.isHidden(t)) {
+        continue;
+      }
+      final Rectangle2D bounds = ((AbstractElement) t.getPayload()).getBounds();
+      result.add(new Rectangle2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight()));
+    }
+    return result;
+  }
+
+  private static void layout(final MindMap map, final MindMapPanelConfig cfg) {
+    final BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    try {
+      final MMGraphics gfx = new MMGraphics2DWrapper(g);
+      assertTrue(MindMapPanel.calculateElementSizes(gfx, map, cfg));
+      assertNotNull(MindMapPanel.layoutModelElements(map, cfg));
+    } finally {
+      g.dispose();
+    }
+  }
+
+  @Test
+  public void testIncrementalLayout_ReusesCleanElementsAndGivesSameResultAsFullLayout() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = makeTestMap();
+    layout(map, cfg);
+
+    final Topic root = map.getRoot();
+    final Topic first = root.getFirst();
+    final Topic second = root.getChildren().get(1);
+    final AbstractElement secondElement = (AbstractElement) second.getPayload();
+
+    final AbstractElement edited = (AbstractElement) first.getChildren().get(1).getFirst().getPayload();
+    edited.setText("some very long text to change size of the whole branch");
+    assertTrue(edited.isDirty());
+    assertTrue(((AbstractElement) first.getPayload()).isDirty());
+    assertTrue(((AbstractElement) root.getPayload()).isDirty());
+    assertFalse(secondElement.isDirty());
+
+    MindMapUtils.setCollapsed(second, true);
+    new Topic(map, root.getChildren().get(2), "new one");
+
+    layout(map, cfg);
+    assertSame(secondElement, second.getPayload());
+    for (final Topic t : map) {
+      assertFalse(((AbstractElement) t.getPayload()).isDirty());
+    }
+    final List<Rectangle2D> incremental = collectBounds(map);
+
+    map.resetPayload();
+    layout(map, cfg);
+    assertEquals(collectBounds(map), incremental);
+  }
+
+  private static final class CountingGraphics extends MMGraphics2DWrapper {
+
+    private final AtomicInteger counter;
+    private final AtomicInteger lineCounter;
+
+    CountingGraphics(@Nonnull final Graphics2D wrapped, @Nonnull final AtomicInteger counter, @Nonnull final AtomicInteger lineCounter) {
+      super(wrapped);
+      this.counter = counter;
+      this.lineCounter = lineCounter;
+    }
+
+    @Override
+    @Nonnull
+    public MMGraphics copy() {
+      return new CountingGraphics((Graphics2D) getWrappedGraphics().create(), this.counter, this.lineCounter);
+    }
+
+    @Override
+    public void drawLine(final int startX, final int startY, final int endX, final int endY, @Nullable final Color color) {
+      this.lineCounter.incrementAndGet();
+      super.drawLine(startX, startY, endX, endY, color);
+    }
+
+    @Override
+    public void draw(@Nonnull final Shape shape, @Nullable final Color border, @Nullable final Color fill) {
+      if (!(shape instanceof RectangularShape)) {
+        this.lineCounter.incrementAndGet();
+      }
+      super.draw(shape, border, fill);
+    }
+
+    @Override
+    public void drawCurve(final double startX, final double startY, final double endX, final double endY, @Nullable final Color color) {
+      this.lineCounter.incrementAndGet();
+      super.drawCurve(startX, startY, endX, endY, color);
+    }
+
+    @Override
+    public void drawString(@Nonnull final String text, final int x, final int y, @Nullable final Color color) {
+      this.counter.incrementAndGet();
+      super.drawString(text, x, y, color);
+    }
+
+    @Override
+    public void drawGlyphVector(@Nonnull final GlyphVector glyphs, @Nonnull final String text, final int x, final int y, @Nullable final Color color) {
+      this.counter.incrementAndGet();
+      super.drawGlyphVector(glyphs, text, x, y, color);
+    }
+  }
+
+  @Test
+  public void testTextBlock_PaintsCachedGlyphVectorsUntilTextChanged() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = makeTestMap();
+    layout(map, cfg);
+    final AbstractElement element = (AbstractElement) map.getRoot().getFirst().getPayload();
+
+    final List<GlyphVector> drawn = new ArrayList<GlyphVector>();
+    final BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    try {
+      final MMGraphics gfx = new MMGraphics2DWrapper(g) {
+        @Override
+        public void drawGlyphVector(@Nonnull final GlyphVector glyphs, @Nonnull final String text, final int x, final int y, @Nullable final Color color) {
+          drawn.add(glyphs);
+          super.drawGlyphVector(glyphs, text, x, y, color);
+        }
+      };
+      element.getTextBlock().paint(gfx, Color.BLACK);
+      element.getTextBlock().paint(gfx, Color.BLACK);
+      assertEquals(2, drawn.size());
+      assertSame(drawn.get(0), drawn.get(1));
+      assertEquals("first".length(), drawn.get(0).getNumGlyphs());
+
+      element.setText("changed");
+      layout(map, cfg);
+      element.getTextBlock().paint(gfx, Color.BLACK);
+      assertEquals(3, drawn.size());
+      assertEquals("changed".length(), drawn.get(2).getNumGlyphs());
+    } finally {
+      g.dispose();
+    }
+  }
+
+  @Test
+  public void testDrawOnGraphics_BigMapIntoSmallClip() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    root.setText("root");
+    int topics = 1;
+    for (int i = 0; i < 20; i++) {
+      final Topic first = new Topic(map, root, "first" + i);
+      topics++;
+      for (int j = 0; j < 50; j++) {
+        final Topic second = new Topic(map, first, "second" + j);
+        topics++;
+        for (int k = 0; k < 50; k++) {
+          new Topic(map, second, "third" + k);
+          topics++;
+        }
+      }
+    }
+    assertTrue(topics > 50000);
+
+    layout(map, cfg);
+
+    final BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    final AtomicInteger paintedTexts = new AtomicInteger();
+    final AtomicInteger paintedConnectors = new AtomicInteger();
+    try {
+      g.setClip(0, 0, 400, 300);
+      // the last child of a branch, its parent is outside of the clip
+      final Topic target = root.getFirst().getChildren().get(25).getLast();
+      final Rectangle2D targetBounds = ((AbstractElement) target.getPayload()).getBounds();
+      g.translate(200 - targetBounds.getCenterX(), 150 - targetBounds.getCenterY());
+      final MMGraphics gfx = new CountingGraphics(g, paintedTexts, paintedConnectors);
+
+      final long start = System.nanoTime();
+      for (int i = 0; i < 10; i++) {
+        MindMapPanel.drawOnGraphicsForConfiguration(gfx, cfg, map, false, null);
+      }
+      final long timePerFrame = (System.nanoTime() - start) / 10L;
+      assertTrue("Too slow rendering, " + timePerFrame + " ns per frame", timePerFrame < 1000000000L);
+    } finally {
+      g.dispose();
+    }
+
+    assertTrue(paintedTexts.get() > 0);
+    assertTrue("Painted " + paintedTexts.get() + " texts", paintedTexts.get() / 10 < 100);
+    assertTrue(paintedConnectors.get() > 0);
+    assertTrue("Painted " + paintedConnectors.get() + " connectors", paintedConnectors.get() / 10 < 60);
+  }
+
+  @Test
+  public void testCompactLayout_WithoutIntersectionsAndNotHigherThanLinear() throws Exception {
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    root.setText("root");
+    final Topic wide = new Topic(map, root, "wide");
+    for (int i = 0; i < 5; i++) {
+      final Topic child = new Topic(map, wide, "child" + i);
+      for (int j = 0; j < 6; j++) {
+        new Topic(map, child, "some long text of grandchild " + j);
+      }
+    }
+    for (int i = 0; i < 10; i++) {
+      new Topic(map, root.getChildren().get(i % root.getChildren().size()), "small" + i);
+    }
+    for (int i = 0; i < 6; i++) {
+      new Topic(map, root, "f" + i);
+    }
+
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    assertSame(LinearLayoutEngine.INSTANCE, cfg.getLayoutEngine());
+    layout(map, cfg);
+    final double linearHeight = ((AbstractElement) root.getPayload()).getBlockSize().getHeight();
+
+    cfg.setLayoutEngine(CompactLayoutEngine.INSTANCE);
+    map.resetPayload();
+    layout(map, cfg);
+    final AbstractElement rootElement = (AbstractElement) root.getPayload();
+    assertTrue(rootElement.getBlockSize().getHeight() < linearHeight);
+
+    final List<Rectangle2D> bounds = collectBounds(map);
+    final Rectangle2D rootBlock = rootElement.calcBlockBounds(null);
+    for (int i = 0; i < bounds.size(); i++) {
+      assertTrue(rootBlock.contains(bounds.get(i)));
+      for (int j = i + 1; j < bounds.size(); j++) {
+        assertFalse(bounds.get(i).intersects(bounds.get(j)));
+      }
+    }
+
+    for (final Topic t : map) {
+      final AbstractElement element = (AbstractElement) t.getPayload();
+      final Rectangle2D block = element.calcBlockBounds(null);
+      for (final Topic c : t.getChildren()) {
+        assertTrue(block.contains(((AbstractElement) c.getPayload()).getBounds()));
+      }
+    }
+  }
+
+  @Test
+  public void testLayout_ElementsOfCollapsedBranchesCreatedOnlyAfterUnfold() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = makeTestMap();
+    final Topic root = map.getRoot();
+    final Topic first = root.getFirst();
+    final Topic first2 = first.getChildren().get(1);
+    final Topic first21 = first2.getFirst();
+    MindMapUtils.setCollapsed(first, true);
+    MindMapUtils.setCollapsed(first2, true);
+
+    layout(map, cfg);
+    assertNotNull(first.getPayload());
+    assertNull(first.getFirst().getPayload());
+    assertNull(first2.getPayload());
+    assertNull(first21.getPayload());
+
+    MindMapUtils.setCollapsed(first, false);
+    layout(map, cfg);
+    assertNotNull(first2.getPayload());
+    assertNull(first21.getPayload());
+
+    assertTrue(((AbstractElement) root.getPayload()).collapseOrExpandAllChildren(false));
+    assertFalse(MindMapUtils.isCollapsed(first2));
+    layout(map, cfg);
+    assertNotNull(first21.getPayload());
+    final List<Rectangle2D> lazy = collectBounds(map);
+
+    map.resetPayload();
+    layout(map, cfg);
+    assertEquals(collectBounds(map), lazy);
+  }
+
+  private static long allocatedBytesForLayouts(@Nonnull final MindMap map, @Nonnull final MindMapPanelConfig cfg, @Nonnull final com.sun.management.ThreadMXBean bean, final boolean reset) {
+    final long threadId = Thread.currentThread().getId();
+    final long start = bean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < 20; i++) {
+      if (reset) {
+        map.resetPayload();
+      } else {
+        MindMapPanel.refreshElements(map);
+      }
+      layout(map, cfg);
+    }
+    return bean.getThreadAllocatedBytes(threadId) - start;
+  }
+
+  @Test
+  public void testRefreshElements_ReusesElementsAndAllocatesLessThanReset() throws Exception {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    root.setText("root");
+    for (int i = 0; i < 10; i++) {
+      final Topic first = new Topic(map, root, "first" + i);
+      for (int j = 0; j < 10; j++) {
+        final Topic second = new Topic(map, first, "second" + j);
+        for (int k = 0; k < 10; k++) {
+          new Topic(map, second, "third" + k);
+        }
+      }
+    }
+    layout(map, cfg);
+
+    final Topic first = root.getFirst();
+    final Topic second = first.getFirst();
+    final AbstractElement rootElement = (AbstractElement) root.getPayload();
+    final AbstractElement secondElement = (AbstractElement) second.getPayload();
+    final double width = secondElement.getBounds().getWidth();
+
+    second.setText("some much longer text for the topic");
+    final Topic moved = first.getChildren().get(1);
+    assertTrue(moved.moveToNewParent(root));
+
+    MindMapPanel.refreshElements(map);
+    assertTrue(rootElement.isDirty());
+    layout(map, cfg);
+
+    assertSame(rootElement, root.getPayload());
+    assertSame(secondElement, second.getPayload());
+    assertTrue(secondElement.getBounds().getWidth() > width);
+    assertTrue(moved.getPayload() instanceof ElementLevelFirst);
+    final List<Rectangle2D> refreshed = collectBounds(map);
+
+    map.resetPayload();
+    layout(map, cfg);
+    assertEquals(collectBounds(map), refreshed);
+
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+    final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+    sunBean.setThreadAllocatedMemoryEnabled(true);
+
+    allocatedBytesForLayouts(map, cfg, sunBean, false);
+    final long withReset = allocatedBytesForLayouts(map, cfg, sunBean, true);
+    final long withRefresh = allocatedBytesForLayouts(map, cfg, sunBean, false);
+    assertTrue("Allocated " + withRefresh + " bytes with refresh and " + withReset + " bytes with reset", withRefresh * 2 < withReset);
+  }
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import com.igormaznitsa.mindmap.model.MindMap;
+import com.igormaznitsa.mindmap.model.Topic;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanel;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics2DWrapper;
+import com.igormaznitsa.mindmap.swing.panel.utils.MindMapUtils;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ElementQuadTreeTest {
+
+  private MindMap map;
+  private AbstractElement rootElement;
+
+  @Before
+  public void before() {
+    this.map = new MindMap(null, true);
+    final Topic root = this.map.getRoot();
+    root.setText("root");
+    for (int i = 0; i < 8; i++) {
+      final Topic first = new Topic(this.map, root, "first " + i);
+      for (int j = 0; j < 10; j++) {
+        final Topic second = new Topic(this.map, first, "second " + j);
+        for (int k = 0; k < 5; k++) {
+          new Topic(this.map, second, "third " + k);
+        }
+        if (j % 3 == 0) {
+          MindMapUtils.setCollapsed(second, true);
+        }
+      }
+    }
+
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    final BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D g = image.createGraphics();
+    try {
+      assertNotNull(MindMapPanel.layoutFullDiagramWithCenteringToPaper(new MMGraphics2DWrapper(g), this.map, cfg, new java.awt.Dimension(100, 100)));
+    } finally {
+      g.dispose();
+    }
+    this.rootElement = (AbstractElement) root.getPayload();
+  }
+
+  @Test
+  public void testSizeContainsOnlyVisibleElements() {
+    final ElementQuadTree index = new ElementQuadTree(this.rootElement);
+    int visible = 0;
+    for (final Topic t : this.map) {
+      if (!MindMapUtils.isHidden(t)) {
+        visible++;
+      }
+    }
+    assertEquals(visible, index.size());
+    assertSame(this.rootElement, index.getRootElement());
+  }
+
+  @Test
+  public void testFindForPoint_SameAsTreeWalk() {
+    final ElementQuadTree index = new ElementQuadTree(this.rootElement);
+    assertNull(index.findForPoint(null));
+
+    for (final Topic t : this.map) {
+      if (!MindMapUtils.isHidden(t)) {
+        final AbstractElement e = (AbstractElement) t.getPayload();
+        final Point center = new Point((int) e.getBounds().getCenterX(), (int) e.getBounds().getCenterY());
+        assertSame(e, index.findForPoint(center));
+        assertSame(this.rootElement.findForPoint(center), index.findForPoint(center));
+      }
+    }
+
+    final Random rnd = new Random(12345L);
+    final Rectangle2DHolder area = new Rectangle2DHolder(this.rootElement);
+    for (int i = 0; i < 5000; i++) {
+      final Point point = area.randomPoint(rnd);
+      assertSame(this.rootElement.findForPoint(point), index.findForPoint(point));
+    }
+  }
+
+  @Test
+  public void testFindNearest_SameAsTreeWalk() {
+    final ElementQuadTree index = new ElementQuadTree(this.rootElement);
+    final AbstractElement toIgnore = (AbstractElement) this.map.getRoot().getFirst().getFirst().getPayload();
+    final Random rnd = new Random(4321L);
+    final Rectangle2DHolder area = new Rectangle2DHolder(this.rootElement);
+    for (int i = 0; i < 2000; i++) {
+      final Point point = area.randomPoint(rnd);
+      assertSame(this.rootElement.findNearestOpenedTopicToPoint(null, point), index.findNearestOpenedTopicToPoint(null, point));
+      assertSame(this.rootElement.findNearestOpenedTopicToPoint(toIgnore, point), index.findNearestOpenedTopicToPoint(toIgnore, point));
+    }
+  }
+
+  @Test
+  public void testFindCoveredTopics_SameAsTreeWalk() {
+    final ElementQuadTree index = new ElementQuadTree(this.rootElement);
+    final Random rnd = new Random(777L);
+    final Rectangle2DHolder area = new Rectangle2DHolder(this.rootElement);
+    for (int i = 0; i < 500; i++) {
+      final Point p1 = area.randomPoint(rnd);
+      final Point p2 = area.randomPoint(rnd);
+      final MouseSelectedArea selection = new MouseSelectedArea(p1);
+      selection.update(new java.awt.event.MouseEvent(new java.awt.Panel(), 0, 0L, 0, p2.x, p2.y, 1, false));
+      assertEquals(selection.getAllSelectedElements(this.map), selection.getAllSelectedElements(this.map, index));
+    }
+    assertEquals(index.size(), index.findCoveredTopics(new Rectangle(-100000, -100000, 200000, 200000)).size());
+  }
+
+  private static final class Rectangle2DHolder {
+
+    private final int x;
+    private final int y;
+    private final int w;
+    private final int h;
+
+    Rectangle2DHolder(final AbstractElement root) {
+      final java.awt.geom.Rectangle2D block = root.calcBlockBounds(null);
+      this.x = (int) block.getX() - 50;
+      this.y = (int) block.getY() - 50;
+      this.w = (int) block.getWidth() + 100;
+      this.h = (int) block.getHeight() + 100;
+    }
+
+    Point randomPoint(final Random rnd) {
+      return new Point(this.x + rnd.nextInt(this.w), this.y + rnd.nextInt(this.h));
+    }
+  }
+}
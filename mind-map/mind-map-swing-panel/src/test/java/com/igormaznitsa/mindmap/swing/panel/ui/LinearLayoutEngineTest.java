@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui;
+
+import com.igormaznitsa.mindmap.model.MindMap;
+import com.igormaznitsa.mindmap.model.Topic;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanel;
+import com.igormaznitsa.mindmap.swing.panel.MindMapPanelConfig;
+import com.igormaznitsa.mindmap.swing.panel.ui.gfx.MMGraphics2DWrapper;
+import com.igormaznitsa.mindmap.swing.panel.utils.MindMapUtils;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nonnull;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares bounds of elements placed by the linear layout engine with bounds recorded for the layout code which was used before layout engines were introduced.
+ */
+public class LinearLayoutEngineTest {
+
+  private static final String BASELINE = "linear_layout_baseline.txt"; //NOI18N
+
+  /**
+   * Graphics which measures text by font size only so that recorded bounds don't depend on fonts installed in the system.
+   */
+  private static final class FixedMetricsGraphics extends MMGraphics2DWrapper {
+
+    private final Graphics2D wrapped;
+
+    private FixedMetricsGraphics(@Nonnull final Graphics2D wrapped) {
+      super(wrapped);
+      this.wrapped = wrapped;
+    }
+
+    @Override
+    public float getFontMaxAscent() {
+      return this.wrapped.getFont().getSize2D() * 0.9f;
+    }
+
+    @Override
+    @Nonnull
+    public Rectangle2D getStringBounds(@Nonnull final String str) {
+      final double size = this.wrapped.getFont().getSize2D();
+      return new Rectangle2D.Double(0.0d, -size * 0.9d, size * 0.6d * str.length(), size * 1.2d);
+    }
+  }
+
+  @Nonnull
+  private static MindMap makeTextMap() throws Exception {
+    return new MindMap(null, new StringReader("Mind Map generated by NB MindMap plugin\n> __version__=`1.1`\n---\n# root\n## first\n### first1\n### first2\n#### first21\n## second\n> leftSide=`true`\n\n### second1\n## third\n> leftSide=`true`,collapsed=`true`\n\n### third1\n## fourth\n### fourth1\n#### fourth11\n### fourth2\n")); //NOI18N
+  }
+
+  @Nonnull
+  private static MindMap makeRandomMap(final long seed) {
+    final Random rnd = new Random(seed);
+    final MindMap map = new MindMap(null, true);
+    final Topic root = map.getRoot();
+    root.setText("root\nof random map"); //NOI18N
+    final List<Topic> parents = new ArrayList<Topic>();
+    parents.add(root);
+    for (int i = 0; i < 60; i++) {
+      final Topic parent = parents.get(rnd.nextInt(parents.size()));
+      final StringBuilder text = new StringBuilder("t" + i); //NOI18N
+      final int lines = rnd.nextInt(3);
+      for (int l = 0; l < lines; l++) {
+        text.append('\n');
+        for (int c = rnd.nextInt(12); c >= 0; c--) {
+          text.append((char) ('a' + rnd.nextInt(26)));
+        }
+      }
+      final Topic topic = new Topic(map, parent, text.toString());
+      if (parent == root && rnd.nextBoolean()) {
+        AbstractCollapsableElement.makeTopicLeftSided(topic, true);
+      }
+      parents.add(topic);
+    }
+    for (final Topic t : parents) {
+      if (t != root && t.hasChildren() && rnd.nextInt(4) == 0) {
+        MindMapUtils.setCollapsed(t, true);
+      }
+    }
+    return map;
+  }
+
+  @Nonnull
+  private static List<Rectangle2D> layout(@Nonnull final MindMap map, final double scale) {
+    final MindMapPanelConfig cfg = new MindMapPanelConfig();
+    cfg.setLayoutEngine(LinearLayoutEngine.INSTANCE);
+    cfg.setScale(scale);
+    final Graphics2D g = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB).createGraphics();
+    try {
+      assertTrue(MindMapPanel.calculateElementSizes(new FixedMetricsGraphics(g), map, cfg));
+      assertNotNull(MindMapPanel.layoutModelElements(map, cfg));
+    } finally {
+      g.dispose();
+    }
+    final List<Rectangle2D> result = new ArrayList<Rectangle2D>();
+    for (final Topic t : map) {
+      if (!MindMapUtils.isHidden(t)) {
+        result.add(((AbstractElement) t.getPayload()).getBounds());
+      }
+    }
+    return result;
+  }
+
+  @Nonnull
+  private static Map<String, List<double[]>> loadBaseline() throws Exception {
+    final InputStream in = LinearLayoutEngineTest.class.getResourceAsStream(BASELINE);
+    assertNotNull("Can't find " + BASELINE, in); //NOI18N
+    final Map<String, List<double[]>> result = new LinkedHashMap<String, List<double[]>>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8")); //NOI18N
+    try {
+      List<double[]> current = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        if (line.startsWith("#")) { //NOI18N
+          current = new ArrayList<double[]>();
+          result.put(line.substring(1).trim(), current);
+        } else {
+          final String[] values = line.split("\\s+"); //NOI18N
+          final double[] bounds = new double[values.length];
+          for (int i = 0; i < values.length; i++) {
+            bounds[i] = Double.parseDouble(values[i]);
+          }
+          current.add(bounds);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return result;
+  }
+
+  private static void assertBaseline(@Nonnull final Map<String, List<double[]>> baseline, @Nonnull final String name, @Nonnull final List<Rectangle2D> bounds) {
+    final List<double[]> expected = baseline.get(name);
+    assertNotNull("No baseline for " + name, expected); //NOI18N
+    assertEquals(name, expected.size(), bounds.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final double[] e = expected.get(i);
+      final Rectangle2D r = bounds.get(i);
+      final String msg = name + " element " + i; //NOI18N
+      assertEquals(msg, e[0], r.getX(), 1.0E-6d);
+      assertEquals(msg, e[1], r.getY(), 1.0E-6d);
+      assertEquals(msg, e[2], r.getWidth(), 1.0E-6d);
+      assertEquals(msg, e[3], r.getHeight(), 1.0E-6d);
+    }
+  }
+
+  @Test
+  public void testLayout_SameBoundsAsBaseline() throws Exception {
+    final Map<String, List<double[]>> baseline = loadBaseline();
+    for (final double scale : new double[]{1.0d, 1.5d}) {
+      assertBaseline(baseline, "text " + scale, layout(makeTextMap(), scale)); //NOI18N
+      for (final long seed : new long[]{1L, 42L, 2016L}) {
+        assertBaseline(baseline, "random " + seed + ' ' + scale, layout(makeRandomMap(seed), scale)); //NOI18N
+      }
+    }
+  }
+}
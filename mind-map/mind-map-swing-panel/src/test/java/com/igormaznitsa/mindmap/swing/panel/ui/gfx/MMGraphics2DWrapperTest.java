@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui.gfx;
+
+import static org.junit.Assert.*;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+public class MMGraphics2DWrapperTest {
+
+  @Test
+  public void testMakeGlyphVector() {
+    final Graphics2D g = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB).createGraphics();
+    try {
+      g.setFont(new Font(Font.DIALOG, Font.PLAIN, 14));
+      final MMGraphics gfx = new MMGraphics2DWrapper(g);
+
+      assertNull(gfx.makeGlyphVector("שלום")); //NOI18N
+      assertNull(gfx.makeGlyphVector("abc مرحبا")); //NOI18N
+
+      for (final String text : new String[]{"Hello world", "नमस्ते", "office"}) { //NOI18N
+        final GlyphVector glyphs = gfx.makeGlyphVector(text);
+        assertNotNull(glyphs);
+        assertEquals(text, gfx.getStringBounds(text).getWidth(), glyphs.getLogicalBounds().getWidth(), 0.5d);
+      }
+    } finally {
+      g.dispose();
+    }
+  }
+
+  @Test
+  public void testGetStringBounds_ChangeOfResultDoesNotAffectCachedMetrics() {
+    final Graphics2D g = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB).createGraphics();
+    try {
+      g.setFont(new Font(Font.DIALOG, Font.PLAIN, 14));
+      final MMGraphics gfx = new MMGraphics2DWrapper(g);
+      final Rectangle2D expected = g.getFontMetrics().getStringBounds("Hello world", g); //NOI18N
+
+      final Rectangle2D bounds = gfx.getStringBounds("Hello world"); //NOI18N
+      assertEquals(expected, bounds);
+      bounds.setRect(1.0d, 2.0d, 3.0d, 4.0d);
+
+      assertEquals(expected, gfx.getStringBounds("Hello world")); //NOI18N
+      assertEquals(expected, TextMetricsCache.getInstance().getStringBounds(g, "Hello world")); //NOI18N
+    } finally {
+      g.dispose();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Igor Maznitsa.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.mindmap.swing.panel.ui.gfx;
+
+import static org.junit.Assert.*;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+public class TextMetricsCacheTest {
+
+  @Test
+  public void testCachedMetricsAreTheSameAsCalculated() {
+    final TextMetricsCache cache = new TextMetricsCache(16);
+    final Font base = new Font(Font.SERIF, Font.BOLD, 12);
+
+    final Font derived = cache.deriveFont(base, 24.0f);
+    assertEquals(24.0f, derived.getSize2D(), 0.0f);
+    assertSame(derived, cache.deriveFont(base, 24.0f));
+    assertNotSame(derived, cache.deriveFont(base, 12.5f));
+
+    final Graphics2D gfx = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB).createGraphics();
+    try {
+      gfx.setFont(derived);
+      final Rectangle2D bounds = cache.getStringBounds(gfx, "Hello world");
+      assertEquals(gfx.getFontMetrics().getStringBounds("Hello world", gfx), bounds);
+      assertSame(bounds, cache.getStringBounds(gfx, "Hello world"));
+      assertEquals(gfx.getFontMetrics().getMaxAscent(), cache.getMaxAscent(gfx), 0.0f);
+
+      gfx.setFont(base);
+      assertEquals(gfx.getFontMetrics().getStringBounds("Hello world", gfx), cache.getStringBounds(gfx, "Hello world"));
+    } finally {
+      gfx.dispose();
+    }
+    assertEquals(2L, cache.getHits());
+    assertEquals(5L, cache.getMisses());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntriesAreEvicted() {
+    final TextMetricsCache cache = new TextMetricsCache(3);
+    final Font base = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+    final Font font1 = cache.deriveFont(base, 11.0f);
+    final Font font2 = cache.deriveFont(base, 12.0f);
+    cache.deriveFont(base, 13.0f);
+    assertSame(font1, cache.deriveFont(base, 11.0f));
+    cache.deriveFont(base, 14.0f);
+
+    assertEquals(3, cache.size());
+    assertSame(font1, cache.deriveFont(base, 11.0f));
+    assertNotSame(font2, cache.deriveFont(base, 12.0f));
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getHits());
+  }
+}
@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import org.apache.commons.io.IOUtils;
 import org.openide.filesystems.FileAlreadyLockedException;
 import org.openide.filesystems.FileLock;
@@ -114,6 +115,27 @@ public class MindMapLink {
       flock.releaseLock();
     }
     
+    firePrimaryFileChanged(foj);
+  }
+
+  private void writeMindMap(final MindMap map) throws IOException {
+    final FileObject foj = getFile();
+    final FileLock flock = lock(foj);
+    try{
+      final OutputStream out  = foj.getOutputStream(flock);
+      try{
+        map.write(out, Charset.forName("UTF-8"));
+      }finally{
+        IOUtils.closeQuietly(out);
+      }
+    }finally{
+      flock.releaseLock();
+    }
+    
+    firePrimaryFileChanged(foj);
+  }
+
+  private static void firePrimaryFileChanged(final FileObject foj) throws IOException {
     final DataObject doj = DataObject.find(foj);
     if (doj!=null && doj instanceof MMDDataObject){
       LOGGER.info("Notify about change primary file");
@@ -140,7 +162,7 @@ public class MindMapLink {
 
   public synchronized void writeMindMap() throws IOException {
     if (this.model != null){
-      writeUTF8Text(this.model.packToString());
+      writeMindMap(this.model);
     }
   }
 
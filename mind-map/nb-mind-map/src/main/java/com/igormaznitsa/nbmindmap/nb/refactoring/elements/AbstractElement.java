@@ -24,6 +24,7 @@ import com.igormaznitsa.nbmindmap.nb.refactoring.MindMapLink;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.util.ResourceBundle;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -78,7 +79,7 @@ public abstract class AbstractElement extends SimpleRefactoringElementImplementa
     try {
       final OutputStream out = fileObject.getOutputStream(lock);
       try {
-        IOUtils.write(map.packToString(), out, "UTF-8"); //NOI18N
+        map.write(out, Charset.forName("UTF-8")); //NOI18N
       }
       finally {
         IOUtils.closeQuietly(out);
@@ -40,7 +40,7 @@ import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
-import java.io.StringWriter;
+import java.nio.charset.Charset;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.EnumSet;
@@ -309,7 +309,7 @@ public final class MMDEditor extends AbstractEditor implements MindMapPanelContr
           return result;
         }
       }
-      FileUtils.write(file, this.mindMapPanel.getModel().write(new StringWriter(16384)).toString(), "UTF-8", false); //NOI18N
+      this.mindMapPanel.getModel().saveToFile(file, Charset.forName("UTF-8")); //NOI18N
       this.title.setChanged(false);
       result = true;
       this.undoStorage.setFlagThatSomeStateLost();
@@ -22,6 +22,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.annotation.Nonnull;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
@@ -35,6 +36,7 @@ public final class SortedTreeModelWrapper implements TreeModel, TreeModelListene
   
   private final Map<Object,List<Object>> sortedCache = new HashMap<>();
   private final Comparator<Object> comparator;
+  private final List<TreeModelListener> listeners = new CopyOnWriteArrayList<>();
   
   public SortedTreeModelWrapper(@Nonnull final MindMap model, @Nonnull final Comparator<Object> comparator){
     this.model = model;
@@ -77,12 +79,12 @@ public final class SortedTreeModelWrapper implements TreeModel, TreeModelListene
 
   @Override
   public void addTreeModelListener(@Nonnull final TreeModelListener l) {
-    this.model.addTreeModelListener(l);
+    this.listeners.add(l);
   }
 
   @Override
   public void removeTreeModelListener(@Nonnull final TreeModelListener l) {
-    this.model.removeTreeModelListener(l);
+    this.listeners.remove(l);
   }
   
   private void clear(){
@@ -109,26 +111,39 @@ public final class SortedTreeModelWrapper implements TreeModel, TreeModelListene
 
   @Override
   public void treeNodesChanged(@Nonnull final TreeModelEvent e) {
-    
+    clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeNodesInserted(@Nonnull final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeNodesRemoved(@Nonnull final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
   }
 
   @Override
   public void treeStructureChanged(@Nonnull final TreeModelEvent e) {
     clear();
+    fireStructureChanged(e);
   }
-   
+
+  private void fireStructureChanged(@Nonnull final TreeModelEvent e) {
+    // indexes of the model don't match sorted order so that whole changed branch is reported
+    final TreeModelEvent event = new TreeModelEvent(this, e.getTreePath());
+    for (final TreeModelListener l : this.listeners) {
+      l.treeStructureChanged(event);
+    }
+  }
+
   public void dispose(){
     clear();
+    this.listeners.clear();
     this.model.removeTreeModelListener(this);
   }
   
@@ -18,6 +18,7 @@ package com.igormaznitsa.sciareto.ui.tree;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
@@ -32,7 +33,6 @@ import com.igormaznitsa.mindmap.model.logger.Logger;
 import com.igormaznitsa.mindmap.model.logger.LoggerFactory;
 import com.igormaznitsa.sciareto.Context;
 import com.igormaznitsa.sciareto.ui.MapUtils;
-import com.igormaznitsa.sciareto.ui.SystemUtils;
 
 public class NodeProject extends NodeFileOrFolder {
 
@@ -114,7 +114,7 @@ public class NodeProject extends NodeFileOrFolder {
         try {
           final MindMap map = new MindMap(null, new StringReader(FileUtils.readFileToString(file, "UTF-8"))); //NOI18N
           if (map.deleteAllLinksToFile(baseFolder, fileURI)) {
-            SystemUtils.saveUTFText(file, map.packToString());
+            map.saveToFile(file, Charset.forName("UTF-8")); //NOI18N
             affectedFiles.add(file);
           }
         } catch (IOException ex) {
@@ -146,7 +146,7 @@ public class NodeProject extends NodeFileOrFolder {
         try {
           final MindMap map = new MindMap(null, new StringReader(FileUtils.readFileToString(file, "UTF-8"))); //NOI18N
           if (map.replaceAllLinksToFile(baseFolder, oldFileURI, newFileURI)) {
-            SystemUtils.saveUTFText(file, map.packToString());
+            map.saveToFile(file, Charset.forName("UTF-8")); //NOI18N
             affectedFiles.add(file);
           }
         } catch (IOException ex) {